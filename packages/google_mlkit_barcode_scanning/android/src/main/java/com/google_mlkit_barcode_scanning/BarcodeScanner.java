@@ -3,31 +3,50 @@ package com.google_mlkit_barcode_scanning;
 import android.content.Context;
 import android.graphics.Point;
 import android.graphics.Rect;
+import android.os.SystemClock;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
 import com.google.mlkit.vision.barcode.common.Barcode;
 import com.google.mlkit.vision.barcode.BarcodeScannerOptions;
 import com.google.mlkit.vision.barcode.BarcodeScanning;
 import com.google.mlkit.vision.common.InputImage;
+import com.google_mlkit_commons.ImageTransform;
 import com.google_mlkit_commons.InputImageConverter;
+import com.google_mlkit_commons.PackedResultCodec;
+import com.google_mlkit_commons.ResultExecutor;
+import com.google_mlkit_commons.VisionAnalyzer;
+import com.google_mlkit_commons.VisionAnalyzers;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 
-public class BarcodeScanner implements MethodChannel.MethodCallHandler {
+public class BarcodeScanner implements MethodChannel.MethodCallHandler, VisionAnalyzer {
     private static final String START = "vision#startBarcodeScanner";
     private static final String CLOSE = "vision#closeBarcodeScanner";
+    private static final String RESET_SESSION = "vision#resetBarcodeSession";
+    private static final String GET_FORMAT_STATS = "vision#getBarcodeFormatStats";
+    private static final String GET_DETAILS = "vision#getBarcodeDetails";
+    private static final String DETAIL_MINIMAL = "minimal";
+    private static final String DETAIL_RAW = "raw";
+    private static final String DETAIL_FULL = "full";
 
     private final Context context;
-    private final Map<String, com.google.mlkit.vision.barcode.BarcodeScanner> instances = new HashMap<>();
+    private final Map<String, com.google.mlkit.vision.barcode.BarcodeScanner> instances = new ConcurrentHashMap<>();
+    private final Map<String, BarcodeSession> sessions = new ConcurrentHashMap<>();
+    private final Map<String, FormatNarrowing> narrowings = new ConcurrentHashMap<>();
+    private final Map<String, RecentBarcodes> recentBarcodes = new ConcurrentHashMap<>();
 
     public BarcodeScanner(Context context) {
         this.context = context;
@@ -38,12 +57,28 @@ public class BarcodeScanner implements MethodChannel.MethodCallHandler {
         String method = call.method;
         switch (method) {
             case START:
-                handleDetection(call, result);
+                if (call.argument("tiling") != null) {
+                    scanTiles(call, PackedResultCodec.isRequested(call) ? PackedResultCodec.wrap(result) : result);
+                } else {
+                    VisionAnalyzers.process(call, context, this, result);
+                }
                 break;
             case CLOSE:
                 closeDetector(call);
                 result.success(null);
                 break;
+            case RESET_SESSION:
+                BarcodeSession session = sessions.get((String) call.argument("id"));
+                if (session != null) session.reset();
+                result.success(null);
+                break;
+            case GET_FORMAT_STATS:
+                FormatNarrowing narrowing = narrowings.get((String) call.argument("id"));
+                result.success(narrowing != null ? narrowing.getStats() : null);
+                break;
+            case GET_DETAILS:
+                result.success(getDetails(call));
+                break;
             default:
                 result.notImplemented();
                 break;
@@ -65,140 +100,232 @@ public class BarcodeScanner implements MethodChannel.MethodCallHandler {
         return BarcodeScanning.getClient(barcodeScannerOptions);
     }
 
-    private void handleDetection(MethodCall call, final MethodChannel.Result result) {
-        Map<String, Object> imageData = call.argument("imageData");
-        InputImage inputImage = InputImageConverter.getInputImageFromData(imageData, context, result);
-        if (inputImage == null) return;
+    @Override
+    public Task<?> analyze(@NonNull MethodCall call, @NonNull InputImage inputImage, @NonNull final MethodChannel.Result result) {
+        ImageTransform transform = InputImageConverter.getImageTransform(inputImage);
 
         String id = call.argument("id");
-        com.google.mlkit.vision.barcode.BarcodeScanner barcodeScanner = instances.get(id);
+        FormatNarrowing narrowing = getNarrowing(id, call);
+        int formats = narrowing != null ? narrowing.nextFormats() : 0;
+        com.google.mlkit.vision.barcode.BarcodeScanner barcodeScanner = narrowing != null
+                ? narrowing.getClient(formats)
+                : instances.get(id);
         if (barcodeScanner == null) {
             barcodeScanner = initialize(call);
             instances.put(id, barcodeScanner);
         }
 
-        barcodeScanner.process(inputImage)
-                .addOnSuccessListener(barcodes -> {
+        BarcodeSession session = getSession(id, call);
+        String detailLevel = call.argument("detail");
+        String detail = detailLevel != null ? detailLevel : DETAIL_FULL;
+        //The payload of barcodes sent without it can be asked for with GET_DETAILS later on.
+        RecentBarcodes recent = DETAIL_FULL.equals(detail) ? null : getRecentBarcodes(id);
+        Task<List<Barcode>> task = barcodeScanner.process(inputImage)
+                .addOnSuccessListener(ResultExecutor.get(), barcodes -> {
+                    if (narrowing != null) narrowing.record(formats, barcodes);
+                    long now = SystemClock.elapsedRealtime();
                     List<Map<String, Object>> barcodeList = new ArrayList<>(barcodes.size());
                     for (Barcode barcode : barcodes) {
-
-                        Map<String, Object> barcodeMap = new HashMap<>();
-                        int valueType = barcode.getValueType();
-                        barcodeMap.put("type", valueType);
-                        barcodeMap.put("format", barcode.getFormat());
-                        barcodeMap.put("rawValue", barcode.getRawValue());
-                        barcodeMap.put("rawBytes", barcode.getRawBytes());
-                        barcodeMap.put("displayValue", barcode.getDisplayValue());
-                        barcodeMap.put("rect", getBoundingPoints(barcode.getBoundingBox()));
-                        Point[] cornerPoints = barcode.getCornerPoints();
-                        List<Map<String, Integer>> points = new ArrayList<>();
-                        addPoints(cornerPoints, points);
-                        barcodeMap.put("points", points);
-                        switch (valueType) {
-                            case Barcode.TYPE_UNKNOWN:
-                            case Barcode.TYPE_ISBN:
-                            case Barcode.TYPE_PRODUCT:
-                            case Barcode.TYPE_TEXT:
-                                break;
-                            case Barcode.TYPE_WIFI:
-                                barcodeMap.put("ssid", barcode.getWifi().getSsid());
-                                barcodeMap.put("password", barcode.getWifi().getPassword());
-                                barcodeMap.put("encryption", barcode.getWifi().getEncryptionType());
-                                break;
-                            case Barcode.TYPE_URL:
-                                barcodeMap.put("title", barcode.getUrl().getTitle());
-                                barcodeMap.put("url", barcode.getUrl().getUrl());
-                                break;
-                            case Barcode.TYPE_EMAIL:
-                                barcodeMap.put("address", barcode.getEmail().getAddress());
-                                barcodeMap.put("body", barcode.getEmail().getBody());
-                                barcodeMap.put("subject", barcode.getEmail().getSubject());
-                                barcodeMap.put("emailType", barcode.getEmail().getType());
-                                break;
-                            case Barcode.TYPE_PHONE:
-                                barcodeMap.put("number", barcode.getPhone().getNumber());
-                                barcodeMap.put("phoneType", barcode.getPhone().getType());
-                                break;
-                            case Barcode.TYPE_SMS:
-                                barcodeMap.put("message", barcode.getSms().getMessage());
-                                barcodeMap.put("number", barcode.getSms().getPhoneNumber());
-                                break;
-                            case Barcode.TYPE_GEO:
-                                barcodeMap.put("latitude", barcode.getGeoPoint().getLat());
-                                barcodeMap.put("longitude", barcode.getGeoPoint().getLng());
-                                break;
-                            case Barcode.TYPE_DRIVER_LICENSE:
-                                barcodeMap.put("addressCity", barcode.getDriverLicense().getAddressCity());
-                                barcodeMap.put("addressState", barcode.getDriverLicense().getAddressState());
-                                barcodeMap.put("addressZip", barcode.getDriverLicense().getAddressZip());
-                                barcodeMap.put("addressStreet", barcode.getDriverLicense().getAddressStreet());
-                                barcodeMap.put("issueDate", barcode.getDriverLicense().getIssueDate());
-                                barcodeMap.put("birthDate", barcode.getDriverLicense().getBirthDate());
-                                barcodeMap.put("expiryDate", barcode.getDriverLicense().getExpiryDate());
-                                barcodeMap.put("gender", barcode.getDriverLicense().getGender());
-                                barcodeMap.put("licenseNumber", barcode.getDriverLicense().getLicenseNumber());
-                                barcodeMap.put("firstName", barcode.getDriverLicense().getFirstName());
-                                barcodeMap.put("lastName", barcode.getDriverLicense().getLastName());
-                                barcodeMap.put("country", barcode.getDriverLicense().getIssuingCountry());
-                                break;
-                            case Barcode.TYPE_CONTACT_INFO:
-                                barcodeMap.put("firstName", barcode.getContactInfo().getName().getFirst());
-                                barcodeMap.put("lastName", barcode.getContactInfo().getName().getLast());
-                                barcodeMap.put("formattedName", barcode.getContactInfo().getName().getFormattedName());
-                                barcodeMap.put("organization", barcode.getContactInfo().getOrganization());
-                                List<Map<String, Object>> queries = new ArrayList<>();
-                                for (Barcode.Address address : barcode.getContactInfo().getAddresses()) {
-                                    Map<String, Object> addressMap = new HashMap<>();
-                                    addressMap.put("addressType", address.getType());
-                                    List<String> addressLines = new ArrayList<>();
-                                    Collections.addAll(addressLines, address.getAddressLines());
-                                    addressMap.put("addressLines", addressLines);
-                                    queries.add(addressMap);
-                                }
-                                barcodeMap.put("addresses", queries);
-                                queries = new ArrayList<>();
-                                for (Barcode.Phone phone : barcode.getContactInfo().getPhones()) {
-                                    Map<String, Object> phoneMap = new HashMap<>();
-                                    phoneMap.put("number", phone.getNumber());
-                                    phoneMap.put("phoneType", phone.getType());
-                                    queries.add(phoneMap);
-                                }
-                                barcodeMap.put("phones", queries);
-                                queries = new ArrayList<>();
-                                for (Barcode.Email email : barcode.getContactInfo().getEmails()) {
-                                    Map<String, Object> emailMap = new HashMap<>();
-                                    emailMap.put("address", email.getAddress());
-                                    emailMap.put("body", email.getBody());
-                                    emailMap.put("subject", email.getSubject());
-                                    emailMap.put("emailType", email.getType());
-                                    queries.add(emailMap);
-                                }
-                                barcodeMap.put("emails", queries);
-                                List<String> urls = new ArrayList<>(barcode.getContactInfo().getUrls());
-                                barcodeMap.put("urls", urls);
-                                break;
-                            case Barcode.TYPE_CALENDAR_EVENT:
-                                barcodeMap.put("description", barcode.getCalendarEvent().getDescription());
-                                barcodeMap.put("location", barcode.getCalendarEvent().getLocation());
-                                barcodeMap.put("status", barcode.getCalendarEvent().getStatus());
-                                barcodeMap.put("summary", barcode.getCalendarEvent().getSummary());
-                                barcodeMap.put("organizer", barcode.getCalendarEvent().getOrganizer());
-                                barcodeMap.put("start", barcode.getCalendarEvent().getStart().getRawValue());
-                                barcodeMap.put("end", barcode.getCalendarEvent().getEnd().getRawValue());
-                                break;
+                        if (session != null
+                                && !session.isFirstSighting(barcode.getFormat(), barcode.getRawBytes(), barcode.getRawValue(), now)) {
+                            continue;
                         }
+                        Map<String, Object> barcodeMap = getBarcodeMap(barcode, transform, detail);
+                        if (recent != null) barcodeMap.put("handle", recent.add(barcode));
                         barcodeList.add(barcodeMap);
                     }
-                    result.success(barcodeList);
+                    if (session == null) {
+                        result.success(barcodeList);
+                        return;
+                    }
+                    Map<String, Object> sessionMap = new HashMap<>();
+                    sessionMap.put("barcodes", barcodeList);
+                    sessionMap.put("lost", session.takeLost(now));
+                    result.success(sessionMap);
                 })
-                .addOnFailureListener(e -> result.error("BarcodeDetectorError", e.toString(), null));
+                .addOnFailureListener(ResultExecutor.get(), e -> result.error("BarcodeDetectorError", e.toString(), null));
+        if (narrowing != null) task.addOnCompleteListener(ResultExecutor.get(), done -> narrowing.release(formats));
+        return task;
+    }
+
+    //Scans a still image tile by tile, see TiledBarcodeSearch, and replies with the "barcodes" found in the whole image,
+    //the number of "tiles" and how many of them were scanned within the time budget as "scannedTiles".
+    private void scanTiles(MethodCall call, MethodChannel.Result result) {
+        String id = call.argument("id");
+        com.google.mlkit.vision.barcode.BarcodeScanner barcodeScanner = instances.get(id);
+        if (barcodeScanner == null) {
+            barcodeScanner = initialize(call);
+            instances.put(id, barcodeScanner);
+        }
+        Map<String, Object> imageData = call.argument("imageData");
+        if (imageData == null) {
+            result.error("InputImageConverterError", "Image data is missing", null);
+            return;
+        }
+        List<Task<List<TiledBarcodeSearch.Hit>>> tasks;
+        try {
+            tasks = new TiledBarcodeSearch(call.argument("tiling")).scan(imageData, context, barcodeScanner);
+        } catch (IOException | RuntimeException e) {
+            result.error("BarcodeDetectorError", e.toString(), null);
+            return;
+        }
+
+        String detailLevel = call.argument("detail");
+        String detail = detailLevel != null ? detailLevel : DETAIL_FULL;
+        RecentBarcodes recent = DETAIL_FULL.equals(detail) ? null : getRecentBarcodes(id);
+        Tasks.whenAllComplete(tasks).addOnCompleteListener(ResultExecutor.get(), done -> {
+            List<TiledBarcodeSearch.Hit> hits = new ArrayList<>();
+            Exception error = null;
+            int scannedTiles = 0;
+            for (Task<List<TiledBarcodeSearch.Hit>> task : tasks) {
+                if (!task.isSuccessful()) {
+                    error = task.getException();
+                } else if (task.getResult() != null) {
+                    scannedTiles++;
+                    hits.addAll(task.getResult());
+                }
+            }
+            if (error != null && scannedTiles == 0) {
+                result.error("BarcodeDetectorError", error.toString(), null);
+                return;
+            }
+            List<Map<String, Object>> barcodeList = new ArrayList<>();
+            for (TiledBarcodeSearch.Hit hit : TiledBarcodeSearch.merge(hits)) {
+                Map<String, Object> barcodeMap = getBarcodeMap(hit.barcode, hit.transform, detail);
+                if (recent != null) barcodeMap.put("handle", recent.add(hit.barcode));
+                barcodeList.add(barcodeMap);
+            }
+            Map<String, Object> tiledMap = new HashMap<>();
+            tiledMap.put("barcodes", barcodeList);
+            tiledMap.put("tiles", tasks.size());
+            tiledMap.put("scannedTiles", scannedTiles);
+            result.success(tiledMap);
+        });
+    }
+
+    //A "minimal" map has the type, format, raw value and box of the barcode, a "raw" one adds the raw bytes, display
+    //value and corner points, a "full" one adds the structured payload.
+    private Map<String, Object> getBarcodeMap(Barcode barcode, ImageTransform transform, String detail) {
+        Map<String, Object> barcodeMap = new HashMap<>();
+        barcodeMap.put("type", barcode.getValueType());
+        barcodeMap.put("format", barcode.getFormat());
+        barcodeMap.put("rawValue", barcode.getRawValue());
+        barcodeMap.put("rect", getBoundingPoints(transform.mapRect(barcode.getBoundingBox())));
+        if (DETAIL_MINIMAL.equals(detail)) return barcodeMap;
+        barcodeMap.put("rawBytes", barcode.getRawBytes());
+        barcodeMap.put("displayValue", barcode.getDisplayValue());
+        Point[] cornerPoints = barcode.getCornerPoints();
+        List<Map<String, Integer>> points = new ArrayList<>();
+        addPoints(cornerPoints, points, transform);
+        barcodeMap.put("points", points);
+        if (DETAIL_RAW.equals(detail)) return barcodeMap;
+        putPayload(barcode, barcodeMap);
+        return barcodeMap;
     }
 
-    private void addPoints(Point[] cornerPoints, List<Map<String, Integer>> points) {
+    //Puts the fields of the structured payload of the barcode, e.g. the ones of a contact or a Wi-Fi network.
+    private void putPayload(Barcode barcode, Map<String, Object> barcodeMap) {
+        int valueType = barcode.getValueType();
+        switch (valueType) {
+            case Barcode.TYPE_UNKNOWN:
+            case Barcode.TYPE_ISBN:
+            case Barcode.TYPE_PRODUCT:
+            case Barcode.TYPE_TEXT:
+                break;
+            case Barcode.TYPE_WIFI:
+                barcodeMap.put("ssid", barcode.getWifi().getSsid());
+                barcodeMap.put("password", barcode.getWifi().getPassword());
+                barcodeMap.put("encryption", barcode.getWifi().getEncryptionType());
+                break;
+            case Barcode.TYPE_URL:
+                barcodeMap.put("title", barcode.getUrl().getTitle());
+                barcodeMap.put("url", barcode.getUrl().getUrl());
+                break;
+            case Barcode.TYPE_EMAIL:
+                barcodeMap.put("address", barcode.getEmail().getAddress());
+                barcodeMap.put("body", barcode.getEmail().getBody());
+                barcodeMap.put("subject", barcode.getEmail().getSubject());
+                barcodeMap.put("emailType", barcode.getEmail().getType());
+                break;
+            case Barcode.TYPE_PHONE:
+                barcodeMap.put("number", barcode.getPhone().getNumber());
+                barcodeMap.put("phoneType", barcode.getPhone().getType());
+                break;
+            case Barcode.TYPE_SMS:
+                barcodeMap.put("message", barcode.getSms().getMessage());
+                barcodeMap.put("number", barcode.getSms().getPhoneNumber());
+                break;
+            case Barcode.TYPE_GEO:
+                barcodeMap.put("latitude", barcode.getGeoPoint().getLat());
+                barcodeMap.put("longitude", barcode.getGeoPoint().getLng());
+                break;
+            case Barcode.TYPE_DRIVER_LICENSE:
+                barcodeMap.put("addressCity", barcode.getDriverLicense().getAddressCity());
+                barcodeMap.put("addressState", barcode.getDriverLicense().getAddressState());
+                barcodeMap.put("addressZip", barcode.getDriverLicense().getAddressZip());
+                barcodeMap.put("addressStreet", barcode.getDriverLicense().getAddressStreet());
+                barcodeMap.put("issueDate", barcode.getDriverLicense().getIssueDate());
+                barcodeMap.put("birthDate", barcode.getDriverLicense().getBirthDate());
+                barcodeMap.put("expiryDate", barcode.getDriverLicense().getExpiryDate());
+                barcodeMap.put("gender", barcode.getDriverLicense().getGender());
+                barcodeMap.put("licenseNumber", barcode.getDriverLicense().getLicenseNumber());
+                barcodeMap.put("firstName", barcode.getDriverLicense().getFirstName());
+                barcodeMap.put("lastName", barcode.getDriverLicense().getLastName());
+                barcodeMap.put("country", barcode.getDriverLicense().getIssuingCountry());
+                break;
+            case Barcode.TYPE_CONTACT_INFO:
+                barcodeMap.put("firstName", barcode.getContactInfo().getName().getFirst());
+                barcodeMap.put("lastName", barcode.getContactInfo().getName().getLast());
+                barcodeMap.put("formattedName", barcode.getContactInfo().getName().getFormattedName());
+                barcodeMap.put("organization", barcode.getContactInfo().getOrganization());
+                List<Map<String, Object>> queries = new ArrayList<>();
+                for (Barcode.Address address : barcode.getContactInfo().getAddresses()) {
+                    Map<String, Object> addressMap = new HashMap<>();
+                    addressMap.put("addressType", address.getType());
+                    List<String> addressLines = new ArrayList<>();
+                    Collections.addAll(addressLines, address.getAddressLines());
+                    addressMap.put("addressLines", addressLines);
+                    queries.add(addressMap);
+                }
+                barcodeMap.put("addresses", queries);
+                queries = new ArrayList<>();
+                for (Barcode.Phone phone : barcode.getContactInfo().getPhones()) {
+                    Map<String, Object> phoneMap = new HashMap<>();
+                    phoneMap.put("number", phone.getNumber());
+                    phoneMap.put("phoneType", phone.getType());
+                    queries.add(phoneMap);
+                }
+                barcodeMap.put("phones", queries);
+                queries = new ArrayList<>();
+                for (Barcode.Email email : barcode.getContactInfo().getEmails()) {
+                    Map<String, Object> emailMap = new HashMap<>();
+                    emailMap.put("address", email.getAddress());
+                    emailMap.put("body", email.getBody());
+                    emailMap.put("subject", email.getSubject());
+                    emailMap.put("emailType", email.getType());
+                    queries.add(emailMap);
+                }
+                barcodeMap.put("emails", queries);
+                List<String> urls = new ArrayList<>(barcode.getContactInfo().getUrls());
+                barcodeMap.put("urls", urls);
+                break;
+            case Barcode.TYPE_CALENDAR_EVENT:
+                barcodeMap.put("description", barcode.getCalendarEvent().getDescription());
+                barcodeMap.put("location", barcode.getCalendarEvent().getLocation());
+                barcodeMap.put("status", barcode.getCalendarEvent().getStatus());
+                barcodeMap.put("summary", barcode.getCalendarEvent().getSummary());
+                barcodeMap.put("organizer", barcode.getCalendarEvent().getOrganizer());
+                barcodeMap.put("start", barcode.getCalendarEvent().getStart().getRawValue());
+                barcodeMap.put("end", barcode.getCalendarEvent().getEnd().getRawValue());
+                break;
+        }
+    }
+
+    private void addPoints(Point[] cornerPoints, List<Map<String, Integer>> points, ImageTransform transform) {
         for (Point point : cornerPoints) {
             Map<String, Integer> p = new HashMap<>();
-            p.put("x", point.x);
-            p.put("y", point.y);
+            p.put("x", transform.mapX(point.x));
+            p.put("y", transform.mapY(point.y));
             points.add(p);
         }
     }
@@ -213,9 +340,65 @@ public class BarcodeScanner implements MethodChannel.MethodCallHandler {
         return frame;
     }
 
+    @Nullable
+    private BarcodeSession getSession(String id, MethodCall call) {
+        Map<String, Object> options = call.argument("session");
+        if (options == null) return null;
+        BarcodeSession session = sessions.get(id);
+        if (session == null) {
+            session = new BarcodeSession(options);
+            sessions.put(id, session);
+        }
+        return session;
+    }
+
+    @Nullable
+    private FormatNarrowing getNarrowing(String id, MethodCall call) {
+        Map<String, Object> options = call.argument("adaptiveFormats");
+        if (options == null) return null;
+        FormatNarrowing narrowing = narrowings.get(id);
+        if (narrowing == null) {
+            List<Integer> formatList = call.argument("formats");
+            int formats = 0;
+            for (int format : formatList) {
+                formats |= format;
+            }
+            narrowing = new FormatNarrowing(formats, options);
+            narrowings.put(id, narrowing);
+        }
+        return narrowing;
+    }
+
+    private RecentBarcodes getRecentBarcodes(String id) {
+        RecentBarcodes barcodes = recentBarcodes.get(id);
+        if (barcodes == null) {
+            barcodes = new RecentBarcodes();
+            recentBarcodes.put(id, barcodes);
+        }
+        return barcodes;
+    }
+
+    //Returns the "type" and payload of a barcode sent with a "handle", or null if it is no longer kept.
+    @Nullable
+    private Map<String, Object> getDetails(MethodCall call) {
+        RecentBarcodes barcodes = recentBarcodes.get((String) call.argument("id"));
+        Integer handle = call.argument("handle");
+        Barcode barcode = barcodes != null && handle != null ? barcodes.get(handle) : null;
+        if (barcode == null) return null;
+        Map<String, Object> details = new HashMap<>();
+        details.put("type", barcode.getValueType());
+        putPayload(barcode, details);
+        return details;
+    }
+
     private void closeDetector(MethodCall call) {
         String id = call.argument("id");
+        VisionAnalyzers.close(this, id);
+        recentBarcodes.remove(id);
+        FormatNarrowing narrowing = narrowings.remove(id);
+        if (narrowing != null) narrowing.close();
         com.google.mlkit.vision.barcode.BarcodeScanner barcodeScanner = instances.get(id);
+        sessions.remove(id);
         if (barcodeScanner == null) return;
         barcodeScanner.close();
         instances.remove(id);
@@ -0,0 +1,162 @@
+package com.google_mlkit_barcode_scanning;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+//Remembers the barcodes a scanner has reported, so a stream only sends a barcode when it is first seen and once more
+//when it is lost. A code is keyed by its format and a 64 bit hash of its raw bytes. The last "maxEntries" codes are kept
+//exactly in an LRU map, together with the time they were last seen, and are reported again when they were not seen
+//for "ttl" milliseconds. Codes that fall out of the map go into a Bloom filter sized for "expectedCodes" codes, so
+//memory stays bounded for sessions with many thousands of codes. With a TTL the filter has two generations that are
+//swapped every TTL, so it forgets codes one to two TTLs after they fell out of the map.
+//A code is only reported lost when it would be reported again on coming back: with a TTL, once it was out of sight for
+//both "lostAfter" and the TTL. The session then forgets it, and codes still in sight never go into the filter, so a lost
+//code is always reported when it is seen again. Without a TTL codes are reported once and never lost.
+class BarcodeSession {
+    //Probability of taking a new code for one already reported, once the filter holds "expectedCodes" codes.
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    private final long ttl;
+    private final long lostAfter;
+    private final int maxEntries;
+    private final int bitCount;
+    private final int hashCount;
+    private final LinkedHashMap<Long, Long> lastSeen;
+    private final Map<Long, Sighting> visible = new HashMap<>();
+    private long[] current;
+    private long[] previous;
+    private long rotatedAt;
+
+    private static class Sighting {
+        final int format;
+        final String rawValue;
+        long lastSeen;
+
+        Sighting(int format, String rawValue) {
+            this.format = format;
+            this.rawValue = rawValue;
+        }
+    }
+
+    BarcodeSession(Map<String, Object> options) {
+        ttl = getLong(options, "ttl", 0);
+        lostAfter = getLong(options, "lostAfter", 500);
+        maxEntries = (int) Math.max(1, getLong(options, "maxEntries", 1024));
+        long expectedCodes = Math.max(1, getLong(options, "expectedCodes", 100000));
+        bitCount = (int) Math.min(Integer.MAX_VALUE - 63,
+                Math.ceil(-expectedCodes * Math.log(FALSE_POSITIVE_RATE) / (Math.log(2) * Math.log(2))));
+        hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedCodes * Math.log(2)));
+        current = new long[(bitCount + 63) / 64];
+        previous = new long[current.length];
+        lastSeen = new LinkedHashMap<Long, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+                if (size() <= maxEntries) return false;
+                if (!visible.containsKey(eldest.getKey())) add(current, eldest.getKey());
+                return true;
+            }
+        };
+    }
+
+    //Returns whether the barcode seen at [now] should be reported, and marks it as seen.
+    synchronized boolean isFirstSighting(int format, byte[] rawBytes, String rawValue, long now) {
+        rotate(now);
+        long key = getKey(format, rawBytes, rawValue);
+
+        if (ttl > 0) {
+            Sighting sighting = visible.get(key);
+            if (sighting == null) {
+                sighting = new Sighting(format, rawValue);
+                visible.put(key, sighting);
+            }
+            sighting.lastSeen = now;
+        }
+
+        Long seen = lastSeen.put(key, now);
+        if (seen != null) return ttl > 0 && now - seen > ttl;
+        return !contains(current, key) && !contains(previous, key);
+    }
+
+    //Returns the "format" and "rawValue" of the barcodes that were not seen for "lostAfter" milliseconds and the TTL at
+    //[now], and forgets them.
+    synchronized List<Map<String, Object>> takeLost(long now) {
+        List<Map<String, Object>> lost = new ArrayList<>();
+        long outOfSight = Math.max(lostAfter, ttl);
+        Iterator<Map.Entry<Long, Sighting>> iterator = visible.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Sighting> entry = iterator.next();
+            Sighting sighting = entry.getValue();
+            if (now - sighting.lastSeen <= outOfSight) continue;
+            iterator.remove();
+            lastSeen.remove(entry.getKey());
+            Map<String, Object> lostMap = new HashMap<>();
+            lostMap.put("format", sighting.format);
+            lostMap.put("rawValue", sighting.rawValue);
+            lost.add(lostMap);
+        }
+        return lost;
+    }
+
+    synchronized void reset() {
+        lastSeen.clear();
+        visible.clear();
+        current = new long[current.length];
+        previous = new long[previous.length];
+    }
+
+    private void rotate(long now) {
+        if (ttl <= 0) return;
+        if (rotatedAt == 0) rotatedAt = now;
+        if (now - rotatedAt <= ttl) return;
+        long[] cleared = previous;
+        Arrays.fill(cleared, 0);
+        previous = current;
+        current = cleared;
+        rotatedAt = now;
+    }
+
+    //The bits of a key are found by double hashing with both halves of it.
+    private void add(long[] bits, long key) {
+        int first = (int) key;
+        int second = (int) (key >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            int bit = ((first + i * second) & Integer.MAX_VALUE) % bitCount;
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    private boolean contains(long[] bits, long key) {
+        int first = (int) key;
+        int second = (int) (key >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            int bit = ((first + i * second) & Integer.MAX_VALUE) % bitCount;
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    //64 bit FNV-1a over the format and the raw bytes, or the raw value when there are no bytes.
+    static long getKey(int format, byte[] rawBytes, String rawValue) {
+        long hash = 0xcbf29ce484222325L;
+        for (int shift = 0; shift < 32; shift += 8) {
+            hash = (hash ^ ((format >>> shift) & 0xff)) * 0x100000001b3L;
+        }
+        byte[] bytes = rawBytes != null ? rawBytes
+                : rawValue != null ? rawValue.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        for (byte b : bytes) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static long getLong(Map<String, Object> options, String key, long defaultValue) {
+        Object value = options.get(key);
+        return value instanceof Number ? ((Number) value).longValue() : defaultValue;
+    }
+}
@@ -0,0 +1,152 @@
+package com.google_mlkit_barcode_scanning;
+
+import com.google.mlkit.vision.barcode.BarcodeScannerOptions;
+import com.google.mlkit.vision.barcode.BarcodeScanning;
+import com.google.mlkit.vision.barcode.common.Barcode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//Narrows the formats a scanner looks for to the ones it actually finds, since every enabled format costs time.
+//For "warmUpFrames" frames the scanner looks for all configured formats and records which ones it finds, then it only
+//looks for those. Every "fullScanInterval" frames it still looks for all of them, and formats found then are added.
+//After "missStreak" frames in a row without a barcode it goes back to all formats and warms up again.
+//A client is kept for the configured formats and for the narrowed ones. Whenever the narrowed formats change, clients
+//for other sets are closed as soon as no frame is scanned with them any more, so widening and narrowing again over a long
+//session does not pile up detectors.
+class FormatNarrowing {
+    private final int configuredFormats;
+    private final int warmUpFrames;
+    private final int missStreakLimit;
+    private final int fullScanInterval;
+    private final Map<Integer, com.google.mlkit.vision.barcode.BarcodeScanner> clients = new HashMap<>();
+    private final Map<Integer, Integer> inUse = new HashMap<>();
+    private final Map<Integer, Integer> hits = new HashMap<>();
+    private int frames;
+    private int warmUpCount;
+    private int seenFormats;
+    //0 while warming up.
+    private int narrowedFormats;
+    private int missStreak;
+    private int framesSinceFullScan;
+    private int widenings;
+
+    FormatNarrowing(int configuredFormats, Map<String, Object> options) {
+        this.configuredFormats = configuredFormats;
+        warmUpFrames = getInt(options, "warmUpFrames", 30);
+        missStreakLimit = getInt(options, "missStreak", 30);
+        fullScanInterval = getInt(options, "fullScanInterval", 60);
+    }
+
+    //Returns the formats to look for in the next frame.
+    synchronized int nextFormats() {
+        frames++;
+        if (narrowedFormats == 0) return configuredFormats;
+        if (++framesSinceFullScan >= fullScanInterval) {
+            framesSinceFullScan = 0;
+            return configuredFormats;
+        }
+        return narrowedFormats;
+    }
+
+    //Returns the client for [formats], which is handed back with release() once the frame is scanned.
+    synchronized com.google.mlkit.vision.barcode.BarcodeScanner getClient(int formats) {
+        com.google.mlkit.vision.barcode.BarcodeScanner client = clients.get(formats);
+        if (client == null) {
+            client = BarcodeScanning.getClient(new BarcodeScannerOptions.Builder().setBarcodeFormats(formats).build());
+            clients.put(formats, client);
+        }
+        Integer count = inUse.get(formats);
+        inUse.put(formats, count == null ? 1 : count + 1);
+        return client;
+    }
+
+    synchronized void release(int formats) {
+        Integer count = inUse.get(formats);
+        if (count == null) return;
+        if (count > 1) {
+            inUse.put(formats, count - 1);
+            return;
+        }
+        inUse.remove(formats);
+        if (!isKept(formats)) closeClient(formats);
+    }
+
+    //Records the [barcodes] found in a frame that was scanned for [formats].
+    synchronized void record(int formats, List<Barcode> barcodes) {
+        int found = 0;
+        for (Barcode barcode : barcodes) {
+            int format = barcode.getFormat();
+            Integer count = hits.get(format);
+            hits.put(format, count == null ? 1 : count + 1);
+            found |= format;
+        }
+
+        if (narrowedFormats == 0) {
+            seenFormats |= found;
+            if (++warmUpCount < warmUpFrames) return;
+            //Without any barcode there is nothing to narrow to, the warm-up starts over.
+            warmUpCount = 0;
+            narrowedFormats = seenFormats;
+            missStreak = 0;
+            framesSinceFullScan = 0;
+            closeUnused();
+            return;
+        }
+
+        if (formats == configuredFormats && (narrowedFormats | found) != narrowedFormats) {
+            narrowedFormats |= found;
+            closeUnused();
+        }
+        if (found != 0) {
+            missStreak = 0;
+        } else if (++missStreak >= missStreakLimit) {
+            narrowedFormats = 0;
+            seenFormats = 0;
+            warmUpCount = 0;
+            missStreak = 0;
+            widenings++;
+            closeUnused();
+        }
+    }
+
+    private boolean isKept(int formats) {
+        return formats == configuredFormats || formats == narrowedFormats;
+    }
+
+    //Closes the clients of the sets that are no longer used and that no frame is being scanned with.
+    private void closeUnused() {
+        for (Integer formats : new ArrayList<>(clients.keySet())) {
+            if (!isKept(formats) && !inUse.containsKey(formats)) closeClient(formats);
+        }
+    }
+
+    private void closeClient(int formats) {
+        com.google.mlkit.vision.barcode.BarcodeScanner client = clients.remove(formats);
+        if (client != null) client.close();
+    }
+
+    synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("frames", frames);
+        stats.put("hits", new HashMap<>(hits));
+        stats.put("narrowed", narrowedFormats != 0);
+        stats.put("formats", narrowedFormats != 0 ? narrowedFormats : configuredFormats);
+        stats.put("widenings", widenings);
+        return stats;
+    }
+
+    synchronized void close() {
+        for (com.google.mlkit.vision.barcode.BarcodeScanner client : clients.values()) {
+            client.close();
+        }
+        clients.clear();
+    }
+
+    private static int getInt(Map<String, Object> options, String key, int defaultValue) {
+        Object value = options.get(key);
+        return value instanceof Number ? Math.max(1, ((Number) value).intValue()) : defaultValue;
+    }
+}
@@ -2,21 +2,30 @@ package com.google_mlkit_barcode_scanning;
 
 import androidx.annotation.NonNull;
 
+import com.google_mlkit_commons.VisionAnalyzers;
+
 import io.flutter.embedding.engine.plugins.FlutterPlugin;
+import io.flutter.plugin.common.BinaryMessenger;
 import io.flutter.plugin.common.MethodChannel;
+import io.flutter.plugin.common.StandardMethodCodec;
 
 public class GoogleMlKitBarcodeScanningPlugin implements FlutterPlugin {
     private MethodChannel channel;
+    private static final String analyzerType = "barcode";
     private static final String channelName = "google_mlkit_barcode_scanning";
 
     @Override
     public void onAttachedToEngine(@NonNull FlutterPluginBinding flutterPluginBinding) {
-        channel = new MethodChannel(flutterPluginBinding.getBinaryMessenger(), channelName);
-        channel.setMethodCallHandler(new BarcodeScanner(flutterPluginBinding.getApplicationContext()));
+        BinaryMessenger messenger = flutterPluginBinding.getBinaryMessenger();
+        channel = new MethodChannel(messenger, channelName, StandardMethodCodec.INSTANCE, messenger.makeBackgroundTaskQueue());
+        BarcodeScanner handler = new BarcodeScanner(flutterPluginBinding.getApplicationContext());
+        channel.setMethodCallHandler(handler);
+        VisionAnalyzers.register(analyzerType, handler);
     }
 
     @Override
     public void onDetachedFromEngine(@NonNull FlutterPluginBinding binding) {
         channel.setMethodCallHandler(null);
+        VisionAnalyzers.unregister(analyzerType);
     }
 }
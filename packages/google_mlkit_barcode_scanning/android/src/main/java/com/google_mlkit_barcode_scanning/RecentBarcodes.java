@@ -0,0 +1,42 @@
+package com.google_mlkit_barcode_scanning;
+
+import com.google.mlkit.vision.barcode.common.Barcode;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+//Keeps the last barcodes a scanner sent without their payload, by the handle they were sent with, so the payload of one
+//of them can be parsed when it is asked for instead of for every barcode in every frame. A code keeps its handle for as
+//long as it is kept, it is keyed like in BarcodeSession, and only its latest sighting is held. The codes seen least
+//recently are dropped once there are more than CAPACITY of them.
+class RecentBarcodes {
+    private static final int CAPACITY = 64;
+
+    private final Map<Integer, Barcode> barcodes = new HashMap<>();
+    private final LinkedHashMap<Long, Integer> handles = new LinkedHashMap<Long, Integer>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Integer> eldest) {
+            if (size() <= CAPACITY) return false;
+            barcodes.remove(eldest.getValue());
+            return true;
+        }
+    };
+    private int nextHandle;
+
+    //Returns the handle of [barcode], the same one for every frame the code is seen in.
+    synchronized int add(Barcode barcode) {
+        long key = BarcodeSession.getKey(barcode.getFormat(), barcode.getRawBytes(), barcode.getRawValue());
+        Integer handle = handles.get(key);
+        if (handle == null) {
+            handle = nextHandle++;
+            handles.put(key, handle);
+        }
+        barcodes.put(handle, barcode);
+        return handle;
+    }
+
+    synchronized Barcode get(int handle) {
+        return barcodes.get(handle);
+    }
+}
@@ -0,0 +1,134 @@
+package com.google_mlkit_barcode_scanning;
+
+import android.content.Context;
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.os.SystemClock;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.mlkit.vision.barcode.common.Barcode;
+import com.google.mlkit.vision.common.InputImage;
+import com.google_mlkit_commons.ImageTiler;
+import com.google_mlkit_commons.ImageTransform;
+import com.google_mlkit_commons.InputImageConverter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+
+//Scans a large still image tile by tile at full resolution, so barcodes that are too small to be found in the downscaled
+//image are found as well. Tiles of "tileSize" pixels overlap by "overlap" pixels, which should be more than the size of
+//the largest barcode, so every barcode lies whole within at least one tile. Tiles are converted with an ImageTiler,
+//which decodes only that region of an image file, and scanned on a bounded pool of workers from the center of the
+//image outwards. Tiles that have not started once "timeBudget" milliseconds have passed are skipped.
+class TiledBarcodeSearch {
+    private static final ExecutorService workers = ImageTiler.newWorkerPool(
+            Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() - 1)), "google_mlkit_barcode_tiles");
+
+    private final int tileSize;
+    private final int overlap;
+    private final long timeBudget;
+
+    //A barcode found in a tile, with the transform into the full image.
+    static class Hit {
+        final Barcode barcode;
+        final ImageTransform transform;
+        final Rect box;
+
+        Hit(Barcode barcode, ImageTransform transform) {
+            this.barcode = barcode;
+            this.transform = transform;
+            Rect boundingBox = barcode.getBoundingBox();
+            this.box = boundingBox != null ? transform.mapRect(boundingBox) : new Rect();
+        }
+    }
+
+    TiledBarcodeSearch(Map<String, Object> options) {
+        tileSize = Math.max(64, ImageTiler.getOption(options, "tileSize", 1024));
+        overlap = Math.max(0, Math.min(tileSize / 2, ImageTiler.getOption(options, "overlap", 160)));
+        timeBudget = ImageTiler.getOption(options, "timeBudget", 0);
+    }
+
+    //Starts scanning the tiles of the image in [imageData]. The task of a skipped tile completes with null.
+    List<Task<List<Hit>>> scan(Map<String, Object> imageData, Context context,
+                               com.google.mlkit.vision.barcode.BarcodeScanner scanner) throws IOException {
+        ImageTiler tiler = new ImageTiler(imageData, context);
+        Point size = tiler.getSize();
+        long deadline = timeBudget > 0 ? SystemClock.elapsedRealtime() + timeBudget : Long.MAX_VALUE;
+        List<Task<List<Hit>>> tasks = new ArrayList<>();
+        for (Rect tile : getTiles(size.x, size.y)) {
+            tasks.add(Tasks.call(workers, () -> scanTile(tiler, tile, scanner, deadline)));
+        }
+        Tasks.whenAllComplete(tasks).addOnCompleteListener(workers, done -> tiler.close());
+        return tasks;
+    }
+
+    //Returns the tiles covering a width x height image, the ones nearest to its center first.
+    List<Rect> getTiles(int width, int height) {
+        List<Rect> tiles = ImageTiler.getTiles(width, height, tileSize, overlap);
+        int centerX = width / 2;
+        int centerY = height / 2;
+        Collections.sort(tiles, (a, b) -> Long.compare(
+                distanceSquared(a, centerX, centerY), distanceSquared(b, centerX, centerY)));
+        return tiles;
+    }
+
+    private static long distanceSquared(Rect tile, int x, int y) {
+        long dx = tile.centerX() - x;
+        long dy = tile.centerY() - y;
+        return dx * dx + dy * dy;
+    }
+
+    @Nullable
+    private static List<Hit> scanTile(ImageTiler tiler, Rect tile,
+                                      com.google.mlkit.vision.barcode.BarcodeScanner scanner, long deadline) throws Exception {
+        if (SystemClock.elapsedRealtime() > deadline) return null;
+        InputImage inputImage = tiler.getTile(tile);
+        try {
+            List<Barcode> barcodes = Tasks.await(scanner.process(inputImage));
+            ImageTransform transform = InputImageConverter.getImageTransform(inputImage);
+            List<Hit> hits = new ArrayList<>(barcodes.size());
+            for (Barcode barcode : barcodes) {
+                hits.add(new Hit(barcode, transform));
+            }
+            return hits;
+        } finally {
+            tiler.release(inputImage);
+        }
+    }
+
+    //Drops the copies of barcodes found in more than one tile: the same format and raw value with intersecting boxes.
+    //The copy with the larger box is kept, it is the one least cut off by the edge of its tile.
+    static List<Hit> merge(List<Hit> hits) {
+        List<Hit> merged = new ArrayList<>();
+        for (Hit hit : hits) {
+            int duplicate = -1;
+            for (int i = 0; i < merged.size(); i++) {
+                Hit other = merged.get(i);
+                if (other.barcode.getFormat() == hit.barcode.getFormat()
+                        && Objects.equals(other.barcode.getRawValue(), hit.barcode.getRawValue())
+                        && Rect.intersects(other.box, hit.box)) {
+                    duplicate = i;
+                    break;
+                }
+            }
+            if (duplicate < 0) {
+                merged.add(hit);
+            } else if (area(hit.box) > area(merged.get(duplicate).box)) {
+                merged.set(duplicate, hit);
+            }
+        }
+        return merged;
+    }
+
+    private static long area(Rect rect) {
+        return (long) rect.width() * rect.height();
+    }
+}
@@ -14,20 +14,112 @@ class BarcodeScanner {
   /// Instance id.
   final id = DateTime.now().microsecondsSinceEpoch.toString();
 
+  /// Whether results are sent in the packed binary format of [PackedResultCodec].
+  /// Only used on Android.
+  final bool packedResults;
+
+  /// If set, the scanner remembers the barcodes it reported and only returns
+  /// a barcode when it is first seen, see [processSessionImage].
+  /// Only used on Android.
+  final BarcodeSessionOptions? session;
+
+  /// If set, the scanner only looks for the [formats] it actually finds, see
+  /// [AdaptiveFormatOptions]. Only used on Android.
+  final AdaptiveFormatOptions? adaptiveFormats;
+
+  /// How much of each barcode is sent, see [BarcodeDetail]. Only used on
+  /// Android.
+  final BarcodeDetail detail;
+
   /// Constructor to create an instance of [BarcodeScanner].
   /// Returns a barcode scanner with the given [formats] options.
-  BarcodeScanner({this.formats = const [BarcodeFormat.all]});
+  BarcodeScanner(
+      {this.formats = const [BarcodeFormat.all],
+      this.packedResults = false,
+      this.session,
+      this.adaptiveFormats,
+      this.detail = BarcodeDetail.full});
 
   /// Processes the given [InputImage] for barcode scanning. Returns a list of [Barcode].
+  ///
+  /// With a [session], only the barcodes seen for the first time are returned.
   Future<List<Barcode>> processImage(InputImage inputImage) async {
+    final result = await _channel.invokeMethod('vision#startBarcodeScanner',
+        {..._arguments(), 'imageData': inputImage.toJson()});
+    return _parseResult(result);
+  }
+
+  /// Processes the given [InputImage] for a scanner with a [session]. Returns
+  /// the barcodes seen for the first time and the ones that left the image.
+  Future<BarcodeSessionUpdate> processSessionImage(
+      InputImage inputImage) async {
+    final result = await _channel.invokeMethod('vision#startBarcodeScanner',
+        {..._arguments(), 'imageData': inputImage.toJson()});
+    return BarcodeSessionUpdate._fromJson(PackedResultCodec.unpack(result));
+  }
+
+  /// Returns how often each format was found so far, or null if the scanner
+  /// has no [adaptiveFormats] or did not process an image yet.
+  Future<BarcodeFormatStats?> getFormatStats() async {
+    final result = await _channel
+        .invokeMethod('vision#getBarcodeFormatStats', {'id': id});
+    return result == null ? null : BarcodeFormatStats._fromJson(result);
+  }
+
+  /// Returns the structured [Barcode.value] of a barcode scanned with a
+  /// [detail] other than [BarcodeDetail.full], or null if it has none or the
+  /// scanner no longer keeps it. The scanner keeps the 64 codes it saw most
+  /// recently, and a code keeps its [Barcode.handle] from frame to frame.
+  Future<BarcodeValue?> getDetails(Barcode barcode) async {
+    if (barcode.handle == null) return barcode.value;
+    final result = await _channel.invokeMethod('vision#getBarcodeDetails',
+        {'id': id, 'handle': barcode.handle});
+    if (result == null) return null;
+    return Barcode._valueFromJson(BarcodeType.values[result['type']], result);
+  }
+
+  /// Scans a large still image tile by tile at full resolution, which finds
+  /// barcodes too small to be found in the whole image. Best used with image
+  /// files, of which only one tile at a time is decoded.
+  /// Only available on Android.
+  Future<TiledBarcodeResult> processTiledImage(InputImage inputImage,
+      {BarcodeTiling tiling = const BarcodeTiling()}) async {
     final result = await _channel.invokeMethod('vision#startBarcodeScanner', {
-      'formats': formats.map((f) => f.rawValue).toList(),
-      'id': id,
-      'imageData': inputImage.toJson()
+      ..._arguments(),
+      'imageData': inputImage.toJson(),
+      'tiling': tiling.toJson(),
     });
+    return TiledBarcodeResult._fromJson(PackedResultCodec.unpack(result));
+  }
 
+  /// Forgets the barcodes reported so far in the [session].
+  Future<void> resetSession() =>
+      _channel.invokeMethod('vision#resetBarcodeSession', {'id': id});
+
+  /// Returns this scanner as a [VisionAnalysis] for [VisionAnalyzer.analyze],
+  /// optionally running on a copy of the image no larger than [maxDimension].
+  VisionAnalysis<List<Barcode>> analysis({int? maxDimension}) =>
+      VisionAnalysis(
+          type: 'barcode',
+          arguments: _arguments(),
+          parse: _parseResult,
+          maxDimension: maxDimension);
+
+  Map<String, dynamic> _arguments() => {
+        'formats': formats.map((f) => f.rawValue).toList(),
+        'id': id,
+        'packedResults': packedResults,
+        if (session != null) 'session': session!.toJson(),
+        'detail': detail.name,
+        if (adaptiveFormats != null)
+          'adaptiveFormats': adaptiveFormats!.toJson(),
+      };
+
+  static List<Barcode> _parseResult(dynamic result) {
+    dynamic barcodes = PackedResultCodec.unpack(result);
+    if (barcodes is Map) barcodes = barcodes['barcodes'];
     final barcodesList = <Barcode>[];
-    for (final dynamic json in result) {
+    for (final dynamic json in barcodes) {
       barcodesList.add(Barcode.fromJson(json));
     }
 
@@ -39,6 +131,233 @@ class BarcodeScanner {
       _channel.invokeMethod('vision#closeBarcodeScanner', {'id': id});
 }
 
+/// How much of each barcode a [BarcodeScanner] sends.
+enum BarcodeDetail {
+  /// The type, format, raw value and bounding box.
+  minimal,
+
+  /// Also the raw bytes, display value and corner points.
+  raw,
+
+  /// Also the structured [Barcode.value].
+  full,
+}
+
+/// Options for [BarcodeScanner.processTiledImage].
+///
+/// Tiles are scanned on a few worker threads, from the center of the image
+/// outwards. Barcodes found in the overlap of two tiles are reported once.
+class BarcodeTiling {
+  /// The width and height of a tile, in pixels of the image.
+  final int tileSize;
+
+  /// How many pixels neighboring tiles overlap. Barcodes larger than this may
+  /// be cut by every tile they lie in. At most half of [tileSize].
+  final int overlap;
+
+  /// If set, tiles not started within this time are skipped.
+  final Duration? timeBudget;
+
+  /// Constructor to create an instance of [BarcodeTiling].
+  const BarcodeTiling(
+      {this.tileSize = 1024, this.overlap = 160, this.timeBudget});
+
+  /// Returns a json representation of an instance of [BarcodeTiling].
+  Map<String, dynamic> toJson() => {
+        'tileSize': tileSize,
+        'overlap': overlap,
+        'timeBudget': timeBudget?.inMilliseconds,
+      };
+}
+
+/// The result of [BarcodeScanner.processTiledImage].
+class TiledBarcodeResult {
+  /// The barcodes found, in the coordinates of the whole image.
+  final List<Barcode> barcodes;
+
+  /// The number of tiles the image was split into.
+  final int tiles;
+
+  /// The number of tiles scanned before the [BarcodeTiling.timeBudget] ran
+  /// out.
+  final int scannedTiles;
+
+  /// Constructor to create an instance of [TiledBarcodeResult].
+  TiledBarcodeResult(
+      {required this.barcodes,
+      required this.tiles,
+      required this.scannedTiles});
+
+  /// Whether every tile was scanned.
+  bool get complete => scannedTiles == tiles;
+
+  factory TiledBarcodeResult._fromJson(Map<dynamic, dynamic> json) =>
+      TiledBarcodeResult(
+        barcodes: BarcodeScanner._parseResult(json['barcodes']),
+        tiles: json['tiles'],
+        scannedTiles: json['scannedTiles'],
+      );
+}
+
+/// Options for the session of a [BarcodeScanner].
+///
+/// A barcode is keyed by its format and raw bytes. The last [maxEntries]
+/// barcodes are remembered exactly, older ones in a probabilistic filter sized
+/// for [expectedCodes] barcodes, which may take about 1 in 100 new barcodes
+/// for one already reported once it is full.
+///
+/// A barcode is only reported lost when it would be reported again once it
+/// comes back, so every barcode that came back after
+/// [BarcodeSessionUpdate.lost] named it is in [BarcodeSessionUpdate.barcodes]
+/// again.
+class BarcodeSessionOptions {
+  /// How long a barcode has to be out of sight to be reported again. If null,
+  /// a barcode is reported once per session and never reported lost.
+  final Duration? ttl;
+
+  /// How long a barcode has to be out of sight to be reported as lost, with
+  /// a [ttl]. Barcodes are reported lost no sooner than [ttl].
+  final Duration lostAfter;
+
+  /// The number of barcodes remembered exactly.
+  final int maxEntries;
+
+  /// The number of barcodes a session is expected to see.
+  final int expectedCodes;
+
+  /// Constructor to create an instance of [BarcodeSessionOptions].
+  BarcodeSessionOptions(
+      {this.ttl,
+      this.lostAfter = const Duration(milliseconds: 500),
+      this.maxEntries = 1024,
+      this.expectedCodes = 100000});
+
+  /// Returns a json representation of an instance of [BarcodeSessionOptions].
+  Map<String, dynamic> toJson() => {
+        'ttl': ttl?.inMilliseconds,
+        'lostAfter': lostAfter.inMilliseconds,
+        'maxEntries': maxEntries,
+        'expectedCodes': expectedCodes,
+      };
+}
+
+/// The result of [BarcodeScanner.processSessionImage].
+class BarcodeSessionUpdate {
+  /// The barcodes seen for the first time.
+  final List<Barcode> barcodes;
+
+  /// The barcodes that were in sight and no longer are.
+  final List<LostBarcode> lost;
+
+  /// Constructor to create an instance of [BarcodeSessionUpdate].
+  BarcodeSessionUpdate({required this.barcodes, required this.lost});
+
+  factory BarcodeSessionUpdate._fromJson(dynamic json) {
+    if (json is! Map) {
+      return BarcodeSessionUpdate(
+          barcodes: BarcodeScanner._parseResult(json), lost: []);
+    }
+    return BarcodeSessionUpdate(
+      barcodes: BarcodeScanner._parseResult(json['barcodes']),
+      lost: [
+        for (final dynamic lost in json['lost'])
+          LostBarcode(
+              format: BarcodeFormatValue.fromRawValue(lost['format']),
+              rawValue: lost['rawValue']),
+      ],
+    );
+  }
+}
+
+/// A barcode that left the image during a session.
+class LostBarcode {
+  /// The format of the barcode.
+  final BarcodeFormat format;
+
+  /// The raw value of the barcode.
+  final String? rawValue;
+
+  /// Constructor to create an instance of [LostBarcode].
+  LostBarcode({required this.format, this.rawValue});
+}
+
+/// Options for a [BarcodeScanner] that narrows its formats to the ones it
+/// finds, since every format it looks for makes scanning slower.
+///
+/// For [warmUpFrames] images the scanner looks for all of its formats, then
+/// only for the ones it found. Every [fullScanInterval] images it looks for
+/// all of them again and keeps the ones it finds. After [missStreak] images in
+/// a row without a barcode it goes back to all formats and warms up again.
+class AdaptiveFormatOptions {
+  /// The number of images scanned for all formats before narrowing them.
+  final int warmUpFrames;
+
+  /// The number of images in a row without a barcode that widen the formats.
+  final int missStreak;
+
+  /// The number of images between two scans for all formats.
+  final int fullScanInterval;
+
+  /// Constructor to create an instance of [AdaptiveFormatOptions].
+  AdaptiveFormatOptions(
+      {this.warmUpFrames = 30,
+      this.missStreak = 30,
+      this.fullScanInterval = 60});
+
+  /// Returns a json representation of an instance of [AdaptiveFormatOptions].
+  Map<String, dynamic> toJson() => {
+        'warmUpFrames': warmUpFrames,
+        'missStreak': missStreak,
+        'fullScanInterval': fullScanInterval,
+      };
+}
+
+/// How often a [BarcodeScanner] with [AdaptiveFormatOptions] found each format.
+class BarcodeFormatStats {
+  /// The number of images processed.
+  final int frames;
+
+  /// The number of barcodes found per format.
+  final Map<BarcodeFormat, int> hits;
+
+  /// Whether the formats are narrowed at the moment.
+  final bool narrowed;
+
+  /// The formats looked for at the moment, outside of full scans.
+  final List<BarcodeFormat> activeFormats;
+
+  /// How often the formats were widened after a miss streak.
+  final int widenings;
+
+  /// Constructor to create an instance of [BarcodeFormatStats].
+  BarcodeFormatStats(
+      {required this.frames,
+      required this.hits,
+      required this.narrowed,
+      required this.activeFormats,
+      required this.widenings});
+
+  factory BarcodeFormatStats._fromJson(Map<dynamic, dynamic> json) {
+    final int formats = json['formats'];
+    return BarcodeFormatStats(
+      frames: json['frames'],
+      hits: {
+        for (final entry in (json['hits'] as Map).entries)
+          BarcodeFormatValue.fromRawValue(int.parse('${entry.key}')):
+              entry.value,
+      },
+      narrowed: json['narrowed'],
+      activeFormats: BarcodeFormat.values
+          .where((format) =>
+              format != BarcodeFormat.all &&
+              format != BarcodeFormat.unknown &&
+              formats & format.rawValue != 0)
+          .toList(),
+      widenings: json['widenings'],
+    );
+  }
+}
+
 /// Barcode formats supported by the barcode scanner.
 /// Options for specifying the barcode formats that the library can detect.
 enum BarcodeFormat {
@@ -216,6 +535,10 @@ class Barcode {
   /// Due to the possible perspective distortions, this is not necessarily a rectangle.
   final List<Point<int>> cornerPoints;
 
+  /// Identifies the barcode for [BarcodeScanner.getDetails] if it was scanned
+  /// with a [BarcodeDetail] other than [BarcodeDetail.full].
+  final int? handle;
+
   /// Constructor to create an instance of [Barcode].
   Barcode({
     required this.type,
@@ -226,6 +549,7 @@ class Barcode {
     required this.boundingBox,
     required this.cornerPoints,
     required this.value,
+    this.handle,
   });
 
   /// Returns an instance of [Barcode] from a given [json].
@@ -236,8 +560,24 @@ class Barcode {
     final rawValue = json['rawValue'];
     final rawBytes = json['rawBytes'];
     final boundingBox = RectJson.fromJson(json['rect']);
-    final cornerPoints = _listToCornerPoints(json['points']);
+    final cornerPoints = _listToCornerPoints(json['points'] ?? []);
+    final handle = json['handle'];
+
+    return Barcode(
+      type: type,
+      format: format,
+      value: handle == null ? _valueFromJson(type, json) : null,
+      displayValue: displayValue,
+      rawValue: rawValue,
+      rawBytes: rawBytes,
+      boundingBox: boundingBox,
+      cornerPoints: cornerPoints,
+      handle: handle,
+    );
+  }
 
+  static BarcodeValue? _valueFromJson(
+      BarcodeType type, Map<dynamic, dynamic> json) {
     BarcodeValue? value;
     switch (type) {
       case BarcodeType.wifi:
@@ -270,17 +610,7 @@ class Barcode {
       default:
         break;
     }
-
-    return Barcode(
-      type: type,
-      format: format,
-      value: value,
-      displayValue: displayValue,
-      rawValue: rawValue,
-      rawBytes: rawBytes,
-      boundingBox: boundingBox,
-      cornerPoints: cornerPoints,
-    );
+    return value;
   }
 }
 
@@ -0,0 +1,170 @@
+package com.google_mlkit_commons;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Matrix;
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.media.ExifInterface;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+
+//Decodes image files no larger than needed: bounds are read first, the region of interest is decoded on its own,
+//and the decoder subsamples to the requested max dimension. EXIF orientation and the final scale are applied in one pass.
+class BitmapFileDecoder {
+    //Upper bound for the bitmap handed out by the decoder, before it is made upright.
+    private static final long MAX_DECODE_BYTES = Math.min(64L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 4);
+    private static final int BYTES_PER_PIXEL = 4;
+
+    static class DecodedBitmap {
+        final Bitmap bitmap;
+        final ImageTransform transform;
+
+        DecodedBitmap(Bitmap bitmap, ImageTransform transform) {
+            this.bitmap = bitmap;
+            this.transform = transform;
+        }
+    }
+
+    //Decodes the upright [roi] of the file at [path], with its longer side no larger than [maxDimension] if that is > 0.
+    static DecodedBitmap decode(String path, @Nullable Rect roi, int maxDimension) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, bounds);
+        int rawWidth = bounds.outWidth;
+        int rawHeight = bounds.outHeight;
+        if (rawWidth <= 0 || rawHeight <= 0) {
+            throw new IOException("Failed to decode image file " + path);
+        }
+
+        int orientation = new ExifInterface(path).getAttributeInt(
+                ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        boolean swapsAxes = swapsAxes(orientation);
+        int uprightWidth = swapsAxes ? rawHeight : rawWidth;
+        int uprightHeight = swapsAxes ? rawWidth : rawHeight;
+
+        Rect crop = roi != null ? new Rect(roi) : new Rect(0, 0, uprightWidth, uprightHeight);
+        if (!crop.intersect(0, 0, uprightWidth, uprightHeight)) {
+            throw new IllegalArgumentException("Region of interest is outside of the image");
+        }
+        Rect rawCrop = uprightToRaw(crop, rawWidth, rawHeight, orientation);
+
+        int longest = Math.max(crop.width(), crop.height());
+        int target = maxDimension > 0 ? Math.min(maxDimension, longest) : longest;
+        int sampleSize = 1;
+        while (longest / (sampleSize * 2) >= target) {
+            sampleSize *= 2;
+        }
+        while ((long) (rawCrop.width() / sampleSize) * (rawCrop.height() / sampleSize) * BYTES_PER_PIXEL > MAX_DECODE_BYTES) {
+            sampleSize *= 2;
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        Bitmap decoded;
+        if (rawCrop.width() == rawWidth && rawCrop.height() == rawHeight) {
+            decoded = BitmapFactory.decodeFile(path, options);
+        } else {
+            BitmapRegionDecoder regionDecoder = BitmapRegionDecoder.newInstance(path, false);
+            try {
+                decoded = regionDecoder.decodeRegion(rawCrop, options);
+            } finally {
+                regionDecoder.recycle();
+            }
+        }
+        if (decoded == null) {
+            throw new IOException("Failed to decode image file " + path);
+        }
+
+        Matrix matrix = getExifMatrix(orientation);
+        float scale = Math.min(1f, (float) target / Math.max(decoded.getWidth(), decoded.getHeight()));
+        if (scale < 1f) {
+            matrix.postScale(scale, scale);
+        }
+        Bitmap upright = decoded;
+        if (!matrix.isIdentity()) {
+            upright = Bitmap.createBitmap(decoded, 0, 0, decoded.getWidth(), decoded.getHeight(), matrix, true);
+            if (upright != decoded) decoded.recycle();
+        }
+        ImageTransform transform = new ImageTransform(crop.left, crop.top, (float) crop.width() / upright.getWidth());
+        return new DecodedBitmap(upright, transform);
+    }
+
+    //Returns the upright width and height of the file at [path], reading only its bounds and EXIF orientation.
+    static Point getUprightSize(String path) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            throw new IOException("Failed to decode image file " + path);
+        }
+        int orientation = new ExifInterface(path).getAttributeInt(
+                ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        return swapsAxes(orientation)
+                ? new Point(bounds.outHeight, bounds.outWidth)
+                : new Point(bounds.outWidth, bounds.outHeight);
+    }
+
+    private static boolean swapsAxes(int orientation) {
+        return orientation == ExifInterface.ORIENTATION_TRANSPOSE
+                || orientation == ExifInterface.ORIENTATION_ROTATE_90
+                || orientation == ExifInterface.ORIENTATION_TRANSVERSE
+                || orientation == ExifInterface.ORIENTATION_ROTATE_270;
+    }
+
+    //Converts a rect in upright coordinates into the coordinates of the stored rawWidth x rawHeight image.
+    private static Rect uprightToRaw(Rect rect, int rawWidth, int rawHeight, int orientation) {
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                return new Rect(rawWidth - rect.right, rect.top, rawWidth - rect.left, rect.bottom);
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                return new Rect(rawWidth - rect.right, rawHeight - rect.bottom, rawWidth - rect.left, rawHeight - rect.top);
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                return new Rect(rect.left, rawHeight - rect.bottom, rect.right, rawHeight - rect.top);
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                return new Rect(rect.top, rect.left, rect.bottom, rect.right);
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                return new Rect(rect.top, rawHeight - rect.right, rect.bottom, rawHeight - rect.left);
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                return new Rect(rawWidth - rect.bottom, rawHeight - rect.right, rawWidth - rect.top, rawHeight - rect.left);
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                return new Rect(rawWidth - rect.bottom, rect.left, rawWidth - rect.top, rect.right);
+            default:
+                return new Rect(rect);
+        }
+    }
+
+    private static Matrix getExifMatrix(int orientation) {
+        Matrix matrix = new Matrix();
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                matrix.setScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                matrix.setRotate(180);
+                break;
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                matrix.setScale(1, -1);
+                break;
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                matrix.setRotate(90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                matrix.setRotate(90);
+                break;
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                matrix.setRotate(-90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                matrix.setRotate(-90);
+                break;
+        }
+        return matrix;
+    }
+}
@@ -0,0 +1,88 @@
+package com.google_mlkit_commons;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Rect;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+//Keeps decoded image files in memory, so detectors of different plugins running on the same file one after another decode it only once.
+class DecodedImageCache {
+    private static final int MAX_BYTES = (int) Math.min(64L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 8);
+
+    //Cached bitmaps may still be read by a detector when they are evicted, so they are dropped rather than recycled.
+    private static final LruCache<String, BitmapFileDecoder.DecodedBitmap> cache =
+            new LruCache<String, BitmapFileDecoder.DecodedBitmap>(MAX_BYTES) {
+                @Override
+                protected int sizeOf(@NonNull String key, @NonNull BitmapFileDecoder.DecodedBitmap value) {
+                    return value.bitmap.getAllocationByteCount();
+                }
+            };
+
+    private static boolean trimCallbacksRegistered = false;
+
+    private DecodedImageCache() {
+    }
+
+    //Returns the file at [path] decoded for the given region of interest and max dimension, decoding it only on a cache miss.
+    static BitmapFileDecoder.DecodedBitmap decode(Context context, String path, @Nullable Rect roi, int maxDimension) throws IOException {
+        registerTrimCallbacks(context);
+        File file = new File(path);
+        String key = path
+                + '|' + file.lastModified()
+                + '|' + file.length()
+                + '|' + (roi != null ? roi.flattenToString() : "")
+                + '|' + maxDimension;
+        BitmapFileDecoder.DecodedBitmap decoded = cache.get(key);
+        if (decoded != null) return decoded;
+        decoded = BitmapFileDecoder.decode(path, roi, maxDimension);
+        cache.put(key, decoded);
+        return decoded;
+    }
+
+    static Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("hits", cache.hitCount());
+        stats.put("misses", cache.missCount());
+        stats.put("evictions", cache.evictionCount());
+        stats.put("size", cache.size());
+        stats.put("maxSize", cache.maxSize());
+        return stats;
+    }
+
+    static void clear() {
+        cache.evictAll();
+    }
+
+    private static synchronized void registerTrimCallbacks(Context context) {
+        if (trimCallbacksRegistered) return;
+        trimCallbacksRegistered = true;
+        context.getApplicationContext().registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+                    cache.evictAll();
+                } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+                    cache.trimToSize(cache.maxSize() / 2);
+                }
+            }
+
+            @Override
+            public void onConfigurationChanged(@NonNull Configuration newConfig) {
+            }
+
+            @Override
+            public void onLowMemory() {
+                cache.evictAll();
+            }
+        });
+    }
+}
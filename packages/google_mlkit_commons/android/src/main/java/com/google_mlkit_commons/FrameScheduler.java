@@ -0,0 +1,194 @@
+package com.google_mlkit_commons;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import io.flutter.plugin.common.MethodChannel;
+
+//Keeps at most one frame in flight and one frame waiting per detector instance, so a detector that is slower than the
+//camera works on the newest frame instead of a growing backlog. A waiting frame that is replaced, or a frame that would
+//be delivered after a newer one, completes with the DROPPED error code. So does the waiting frame of a detector instance
+//that is closed.
+class FrameScheduler {
+    static final String DROPPED = "dropped";
+    //Weight of a new sample in the running average of the time between arriving frames.
+    private static final double SMOOTHING = 0.2;
+
+    interface FrameTask {
+        //Starts processing the frame and calls [onDone] once its detector has finished with it.
+        void start(MethodChannel.Result result, Runnable onDone);
+    }
+
+    private static class Frame {
+        final long sequence;
+        final FrameTask task;
+        final MethodChannel.Result result;
+
+        Frame(long sequence, FrameTask task, MethodChannel.Result result) {
+            this.sequence = sequence;
+            this.task = task;
+            this.result = result;
+        }
+    }
+
+    private static class FrameStream {
+        boolean busy = false;
+        boolean closed = false;
+        Frame pending;
+        long lastAccepted = Long.MIN_VALUE;
+        long lastDelivered = Long.MIN_VALUE;
+        long lastArrival = 0;
+        double arrivalInterval = 0;
+    }
+
+    //Streams are keyed by the detector handler and the id of the Dart instance.
+    private static final Map<Object, Map<String, FrameStream>> streams = new WeakHashMap<>();
+
+    private FrameScheduler() {
+    }
+
+    static void submit(Object owner, String id, long sequence, FrameTask task, MethodChannel.Result result) {
+        FrameStream stream = getStream(owner, id);
+        Frame frame = new Frame(sequence, task, result);
+        Frame toStart = null;
+        Frame toDrop = null;
+        long now = System.nanoTime();
+        synchronized (stream) {
+            if (stream.lastArrival != 0) {
+                long interval = now - stream.lastArrival;
+                stream.arrivalInterval = stream.arrivalInterval == 0
+                        ? interval
+                        : stream.arrivalInterval + SMOOTHING * (interval - stream.arrivalInterval);
+            }
+            stream.lastArrival = now;
+            if (stream.closed || sequence <= stream.lastAccepted) {
+                toDrop = frame;
+            } else {
+                stream.lastAccepted = sequence;
+                if (!stream.busy) {
+                    stream.busy = true;
+                    toStart = frame;
+                } else {
+                    toDrop = stream.pending;
+                    stream.pending = frame;
+                }
+            }
+        }
+        if (toDrop != null) drop(toDrop);
+        if (toStart != null) start(stream, toStart);
+    }
+
+    //The mean time between frames arriving for a stream in nanoseconds, counting the frames that were dropped, or 0
+    //before its second frame.
+    static long getArrivalInterval(Object owner, String id) {
+        FrameStream stream;
+        synchronized (FrameScheduler.class) {
+            Map<String, FrameStream> byId = streams.get(owner);
+            stream = byId != null ? byId.get(id) : null;
+        }
+        if (stream == null) return 0;
+        synchronized (stream) {
+            return (long) stream.arrivalInterval;
+        }
+    }
+
+    //Forgets the stream of a closed detector instance. The frame in flight still completes, the waiting one is dropped.
+    static void remove(Object owner, String id) {
+        FrameStream stream;
+        synchronized (FrameScheduler.class) {
+            Map<String, FrameStream> byId = streams.get(owner);
+            if (byId == null) return;
+            stream = byId.remove(id);
+            if (byId.isEmpty()) streams.remove(owner);
+        }
+        if (stream == null) return;
+        Frame pending;
+        synchronized (stream) {
+            stream.closed = true;
+            pending = stream.pending;
+            stream.pending = null;
+        }
+        if (pending != null) {
+            pending.result.error(DROPPED, "Frame " + pending.sequence + " was dropped, its detector was closed",
+                    pending.sequence);
+        }
+    }
+
+    private static synchronized FrameStream getStream(Object owner, String id) {
+        Map<String, FrameStream> byId = streams.get(owner);
+        if (byId == null) {
+            byId = new HashMap<>();
+            streams.put(owner, byId);
+        }
+        FrameStream stream = byId.get(id);
+        if (stream == null) {
+            stream = new FrameStream();
+            byId.put(id, stream);
+        }
+        return stream;
+    }
+
+    private static void start(FrameStream stream, Frame frame) {
+        frame.task.start(new OrderedResult(stream, frame), () -> finish(stream));
+    }
+
+    private static void finish(FrameStream stream) {
+        Frame next;
+        synchronized (stream) {
+            next = stream.pending;
+            stream.pending = null;
+            stream.busy = next != null;
+        }
+        if (next != null) start(stream, next);
+    }
+
+    private static void drop(Frame frame) {
+        frame.result.error(DROPPED, "Frame " + frame.sequence + " was replaced by a newer frame", frame.sequence);
+    }
+
+    //Reports a frame as dropped instead of delivering it after a frame with a higher sequence number.
+    private static class OrderedResult implements MethodChannel.Result {
+        private final FrameStream stream;
+        private final Frame frame;
+
+        OrderedResult(FrameStream stream, Frame frame) {
+            this.stream = stream;
+            this.frame = frame;
+        }
+
+        private boolean claim() {
+            synchronized (stream) {
+                if (frame.sequence <= stream.lastDelivered) return false;
+                stream.lastDelivered = frame.sequence;
+                return true;
+            }
+        }
+
+        @Override
+        public void success(@Nullable Object value) {
+            if (claim()) {
+                frame.result.success(value);
+            } else {
+                drop(frame);
+            }
+        }
+
+        @Override
+        public void error(@NonNull String errorCode, @Nullable String errorMessage, @Nullable Object errorDetails) {
+            if (claim()) {
+                frame.result.error(errorCode, errorMessage, errorDetails);
+            } else {
+                drop(frame);
+            }
+        }
+
+        @Override
+        public void notImplemented() {
+            frame.result.notImplemented();
+        }
+    }
+}
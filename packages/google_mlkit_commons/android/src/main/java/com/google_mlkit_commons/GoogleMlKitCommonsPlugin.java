@@ -1,18 +1,28 @@
 package com.google_mlkit_commons;
 
+import android.content.Context;
+
 import androidx.annotation.NonNull;
 
 import io.flutter.embedding.engine.plugins.FlutterPlugin;
+import io.flutter.plugin.common.BinaryMessenger;
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
+import io.flutter.plugin.common.StandardMethodCodec;
 
 public class GoogleMlKitCommonsPlugin implements FlutterPlugin, MethodChannel.MethodCallHandler {
     private MethodChannel channel;
+    private Context context;
     private static final String channelName = "google_mlkit_commons";
+    private static final String IMAGE_CACHE_STATS = "vision#getImageCacheStats";
+    private static final String IMAGE_CACHE_CLEAR = "vision#clearImageCache";
+    private static final String ANALYZE = "vision#analyze";
 
     @Override
     public void onAttachedToEngine(@NonNull FlutterPluginBinding flutterPluginBinding) {
-        channel = new MethodChannel(flutterPluginBinding.getBinaryMessenger(), channelName);
+        context = flutterPluginBinding.getApplicationContext();
+        BinaryMessenger messenger = flutterPluginBinding.getBinaryMessenger();
+        channel = new MethodChannel(messenger, channelName, StandardMethodCodec.INSTANCE, messenger.makeBackgroundTaskQueue());
         channel.setMethodCallHandler(this);
     }
 
@@ -23,6 +33,20 @@ public class GoogleMlKitCommonsPlugin implements FlutterPlugin, MethodChannel.Me
 
     @Override
     public void onMethodCall(@NonNull MethodCall call, @NonNull MethodChannel.Result result) {
-        result.notImplemented();
+        switch (call.method) {
+            case ANALYZE:
+                VisionAnalyzers.analyzeAll(call, context, result);
+                break;
+            case IMAGE_CACHE_STATS:
+                result.success(DecodedImageCache.getStats());
+                break;
+            case IMAGE_CACHE_CLEAR:
+                DecodedImageCache.clear();
+                result.success(null);
+                break;
+            default:
+                result.notImplemented();
+                break;
+        }
     }
 }
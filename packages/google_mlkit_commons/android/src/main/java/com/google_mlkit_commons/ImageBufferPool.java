@@ -0,0 +1,97 @@
+package com.google_mlkit_commons;
+
+import android.graphics.Bitmap;
+
+import com.google.mlkit.vision.common.InputImage;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+//Keeps the frame buffers and bitmaps used by InputImageConverter alive between frames, so streams of equally sized images do not allocate per frame.
+public class ImageBufferPool {
+    //Frames of one size rarely have more than a couple of detectors working on them at the same time.
+    private static final int MAX_FREE_PER_SIZE = 3;
+
+    private static final Map<Integer, ArrayDeque<ByteBuffer>> freeBuffers = new HashMap<>();
+    private static final Map<Long, ArrayDeque<Bitmap>> freeBitmaps = new HashMap<>();
+    //Weak keys, so an image whose detector never reports completion does not pin its buffer or bitmap.
+    private static final Map<InputImage, Object> resourcesInUse = new WeakHashMap<>();
+
+    private ImageBufferPool() {
+    }
+
+    public static synchronized ByteBuffer acquireBuffer(int capacity) {
+        ArrayDeque<ByteBuffer> free = freeBuffers.get(capacity);
+        ByteBuffer buffer = free != null ? free.poll() : null;
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(capacity);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    public static synchronized void releaseBuffer(ByteBuffer buffer) {
+        ArrayDeque<ByteBuffer> free = freeBuffers.get(buffer.capacity());
+        if (free == null) {
+            free = new ArrayDeque<>();
+            freeBuffers.put(buffer.capacity(), free);
+        }
+        if (free.size() < MAX_FREE_PER_SIZE) {
+            free.push(buffer);
+        }
+    }
+
+    //Returns a mutable ARGB_8888 bitmap of the given size, its previous pixels are left in place.
+    public static synchronized Bitmap acquireBitmap(int width, int height) {
+        ArrayDeque<Bitmap> free = freeBitmaps.get(bitmapKey(width, height));
+        Bitmap bitmap = free != null ? free.poll() : null;
+        if (bitmap == null || bitmap.isRecycled()) {
+            bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+        return bitmap;
+    }
+
+    public static synchronized void releaseBitmap(Bitmap bitmap) {
+        if (bitmap.isRecycled()) return;
+        long key = bitmapKey(bitmap.getWidth(), bitmap.getHeight());
+        ArrayDeque<Bitmap> free = freeBitmaps.get(key);
+        if (free == null) {
+            free = new ArrayDeque<>();
+            freeBitmaps.put(key, free);
+        }
+        if (free.size() < MAX_FREE_PER_SIZE) {
+            free.push(bitmap);
+        }
+    }
+
+    //Ties a pooled buffer to the image built on top of it, until the image is recycled.
+    public static synchronized void attach(InputImage inputImage, ByteBuffer buffer) {
+        resourcesInUse.put(inputImage, buffer);
+    }
+
+    //Ties a pooled bitmap to the image built on top of it, until the image is recycled.
+    public static synchronized void attach(InputImage inputImage, Bitmap bitmap) {
+        resourcesInUse.put(inputImage, bitmap);
+    }
+
+    public static synchronized void recycle(InputImage inputImage) {
+        Object resource = resourcesInUse.remove(inputImage);
+        if (resource instanceof ByteBuffer) {
+            releaseBuffer((ByteBuffer) resource);
+        } else if (resource instanceof Bitmap) {
+            releaseBitmap((Bitmap) resource);
+        }
+    }
+
+    public static synchronized void clear() {
+        freeBuffers.clear();
+        freeBitmaps.clear();
+    }
+
+    private static long bitmapKey(int width, int height) {
+        return ((long) width << 32) | (height & 0xFFFFFFFFL);
+    }
+}
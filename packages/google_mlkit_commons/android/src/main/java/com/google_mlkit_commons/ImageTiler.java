@@ -0,0 +1,189 @@
+package com.google_mlkit_commons;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Point;
+import android.graphics.Rect;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.mlkit.vision.common.InputImage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import io.flutter.plugin.common.MethodChannel;
+
+//Converts tiles of one large image at full resolution, for detectors that scan it tile by tile. Tiles are given in the
+//upright coordinates results are reported in, and the transform of every tile maps back into the whole image.
+//Image files are decoded one tile at a time and bypass DecodedImageCache, since no tile is asked for twice and they
+//would only evict whole images other detectors are about to read. Bitmaps are converted once and every tile is cropped
+//from that bitmap. Other images are converted through the "roi" of their image data, which packs only the tile.
+//The grid of overlapping tiles and the worker threads detectors scan tiles on are shared here as well.
+public class ImageTiler {
+    private final Map<String, Object> imageData;
+    private final Context context;
+    private final String type;
+    private Bitmap source;
+    private boolean pooled;
+
+    public ImageTiler(Map<String, Object> imageData, Context context) {
+        this.imageData = imageData;
+        this.context = context;
+        this.type = (String) imageData.get("type");
+    }
+
+    //Returns a pool of [threads] daemon threads named [name] for scanning tiles.
+    public static ExecutorService newWorkerPool(int threads, String name) {
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    //Returns the tiles of [tileSize] pixels, overlapping by [overlap] pixels, that cover a width x height image, row by
+    //row. The last tile of a row or column is aligned with the edge of the image.
+    public static List<Rect> getTiles(int width, int height, int tileSize, int overlap) {
+        List<Rect> tiles = new ArrayList<>();
+        for (int top : getOffsets(height, tileSize, overlap)) {
+            for (int left : getOffsets(width, tileSize, overlap)) {
+                tiles.add(new Rect(left, top, Math.min(width, left + tileSize), Math.min(height, top + tileSize)));
+            }
+        }
+        return tiles;
+    }
+
+    //Reads an int option of the "tiling" options of a detector.
+    public static int getOption(Map<String, Object> options, String key, int defaultValue) {
+        Object value = options.get(key);
+        return value instanceof Number ? ((Number) value).intValue() : defaultValue;
+    }
+
+    //The upright width and height of the whole image.
+    public Point getSize() throws IOException {
+        return InputImageConverter.getUprightSize(imageData);
+    }
+
+    //Converts the [tile] of the image. The image is handed back with release() once its detector is done with it.
+    public InputImage getTile(Rect tile) throws IOException {
+        if ("file".equals(type)) {
+            BitmapFileDecoder.DecodedBitmap decoded = BitmapFileDecoder.decode(
+                    (String) Objects.requireNonNull(imageData.get("path")), tile, 0);
+            InputImage inputImage = InputImage.fromBitmap(decoded.bitmap, 0);
+            InputImageConverter.putImageTransform(inputImage, decoded.transform);
+            return inputImage;
+        }
+        if ("bitmap".equals(type)) {
+            Bitmap bitmap = getSource();
+            int rotation = getRotation();
+            int width = bitmap.getWidth();
+            int height = bitmap.getHeight();
+            Rect crop = ImageTransform.uprightToBuffer(tile, width, height, rotation);
+            if (!crop.intersect(0, 0, width, height)) {
+                throw new IllegalArgumentException("Tile is outside of the image");
+            }
+            Bitmap tileBitmap = Bitmap.createBitmap(bitmap, crop.left, crop.top, crop.width(), crop.height());
+            InputImage inputImage = InputImage.fromBitmap(tileBitmap, rotation);
+            InputImageConverter.putImageTransform(inputImage, ImageTransform.forCrop(crop, width, height, rotation, 1f));
+            return inputImage;
+        }
+
+        Map<String, Object> roi = new HashMap<>();
+        roi.put("left", tile.left);
+        roi.put("top", tile.top);
+        roi.put("right", tile.right);
+        roi.put("bottom", tile.bottom);
+        Map<String, Object> tileData = new HashMap<>(imageData);
+        tileData.remove("maxDimension");
+        tileData.put("roi", roi);
+        ConversionResult conversion = new ConversionResult();
+        InputImage inputImage = InputImageConverter.getInputImageFromData(tileData, context, conversion);
+        if (inputImage == null) throw new IllegalArgumentException(conversion.message);
+        return inputImage;
+    }
+
+    //Hands back a tile returned by getTile(), recycling the bitmap that was made for it.
+    public void release(InputImage inputImage) {
+        Bitmap bitmap = inputImage.getBitmapInternal();
+        InputImageConverter.releaseInputImage(inputImage);
+        synchronized (this) {
+            if (bitmap != null && bitmap != source && !bitmap.isRecycled()) bitmap.recycle();
+        }
+    }
+
+    //Releases the converted bitmap once all tiles have been released.
+    public synchronized void close() {
+        if (source == null) return;
+        if (pooled) {
+            ImageBufferPool.releaseBitmap(source);
+        } else {
+            source.recycle();
+        }
+        source = null;
+    }
+
+    private synchronized Bitmap getSource() {
+        if (source != null) return source;
+        byte[] bitmapData = (byte[]) Objects.requireNonNull(imageData.get("bitmapData"));
+        @SuppressWarnings("unchecked")
+        Map<String, Object> metadata = (Map<String, Object>) imageData.get("metadata");
+        if (metadata != null) {
+            //The raw RGBA bytes of a Flutter UI image, see InputImageConverter.
+            int width = Double.valueOf(Objects.requireNonNull(metadata.get("width")).toString()).intValue();
+            int height = Double.valueOf(Objects.requireNonNull(metadata.get("height")).toString()).intValue();
+            source = ImageBufferPool.acquireBitmap(width, height);
+            source.copyPixelsFromBuffer(ByteBuffer.wrap(bitmapData));
+            pooled = true;
+        } else {
+            source = BitmapFactory.decodeByteArray(bitmapData, 0, bitmapData.length);
+            if (source == null) throw new IllegalArgumentException("Failed to decode bitmap from the provided data");
+            pooled = false;
+        }
+        return source;
+    }
+
+    private static List<Integer> getOffsets(int length, int tileSize, int overlap) {
+        List<Integer> offsets = new ArrayList<>();
+        int step = tileSize - overlap;
+        int offset = 0;
+        while (offset + tileSize < length) {
+            offsets.add(offset);
+            offset += step;
+        }
+        offsets.add(Math.max(0, length - tileSize));
+        return offsets;
+    }
+
+    private int getRotation() {
+        Object rotation = imageData.get("rotation");
+        return rotation != null ? Integer.parseInt(rotation.toString()) : 0;
+    }
+
+    //Keeps the error of a conversion, so it can be thrown for the tile instead of replying to a call.
+    private static class ConversionResult implements MethodChannel.Result {
+        String message;
+
+        @Override
+        public void success(@Nullable Object result) {
+        }
+
+        @Override
+        public void error(@NonNull String errorCode, @Nullable String errorMessage, @Nullable Object errorDetails) {
+            message = errorMessage;
+        }
+
+        @Override
+        public void notImplemented() {
+        }
+    }
+}
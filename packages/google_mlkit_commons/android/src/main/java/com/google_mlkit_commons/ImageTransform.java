@@ -0,0 +1,101 @@
+package com.google_mlkit_commons;
+
+import android.graphics.Point;
+import android.graphics.PointF;
+import android.graphics.Rect;
+
+import androidx.annotation.Nullable;
+
+//Maps coordinates reported for a cropped and/or downscaled InputImage back into the frame that was sent from Dart.
+//Both spaces are upright, i.e. the rotation of the image has already been applied, like the coordinates ML Kit reports.
+public class ImageTransform {
+    public static final ImageTransform IDENTITY = new ImageTransform(0, 0, 1f);
+
+    private final int offsetX;
+    private final int offsetY;
+    //Number of source pixels covered by one pixel of the processed image.
+    private final float sourcePerOutput;
+
+    ImageTransform(int offsetX, int offsetY, float sourcePerOutput) {
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+        this.sourcePerOutput = sourcePerOutput;
+    }
+
+    //Builds the transform for a [crop] of a width x height buffer that is shown rotated by [rotation] degrees.
+    static ImageTransform forCrop(Rect crop, int width, int height, int rotation, float sourcePerOutput) {
+        Rect upright = bufferToUpright(crop, width, height, rotation);
+        return new ImageTransform(upright.left, upright.top, sourcePerOutput);
+    }
+
+    public boolean isIdentity() {
+        return offsetX == 0 && offsetY == 0 && sourcePerOutput == 1f;
+    }
+
+    public float mapX(float x) {
+        return offsetX + x * sourcePerOutput;
+    }
+
+    public float mapY(float y) {
+        return offsetY + y * sourcePerOutput;
+    }
+
+    public int mapX(int x) {
+        return offsetX + Math.round(x * sourcePerOutput);
+    }
+
+    public int mapY(int y) {
+        return offsetY + Math.round(y * sourcePerOutput);
+    }
+
+    //Maps a distance, e.g. a depth value, which is scaled but not offset.
+    public float mapLength(float length) {
+        return length * sourcePerOutput;
+    }
+
+    @Nullable
+    public Rect mapRect(@Nullable Rect rect) {
+        if (rect == null || isIdentity()) return rect;
+        return new Rect(mapX(rect.left), mapY(rect.top), mapX(rect.right), mapY(rect.bottom));
+    }
+
+    @Nullable
+    public Point mapPoint(@Nullable Point point) {
+        if (point == null || isIdentity()) return point;
+        return new Point(mapX(point.x), mapY(point.y));
+    }
+
+    @Nullable
+    public PointF mapPoint(@Nullable PointF point) {
+        if (point == null || isIdentity()) return point;
+        return new PointF(mapX(point.x), mapY(point.y));
+    }
+
+    //Converts a rect given in upright coordinates into the coordinates of the unrotated width x height buffer.
+    public static Rect uprightToBuffer(Rect rect, int width, int height, int rotation) {
+        switch (rotation) {
+            case 90:
+                return new Rect(rect.top, height - rect.right, rect.bottom, height - rect.left);
+            case 180:
+                return new Rect(width - rect.right, height - rect.bottom, width - rect.left, height - rect.top);
+            case 270:
+                return new Rect(width - rect.bottom, rect.left, width - rect.top, rect.right);
+            default:
+                return new Rect(rect);
+        }
+    }
+
+    //Converts a rect given in the coordinates of the unrotated width x height buffer into upright coordinates.
+    public static Rect bufferToUpright(Rect rect, int width, int height, int rotation) {
+        switch (rotation) {
+            case 90:
+                return new Rect(height - rect.bottom, rect.left, height - rect.top, rect.right);
+            case 180:
+                return new Rect(width - rect.right, height - rect.bottom, width - rect.left, height - rect.top);
+            case 270:
+                return new Rect(rect.top, width - rect.right, rect.bottom, width - rect.left);
+            default:
+                return new Rect(rect);
+        }
+    }
+}
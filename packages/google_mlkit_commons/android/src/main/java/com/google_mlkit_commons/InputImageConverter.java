@@ -1,7 +1,12 @@
 package com.google_mlkit_commons;
 
 import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.graphics.ImageFormat;
+import android.graphics.Matrix;
+import android.graphics.Point;
+import android.graphics.Rect;
 import android.net.Uri;
 import android.util.Log;
 
@@ -9,12 +14,17 @@ import com.google.mlkit.vision.common.InputImage;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.WeakHashMap;
 
 import io.flutter.plugin.common.MethodChannel;
 
 public class InputImageConverter {
+    private static final Map<InputImage, ImageTransform> transforms = Collections.synchronizedMap(new WeakHashMap<>());
 
     //Returns an [InputImage] from the image data received
     public static InputImage getInputImageFromData(Map<String, Object> imageData,
@@ -45,23 +55,11 @@ public class InputImageConverter {
                         int width = Double.valueOf(Objects.requireNonNull(metadataMap.get("width")).toString()).intValue();
                         int height = Double.valueOf(Objects.requireNonNull(metadataMap.get("height")).toString()).intValue();
                         
-                        // Create bitmap from the Flutter UI raw RGBA bytes
-                        android.graphics.Bitmap bitmap = android.graphics.Bitmap.createBitmap(width, height, android.graphics.Bitmap.Config.ARGB_8888);
-                        java.nio.IntBuffer intBuffer = java.nio.IntBuffer.allocate(bitmapData.length / 4);
-                        
-                        // Convert RGBA bytes to int pixels
-                        for (int i = 0; i < bitmapData.length; i += 4) {
-                            int r = bitmapData[i] & 0xFF;
-                            int g = bitmapData[i + 1] & 0xFF;
-                            int b = bitmapData[i + 2] & 0xFF;
-                            int a = bitmapData[i + 3] & 0xFF;
-                            intBuffer.put((a << 24) | (r << 16) | (g << 8) | b);
-                        }
-                        intBuffer.rewind();
-                        
-                        // Copy pixel data to bitmap
-                        bitmap.copyPixelsFromBuffer(intBuffer);
-                        return InputImage.fromBitmap(bitmap, rotation);
+                        // ARGB_8888 bitmaps keep their pixels as R, G, B, A bytes in memory, so the Flutter UI raw RGBA bytes
+                        // are copied in as they are instead of being repacked into color ints pixel by pixel.
+                        android.graphics.Bitmap bitmap = ImageBufferPool.acquireBitmap(width, height);
+                        bitmap.copyPixelsFromBuffer(ByteBuffer.wrap(bitmapData));
+                        return getInputImageFromBitmap(bitmap, rotation, imageData, true);
                     }
                 } catch (Exception e) {
                     Log.e("ImageError", "Error creating bitmap from raw data", e);
@@ -74,7 +72,7 @@ public class InputImageConverter {
                         result.error("InputImageConverterError", "Failed to decode bitmap from the provided data", null);
                         return null;
                     }
-                    return InputImage.fromBitmap(bitmap, rotation);
+                    return getInputImageFromBitmap(bitmap, rotation, imageData, false);
                 } catch (Exception e) {
                     Log.e("ImageError", "Getting Bitmap failed", e);
                     result.error("InputImageConverterError", e.toString(), e);
@@ -88,9 +86,21 @@ public class InputImageConverter {
             }
         } else if (model != null && model.equals("file")) {
             try {
-                inputImage = InputImage.fromFilePath(context, Uri.fromFile(new File(((String) imageData.get("path")))));
+                String path = (String) Objects.requireNonNull(imageData.get("path"));
+                Rect roi = getRegionOfInterest(imageData);
+                int maxDimension = getMaxDimension(imageData);
+                if (roi == null && maxDimension <= 0) {
+                    return InputImage.fromFilePath(context, Uri.fromFile(new File(path)));
+                }
+                //Images that ask for it are decoded through the shared cache, so other plugins processing the same
+                //file with the same hints do not decode it again.
+                BitmapFileDecoder.DecodedBitmap decoded = Boolean.TRUE.equals(imageData.get("shareDecoded"))
+                        ? DecodedImageCache.decode(context, path, roi, maxDimension)
+                        : BitmapFileDecoder.decode(path, roi, maxDimension);
+                inputImage = InputImage.fromBitmap(decoded.bitmap, 0);
+                if (!decoded.transform.isIdentity()) transforms.put(inputImage, decoded.transform);
                 return inputImage;
-            } catch (IOException e) {
+            } catch (Exception e) {
                 Log.e("ImageError", "Getting Image failed");
                 Log.e("ImageError", e.toString());
                 result.error("InputImageConverterError", e.toString(), e);
@@ -108,6 +118,13 @@ public class InputImageConverter {
                     int rotationDegrees = Integer.parseInt(Objects.requireNonNull(metaData.get("rotation")).toString());
                     int width = Double.valueOf(Objects.requireNonNull(metaData.get("width")).toString()).intValue();
                     int height = Double.valueOf(Objects.requireNonNull(metaData.get("height")).toString()).intValue();
+                    if ((imageFormat == ImageFormat.NV21 || imageFormat == ImageFormat.YV12)
+                            && (getRegionOfInterest(imageData) != null || getMaxDimension(imageData) > 0)) {
+                        YuvPlanePacker packer = imageFormat == ImageFormat.NV21
+                                ? YuvPlanePacker.fromNv21(data, width, height)
+                                : YuvPlanePacker.fromYv12(data, width, height);
+                        return getInputImageFromYuv(packer, width, height, rotationDegrees, imageData);
+                    }
                     if (imageFormat == ImageFormat.NV21 || imageFormat == ImageFormat.YV12) {
                         return InputImage.fromByteArray(
                                 data,
@@ -117,8 +134,7 @@ public class InputImageConverter {
                                 imageFormat);
                     }
                     result.error("InputImageConverterError", "ImageFormat is not supported.", null);
-                    // TODO: Use InputImage.fromMediaImage, which supports more types, e.g. IMAGE_FORMAT_YUV_420_888.
-                    // See https://developers.google.com/android/reference/com/google/mlkit/vision/common/InputImage#fromMediaImage(android.media.Image,%20int)
+                    // IMAGE_FORMAT_YUV_420_888 frames are sent plane by plane, see the "planes" type.
                     return null;
                 } catch (Exception e) {
                     Log.e("ImageError", "Getting Image failed");
@@ -126,6 +142,15 @@ public class InputImageConverter {
                     result.error("InputImageConverterError", e.toString(), e);
                     return null;
                 }
+            } else if (model != null && model.equals("planes")) {
+                try {
+                    return getInputImageFromPlanes(imageData);
+                } catch (Exception e) {
+                    Log.e("ImageError", "Getting Image failed");
+                    Log.e("ImageError", e.toString());
+                    result.error("InputImageConverterError", e.toString(), e);
+                    return null;
+                }
             } else {
                 result.error("InputImageConverterError", "Invalid Input Image", null);
                 return null;
@@ -133,4 +158,167 @@ public class InputImageConverter {
         }
     }
 
+    //Returns how coordinates reported for an [InputImage] map back into the image that was sent, see "roi" and "maxDimension".
+    public static ImageTransform getImageTransform(InputImage inputImage) {
+        ImageTransform transform = transforms.get(inputImage);
+        return transform != null ? transform : ImageTransform.IDENTITY;
+    }
+
+    //Returns the upright width and height of the image in [imageData], the space of "roi" rects and detection results.
+    //Only image files are read, and only their header.
+    @SuppressWarnings("unchecked")
+    public static Point getUprightSize(Map<String, Object> imageData) throws IOException {
+        String model = (String) imageData.get("type");
+        if ("file".equals(model)) {
+            return BitmapFileDecoder.getUprightSize((String) Objects.requireNonNull(imageData.get("path")));
+        }
+        Map<String, Object> metaData = (Map<String, Object>) imageData.get("metadata");
+        int width;
+        int height;
+        int rotation;
+        if (metaData != null) {
+            width = Double.valueOf(Objects.requireNonNull(metaData.get("width")).toString()).intValue();
+            height = Double.valueOf(Objects.requireNonNull(metaData.get("height")).toString()).intValue();
+            Object rotationObj = "bitmap".equals(model) ? imageData.get("rotation") : metaData.get("rotation");
+            rotation = rotationObj != null ? Integer.parseInt(rotationObj.toString()) : 0;
+        } else if ("bitmap".equals(model)) {
+            byte[] bitmapData = (byte[]) Objects.requireNonNull(imageData.get("bitmapData"));
+            BitmapFactory.Options bounds = new BitmapFactory.Options();
+            bounds.inJustDecodeBounds = true;
+            BitmapFactory.decodeByteArray(bitmapData, 0, bitmapData.length, bounds);
+            width = bounds.outWidth;
+            height = bounds.outHeight;
+            Object rotationObj = imageData.get("rotation");
+            rotation = rotationObj != null ? (int) rotationObj : 0;
+        } else {
+            throw new IllegalArgumentException("Invalid Input Image");
+        }
+        return rotation == 90 || rotation == 270 ? new Point(height, width) : new Point(width, height);
+    }
+
+    static void putImageTransform(InputImage inputImage, ImageTransform transform) {
+        if (!transform.isIdentity()) transforms.put(inputImage, transform);
+    }
+
+    //Returns the pooled memory backing an [InputImage] once its detector has finished with it.
+    public static void releaseInputImage(InputImage inputImage) {
+        transforms.remove(inputImage);
+        ImageBufferPool.recycle(inputImage);
+    }
+
+    //Builds an [InputImage] from the Y, U and V planes of a YUV_420_888 frame, packed into a pooled direct buffer.
+    @SuppressWarnings("unchecked")
+    private static InputImage getInputImageFromPlanes(Map<String, Object> imageData) {
+        Map<String, Object> metaData = (Map<String, Object>) Objects.requireNonNull(imageData.get("metadata"));
+        List<Map<String, Object>> planes = (List<Map<String, Object>>) Objects.requireNonNull(imageData.get("planes"));
+        if (planes.size() != 3) {
+            throw new IllegalArgumentException("YUV_420_888 images need 3 planes, got " + planes.size());
+        }
+        int rotationDegrees = Integer.parseInt(Objects.requireNonNull(metaData.get("rotation")).toString());
+        int width = Double.valueOf(Objects.requireNonNull(metaData.get("width")).toString()).intValue();
+        int height = Double.valueOf(Objects.requireNonNull(metaData.get("height")).toString()).intValue();
+        if (width % 2 != 0 || height % 2 != 0) {
+            throw new IllegalArgumentException("YUV_420_888 images need an even width and height");
+        }
+
+        Map<String, Object> yPlane = planes.get(0);
+        Map<String, Object> uPlane = planes.get(1);
+        Map<String, Object> vPlane = planes.get(2);
+        YuvPlanePacker packer = new YuvPlanePacker(
+                (byte[]) Objects.requireNonNull(yPlane.get("bytes")),
+                (int) Objects.requireNonNull(yPlane.get("bytesPerRow")),
+                (byte[]) Objects.requireNonNull(uPlane.get("bytes")),
+                (byte[]) Objects.requireNonNull(vPlane.get("bytes")),
+                (int) Objects.requireNonNull(uPlane.get("bytesPerRow")),
+                (int) Objects.requireNonNull(uPlane.get("bytesPerPixel")),
+                width,
+                height);
+
+        return getInputImageFromYuv(packer, width, height, rotationDegrees, imageData);
+    }
+
+    //Packs a YUV frame into a pooled direct buffer, cropped to the region of interest and subsampled to the max dimension if requested.
+    private static InputImage getInputImageFromYuv(YuvPlanePacker packer, int width, int height, int rotationDegrees, Map<String, Object> imageData) {
+        Rect roi = getRegionOfInterest(imageData);
+        int maxDimension = getMaxDimension(imageData);
+        ImageTransform transform = ImageTransform.IDENTITY;
+        if (roi != null || maxDimension > 0) {
+            Rect crop = packer.alignCrop(roi != null
+                    ? ImageTransform.uprightToBuffer(roi, width, height, rotationDegrees)
+                    : new Rect(0, 0, width, height));
+            int step = 1;
+            if (maxDimension > 0) {
+                int longest = Math.max(crop.width(), crop.height());
+                step = Math.max(1, (longest + maxDimension - 1) / maxDimension);
+            }
+            packer.setCrop(crop, step);
+            transform = ImageTransform.forCrop(crop, width, height, rotationDegrees, step);
+        }
+
+        ByteBuffer buffer = ImageBufferPool.acquireBuffer(packer.bufferSize());
+        packer.pack(buffer);
+        InputImage inputImage = InputImage.fromByteBuffer(buffer, packer.outputWidth(), packer.outputHeight(), rotationDegrees, packer.outputFormat());
+        ImageBufferPool.attach(inputImage, buffer);
+        if (!transform.isIdentity()) transforms.put(inputImage, transform);
+        return inputImage;
+    }
+
+    //Builds an [InputImage] from [bitmap], cropped to the region of interest and downscaled to the max dimension if requested.
+    //A [pooled] bitmap is handed back to ImageBufferPool once it is no longer needed.
+    private static InputImage getInputImageFromBitmap(Bitmap bitmap, int rotation, Map<String, Object> imageData, boolean pooled) {
+        Rect roi = getRegionOfInterest(imageData);
+        int maxDimension = getMaxDimension(imageData);
+        Bitmap processed = bitmap;
+        ImageTransform transform = ImageTransform.IDENTITY;
+        if (roi != null || maxDimension > 0) {
+            int width = bitmap.getWidth();
+            int height = bitmap.getHeight();
+            Rect crop = roi != null
+                    ? ImageTransform.uprightToBuffer(roi, width, height, rotation)
+                    : new Rect(0, 0, width, height);
+            if (!crop.intersect(0, 0, width, height)) {
+                throw new IllegalArgumentException("Region of interest is outside of the image");
+            }
+            float scale = 1f;
+            if (maxDimension > 0) {
+                scale = Math.min(1f, (float) maxDimension / Math.max(crop.width(), crop.height()));
+            }
+            if (scale < 1f || crop.width() != width || crop.height() != height) {
+                Matrix matrix = new Matrix();
+                matrix.setScale(scale, scale);
+                processed = Bitmap.createBitmap(bitmap, crop.left, crop.top, crop.width(), crop.height(), matrix, true);
+                transform = ImageTransform.forCrop(crop, width, height, rotation, (float) crop.width() / processed.getWidth());
+            }
+        }
+
+        InputImage inputImage = InputImage.fromBitmap(processed, rotation);
+        if (pooled) {
+            if (processed == bitmap) {
+                ImageBufferPool.attach(inputImage, bitmap);
+            } else {
+                ImageBufferPool.releaseBitmap(bitmap);
+            }
+        }
+        if (!transform.isIdentity()) transforms.put(inputImage, transform);
+        return inputImage;
+    }
+
+    //The optional "roi" rect, in the upright coordinates detection results are reported in.
+    @SuppressWarnings("unchecked")
+    private static Rect getRegionOfInterest(Map<String, Object> imageData) {
+        Map<String, Object> roi = (Map<String, Object>) imageData.get("roi");
+        if (roi == null) return null;
+        return new Rect(
+                Double.valueOf(Objects.requireNonNull(roi.get("left")).toString()).intValue(),
+                Double.valueOf(Objects.requireNonNull(roi.get("top")).toString()).intValue(),
+                Double.valueOf(Objects.requireNonNull(roi.get("right")).toString()).intValue(),
+                Double.valueOf(Objects.requireNonNull(roi.get("bottom")).toString()).intValue());
+    }
+
+    //The optional "maxDimension" of the longer side of the processed image, 0 if the image is processed at full size.
+    private static int getMaxDimension(Map<String, Object> imageData) {
+        Object maxDimension = imageData.get("maxDimension");
+        return maxDimension != null ? Double.valueOf(maxDimension.toString()).intValue() : 0;
+    }
+
 }
@@ -0,0 +1,202 @@
+package com.google_mlkit_commons;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel;
+
+//Encodes result trees of maps, lists, numbers and strings into one byte array, which crosses the platform channel as a
+//single Uint8List and is decoded by PackedResultCodec on the Dart side. Map keys are written once per message into a
+//dictionary and referenced by index, numbers are written with a fixed width, and primitive arrays are written as typed runs.
+//All multi-byte values are little endian.
+public class PackedResultCodec {
+    static final byte VERSION = 1;
+
+    private static final byte NULL = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+    private static final byte INT = 3;
+    private static final byte LONG = 4;
+    private static final byte FLOAT = 5;
+    private static final byte DOUBLE = 6;
+    private static final byte STRING = 7;
+    private static final byte LIST = 8;
+    private static final byte MAP = 9;
+    private static final byte BYTES = 10;
+    private static final byte INT_ARRAY = 11;
+    private static final byte FLOAT_ARRAY = 12;
+    private static final byte DOUBLE_ARRAY = 13;
+
+    private byte[] buffer = new byte[256];
+    private int position = 0;
+    private final Map<String, Integer> keys = new HashMap<>();
+    private String[] keyOrder = new String[16];
+
+    private PackedResultCodec() {
+    }
+
+    //Whether the Dart instance that made [call] asked for packed results.
+    public static boolean isRequested(@Nullable MethodCall call) {
+        return call != null && Boolean.TRUE.equals(call.argument("packedResults"));
+    }
+
+    //Returns a result that packs the values it is given before passing them on to [result].
+    public static MethodChannel.Result wrap(MethodChannel.Result result) {
+        return new MethodChannel.Result() {
+            @Override
+            public void success(@Nullable Object value) {
+                result.success(encode(value));
+            }
+
+            @Override
+            public void error(@NonNull String errorCode, @Nullable String errorMessage, @Nullable Object errorDetails) {
+                result.error(errorCode, errorMessage, errorDetails);
+            }
+
+            @Override
+            public void notImplemented() {
+                result.notImplemented();
+            }
+        };
+    }
+
+    public static byte[] encode(@Nullable Object value) {
+        PackedResultCodec body = new PackedResultCodec();
+        body.writeValue(value);
+
+        PackedResultCodec header = new PackedResultCodec();
+        header.writeByte(VERSION);
+        header.writeSize(body.keys.size());
+        for (int i = 0; i < body.keys.size(); i++) {
+            header.writeString(body.keyOrder[i]);
+        }
+
+        byte[] message = Arrays.copyOf(header.buffer, header.position + body.position);
+        System.arraycopy(body.buffer, 0, message, header.position, body.position);
+        return message;
+    }
+
+    private void writeValue(@Nullable Object value) {
+        if (value == null) {
+            writeByte(NULL);
+        } else if (value instanceof Boolean) {
+            writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            writeByte(INT);
+            writeInt(((Number) value).intValue());
+        } else if (value instanceof Long) {
+            writeByte(LONG);
+            writeLong((Long) value);
+        } else if (value instanceof Float) {
+            writeByte(FLOAT);
+            writeInt(Float.floatToRawIntBits((Float) value));
+        } else if (value instanceof Double) {
+            writeByte(DOUBLE);
+            writeLong(Double.doubleToRawLongBits((Double) value));
+        } else if (value instanceof String) {
+            writeByte(STRING);
+            writeString((String) value);
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            writeByte(MAP);
+            writeSize(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeSize(keyIndex(String.valueOf(entry.getKey())));
+                writeValue(entry.getValue());
+            }
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            writeByte(LIST);
+            writeSize(list.size());
+            for (Object item : list) {
+                writeValue(item);
+            }
+        } else if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            writeByte(BYTES);
+            writeSize(bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        } else if (value instanceof int[]) {
+            int[] ints = (int[]) value;
+            writeByte(INT_ARRAY);
+            writeSize(ints.length);
+            ensureCapacity(ints.length * 4);
+            for (int i : ints) writeInt(i);
+        } else if (value instanceof float[]) {
+            float[] floats = (float[]) value;
+            writeByte(FLOAT_ARRAY);
+            writeSize(floats.length);
+            ensureCapacity(floats.length * 4);
+            for (float f : floats) writeInt(Float.floatToRawIntBits(f));
+        } else if (value instanceof double[]) {
+            double[] doubles = (double[]) value;
+            writeByte(DOUBLE_ARRAY);
+            writeSize(doubles.length);
+            ensureCapacity(doubles.length * 8);
+            for (double d : doubles) writeLong(Double.doubleToRawLongBits(d));
+        } else {
+            throw new IllegalArgumentException("Unsupported value in packed result: " + value.getClass());
+        }
+    }
+
+    private int keyIndex(String key) {
+        Integer index = keys.get(key);
+        if (index == null) {
+            index = keys.size();
+            keys.put(key, index);
+            if (index == keyOrder.length) keyOrder = Arrays.copyOf(keyOrder, index * 2);
+            keyOrder[index] = key;
+        }
+        return index;
+    }
+
+    private void writeString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeSize(bytes.length);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    //Sizes and key indexes are written as unsigned LEB128 varints.
+    private void writeSize(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private void writeByte(byte value) {
+        ensureCapacity(1);
+        buffer[position++] = value;
+    }
+
+    private void writeInt(int value) {
+        ensureCapacity(4);
+        buffer[position++] = (byte) value;
+        buffer[position++] = (byte) (value >> 8);
+        buffer[position++] = (byte) (value >> 16);
+        buffer[position++] = (byte) (value >> 24);
+    }
+
+    private void writeLong(long value) {
+        writeInt((int) value);
+        writeInt((int) (value >> 32));
+    }
+
+    private void ensureCapacity(int extra) {
+        if (position + extra <= buffer.length) return;
+        buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+    }
+}
@@ -0,0 +1,23 @@
+package com.google_mlkit_commons;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+//Runs the listeners of vision detector tasks off the main thread, where ML Kit would otherwise call them.
+//A single thread keeps the listeners of one task in the order they were added, so an image is only released,
+//and the next frame of a stream only started, after the result of the previous one has been sent.
+public class ResultExecutor {
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "google_mlkit_results");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private ResultExecutor() {
+    }
+
+    public static Executor get() {
+        return executor;
+    }
+}
@@ -0,0 +1,18 @@
+package com.google_mlkit_commons;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.tasks.Task;
+import com.google.mlkit.vision.common.InputImage;
+
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel;
+
+//A vision detector that runs on an InputImage which has already been converted from the "imageData" of a call.
+public interface VisionAnalyzer {
+    //Processes [inputImage] with the arguments of [call] and reports to [result] like the detector's own start call.
+    //Returns the processing task, or null if the call failed before processing started.
+    @Nullable
+    Task<?> analyze(@NonNull MethodCall call, @NonNull InputImage inputImage, @NonNull MethodChannel.Result result);
+}
@@ -0,0 +1,227 @@
+package com.google_mlkit_commons;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.tasks.Task;
+import com.google.mlkit.vision.common.InputImage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel;
+
+//Runs VisionAnalyzers on converted images: either one detector per call, or several detectors of different plugins on one frame.
+public class VisionAnalyzers {
+    private static final Map<String, VisionAnalyzer> analyzers = Collections.synchronizedMap(new HashMap<>());
+    private static final Map<InputImage, Long> frameTimes = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private VisionAnalyzers() {
+    }
+
+    //Makes [analyzer] available to "vision#analyze" calls under [type], e.g. "barcode".
+    public static void register(String type, VisionAnalyzer analyzer) {
+        analyzers.put(type, analyzer);
+    }
+
+    public static void unregister(String type) {
+        analyzers.remove(type);
+    }
+
+    //When the frame in [inputImage] reached the plugin, in System.nanoTime(). A frame that waited for its detector keeps
+    //the time it arrived, which is closer to when it was captured than the time it is analyzed.
+    public static long getFrameTime(InputImage inputImage) {
+        Long frameTime = frameTimes.get(inputImage);
+        return frameTime != null ? frameTime : System.nanoTime();
+    }
+
+    //The mean time in nanoseconds between frames arriving for the detector instance [id] of [analyzer], frames that
+    //were dropped while the detector was busy included. 0 for images without a "sequence", or before the second frame.
+    public static long getFrameInterval(VisionAnalyzer analyzer, String id) {
+        return FrameScheduler.getArrivalInterval(analyzer, id);
+    }
+
+    //Forgets the frames of the detector instance [id] of [analyzer], to be called when the instance is closed.
+    public static void close(VisionAnalyzer analyzer, String id) {
+        FrameScheduler.remove(analyzer, id);
+    }
+
+    //Converts the "imageData" of [call] and runs [analyzer] on it, releasing the converted image once the analyzer is done.
+    //Images that carry a "sequence" number are frames of a stream: while the detector instance is busy only the newest
+    //of them waits, and it is converted only once the detector is free.
+    public static void process(MethodCall call, Context context, VisionAnalyzer analyzer, MethodChannel.Result result) {
+        if (PackedResultCodec.isRequested(call)) {
+            result = PackedResultCodec.wrap(result);
+        }
+        Map<String, Object> imageData = call.argument("imageData");
+        if (imageData == null) {
+            result.error("InputImageConverterError", "Image data is missing", null);
+            return;
+        }
+        long frameTime = System.nanoTime();
+        Object sequence = imageData.get("sequence");
+        String id = call.argument("id");
+        if (sequence instanceof Number && id != null) {
+            FrameScheduler.submit(analyzer, id, ((Number) sequence).longValue(), (frameResult, onDone) ->
+                    runAnalyzer(call, context, analyzer, imageData, frameTime, frameResult, onDone), result);
+            return;
+        }
+        runAnalyzer(call, context, analyzer, imageData, frameTime, result, null);
+    }
+
+    private static void runAnalyzer(MethodCall call, Context context, VisionAnalyzer analyzer, Map<String, Object> imageData,
+                                    long frameTime, MethodChannel.Result result, @Nullable Runnable onDone) {
+        InputImage inputImage = InputImageConverter.getInputImageFromData(imageData, context, result);
+        if (inputImage == null) {
+            if (onDone != null) onDone.run();
+            return;
+        }
+        frameTimes.put(inputImage, frameTime);
+        Task<?> task;
+        try {
+            task = analyzer.analyze(call, inputImage, result);
+        } catch (RuntimeException e) {
+            //Frames a stream held back start on the results thread, where nothing would catch the exception.
+            releaseWhenDone(null, inputImage, onDone);
+            result.error("VisionAnalyzerError", e.toString(), null);
+            return;
+        }
+        releaseWhenDone(task, inputImage, onDone);
+    }
+
+    //Converts one frame and runs several detectors on it concurrently. Each entry of "detectors" names the registered
+    //"type" of a detector and holds the "arguments" of its start call. An entry may ask for a smaller "maxDimension",
+    //in which case the frame is converted once more per distinct size, and those smaller images are shared too.
+    //Replies with one {"result"} or {"error", "message"} map per detector, in the order they were given.
+    static void analyzeAll(MethodCall call, Context context, MethodChannel.Result result) {
+        Map<String, Object> imageData = call.argument("imageData");
+        List<Map<String, Object>> detectors = call.argument("detectors");
+        if (imageData == null || detectors == null) {
+            result.error("VisionAnalyzerError", "Image data and detectors are required", null);
+            return;
+        }
+
+        Map<Object, InputImage> pyramid = new HashMap<>();
+        FanOutResult fanOut = new FanOutResult(detectors.size(), result, () -> {
+            for (InputImage inputImage : pyramid.values()) {
+                InputImageConverter.releaseInputImage(inputImage);
+            }
+        });
+        for (int i = 0; i < detectors.size(); i++) {
+            Map<String, Object> detector = detectors.get(i);
+            MethodCall entryCall = new MethodCall("vision#analyze", detector.get("arguments"));
+            MethodChannel.Result entryResult = fanOut.entry(i);
+            if (PackedResultCodec.isRequested(entryCall)) {
+                entryResult = PackedResultCodec.wrap(entryResult);
+            }
+            VisionAnalyzer analyzer = analyzers.get((String) detector.get("type"));
+            if (analyzer == null) {
+                entryResult.error("VisionAnalyzerError", "No detector registered for " + detector.get("type"), null);
+                continue;
+            }
+
+            Object maxDimension = detector.get("maxDimension");
+            InputImage inputImage = pyramid.get(maxDimension);
+            if (inputImage == null) {
+                Map<String, Object> levelData = imageData;
+                if (maxDimension != null) {
+                    levelData = new HashMap<>(imageData);
+                    levelData.put("maxDimension", maxDimension);
+                }
+                inputImage = InputImageConverter.getInputImageFromData(levelData, context, entryResult);
+                if (inputImage == null) continue;
+                pyramid.put(maxDimension, inputImage);
+            }
+
+            try {
+                analyzer.analyze(entryCall, inputImage, entryResult);
+            } catch (RuntimeException e) {
+                //The fan-out only replies and releases its images once every entry has replied.
+                entryResult.error("VisionAnalyzerError", e.toString(), null);
+            }
+        }
+        fanOut.start();
+    }
+
+    private static void releaseWhenDone(@Nullable Task<?> task, InputImage inputImage, @Nullable Runnable onDone) {
+        if (task == null) {
+            frameTimes.remove(inputImage);
+            InputImageConverter.releaseInputImage(inputImage);
+            if (onDone != null) onDone.run();
+            return;
+        }
+        task.addOnCompleteListener(ResultExecutor.get(), t -> {
+            frameTimes.remove(inputImage);
+            InputImageConverter.releaseInputImage(inputImage);
+            if (onDone != null) onDone.run();
+        });
+    }
+
+    //Collects the replies of the detectors of one fan-out call and sends them back together once all of them have replied.
+    private static class FanOutResult {
+        private final Object[] entries;
+        private final MethodChannel.Result result;
+        private final Runnable onDone;
+        private int pending;
+        private boolean started = false;
+
+        FanOutResult(int size, MethodChannel.Result result, Runnable onDone) {
+            this.entries = new Object[size];
+            this.result = result;
+            this.onDone = onDone;
+            this.pending = size;
+        }
+
+        MethodChannel.Result entry(int index) {
+            return new MethodChannel.Result() {
+                @Override
+                public void success(@Nullable Object value) {
+                    Map<String, Object> entry = new HashMap<>();
+                    entry.put("result", value);
+                    complete(index, entry);
+                }
+
+                @Override
+                public void error(@NonNull String errorCode, @Nullable String errorMessage, @Nullable Object errorDetails) {
+                    Map<String, Object> entry = new HashMap<>();
+                    entry.put("error", errorCode);
+                    entry.put("message", errorMessage);
+                    complete(index, entry);
+                }
+
+                @Override
+                public void notImplemented() {
+                    error("VisionAnalyzerError", "Not implemented", null);
+                }
+            };
+        }
+
+        //Entries may reply while the fan-out is still being set up, the combined reply waits until start() was called.
+        synchronized void start() {
+            started = true;
+            finishIfDone();
+        }
+
+        private synchronized void complete(int index, Map<String, Object> entry) {
+            if (entries[index] != null) return;
+            entries[index] = entry;
+            pending--;
+            finishIfDone();
+        }
+
+        private void finishIfDone() {
+            if (!started || pending > 0) return;
+            onDone.run();
+            List<Object> replies = new ArrayList<>(entries.length);
+            Collections.addAll(replies, entries);
+            result.success(replies);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.google_mlkit_commons;
+
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+
+import java.nio.ByteBuffer;
+
+//Lays out the planes of a YUV 4:2:0 frame in one of the buffer formats accepted by InputImage.fromByteBuffer.
+//ML Kit only takes stride-aware planes through android.media.Image, so the planes are packed with whole-row copies instead.
+//An optional crop and subsampling step are applied while packing.
+class YuvPlanePacker {
+    private final byte[] y;
+    private final int yOffset;
+    private final int yRowStride;
+    private final byte[] u;
+    private final int uOffset;
+    private final byte[] v;
+    private final int vOffset;
+    private final int uvRowStride;
+    private final int uvPixelStride;
+    private final int width;
+    private final int height;
+
+    private Rect crop;
+    private int step = 1;
+
+    YuvPlanePacker(byte[] y, int yRowStride,
+                   byte[] u, byte[] v, int uvRowStride, int uvPixelStride,
+                   int width, int height) {
+        this(y, 0, yRowStride, u, 0, v, 0, uvRowStride, uvPixelStride, width, height);
+    }
+
+    private YuvPlanePacker(byte[] y, int yOffset, int yRowStride,
+                           byte[] u, int uOffset, byte[] v, int vOffset, int uvRowStride, int uvPixelStride,
+                           int width, int height) {
+        this.y = y;
+        this.yOffset = yOffset;
+        this.yRowStride = yRowStride;
+        this.u = u;
+        this.uOffset = uOffset;
+        this.v = v;
+        this.vOffset = vOffset;
+        this.uvRowStride = uvRowStride;
+        this.uvPixelStride = uvPixelStride;
+        this.width = width;
+        this.height = height;
+        this.crop = new Rect(0, 0, width, height);
+    }
+
+    static YuvPlanePacker fromNv21(byte[] data, int width, int height) {
+        int chromaOffset = width * height;
+        return new YuvPlanePacker(data, 0, width, data, chromaOffset + 1, data, chromaOffset, width, 2, width, height);
+    }
+
+    static YuvPlanePacker fromYv12(byte[] data, int width, int height) {
+        int vOffset = width * height;
+        int uOffset = vOffset + (width / 2) * (height / 2);
+        return new YuvPlanePacker(data, 0, width, data, uOffset, data, vOffset, width / 2, 1, width, height);
+    }
+
+    //Clamps [crop], given in buffer coordinates, to the frame and aligns it to the chroma grid.
+    Rect alignCrop(Rect crop) {
+        Rect aligned = new Rect(crop);
+        if (!aligned.intersect(0, 0, width, height)) {
+            throw new IllegalArgumentException("Region of interest is outside of the image");
+        }
+        aligned.left &= ~1;
+        aligned.top &= ~1;
+        aligned.right = Math.max(aligned.left + 2, aligned.right & ~1);
+        aligned.bottom = Math.max(aligned.top + 2, aligned.bottom & ~1);
+        return aligned;
+    }
+
+    //Restricts packing to an aligned [crop], keeping every [step]th pixel of it.
+    void setCrop(Rect crop, int step) {
+        this.crop = crop;
+        this.step = Math.max(1, step);
+    }
+
+    int outputWidth() {
+        return Math.max(2, (crop.width() / step) & ~1);
+    }
+
+    int outputHeight() {
+        return Math.max(2, (crop.height() / step) & ~1);
+    }
+
+    int bufferSize() {
+        return outputWidth() * outputHeight() * 3 / 2;
+    }
+
+    //Planar chroma maps onto YV12 as is, interleaved chroma onto NV21.
+    int outputFormat() {
+        return uvPixelStride == 1 ? ImageFormat.YV12 : ImageFormat.NV21;
+    }
+
+    void pack(ByteBuffer out) {
+        int outWidth = outputWidth();
+        int outHeight = outputHeight();
+        copyRows(y, yOffset + crop.top * yRowStride + crop.left, yRowStride * step, step, outWidth, outHeight, out);
+
+        int chromaWidth = outWidth / 2;
+        int chromaHeight = outHeight / 2;
+        int chromaRowStride = uvRowStride * step;
+        int chromaStart = (crop.top / 2) * uvRowStride + (crop.left / 2) * uvPixelStride;
+        if (uvPixelStride == 1) {
+            copyRows(v, vOffset + chromaStart, chromaRowStride, step, chromaWidth, chromaHeight, out);
+            copyRows(u, uOffset + chromaStart, chromaRowStride, step, chromaWidth, chromaHeight, out);
+        } else if (uvPixelStride == 2 && step == 1 && isVuInterleaved()) {
+            //The V plane is a view into a semi-planar VU buffer, so every row of it is already a NV21 chroma row.
+            for (int row = 0; row < chromaHeight; row++) {
+                int offset = chromaStart + row * chromaRowStride;
+                out.put(v, vOffset + offset, outWidth - 1);
+                out.put(u[uOffset + offset + outWidth - 2]);
+            }
+        } else {
+            int pixelStride = uvPixelStride * step;
+            for (int row = 0; row < chromaHeight; row++) {
+                int offset = chromaStart + row * chromaRowStride;
+                for (int col = 0; col < chromaWidth; col++) {
+                    out.put(v[vOffset + offset]);
+                    out.put(u[uOffset + offset]);
+                    offset += pixelStride;
+                }
+            }
+        }
+        out.flip();
+    }
+
+    private static void copyRows(byte[] plane, int start, int rowStride, int pixelStride, int rowLength, int rows, ByteBuffer out) {
+        if (pixelStride == 1 && rowStride == rowLength) {
+            out.put(plane, start, rowLength * rows);
+            return;
+        }
+        for (int row = 0; row < rows; row++) {
+            int offset = start + row * rowStride;
+            if (pixelStride == 1) {
+                out.put(plane, offset, rowLength);
+                continue;
+            }
+            for (int col = 0; col < rowLength; col++) {
+                out.put(plane[offset]);
+                offset += pixelStride;
+            }
+        }
+    }
+
+    //Only a layout that is known to be VU can be copied row by row. Planes sent from Dart are separate copies, whose
+    //bytes cannot tell a VU buffer from an UV one with flat chroma, so they are always interleaved pixel by pixel.
+    private boolean isVuInterleaved() {
+        return u == v && uOffset == vOffset + 1;
+    }
+}
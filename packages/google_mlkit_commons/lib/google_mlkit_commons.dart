@@ -1,3 +1,7 @@
+export 'src/decoded_image_cache.dart';
 export 'src/input_image.dart';
 export 'src/model_manager.dart';
+export 'src/packed_result_codec.dart';
+export 'src/quantized_confidences.dart';
 export 'src/rect.dart';
+export 'src/vision_analysis.dart';
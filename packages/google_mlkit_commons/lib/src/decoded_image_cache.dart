@@ -0,0 +1,61 @@
+import 'dart:async';
+
+import 'package:flutter/services.dart';
+
+/// The cache of decoded image files shared by all detectors.
+///
+/// Images created with `InputImage.fromFilePath` or `InputImage.fromFile` and
+/// marked with `withRegion(shareDecoded: true)` are decoded once and reused
+/// by every detector that processes the same file with the same region.
+/// The cache is released when the system runs low on memory.
+/// Only available on Android.
+class DecodedImageCache {
+  static const MethodChannel _channel = MethodChannel('google_mlkit_commons');
+
+  /// Returns the hit and miss counters of the cache.
+  static Future<DecodedImageCacheStats> getStats() async {
+    final result = await _channel.invokeMethod('vision#getImageCacheStats');
+    return DecodedImageCacheStats.fromJson(result);
+  }
+
+  /// Releases all the decoded images held by the cache.
+  static Future<void> clear() =>
+      _channel.invokeMethod('vision#clearImageCache');
+}
+
+/// Counters of the [DecodedImageCache].
+class DecodedImageCacheStats {
+  /// Number of images served from the cache.
+  final int hits;
+
+  /// Number of images that had to be decoded.
+  final int misses;
+
+  /// Number of images dropped to stay within the memory budget.
+  final int evictions;
+
+  /// Bytes currently held by the cache.
+  final int size;
+
+  /// Memory budget of the cache, in bytes.
+  final int maxSize;
+
+  /// Constructor to create an instance of [DecodedImageCacheStats].
+  DecodedImageCacheStats({
+    required this.hits,
+    required this.misses,
+    required this.evictions,
+    required this.size,
+    required this.maxSize,
+  });
+
+  /// Returns an instance of [DecodedImageCacheStats] from a given [json].
+  factory DecodedImageCacheStats.fromJson(Map<dynamic, dynamic> json) =>
+      DecodedImageCacheStats(
+        hits: json['hits'],
+        misses: json['misses'],
+        evictions: json['evictions'],
+        size: json['size'],
+        maxSize: json['maxSize'],
+      );
+}
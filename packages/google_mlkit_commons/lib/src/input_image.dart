@@ -22,6 +22,33 @@ class InputImage {
   /// The rotation degrees for bitmap images.
   final int? rotation;
 
+  /// The planes of the image when creating an image of type = [InputImageType.planes].
+  final List<InputImagePlane>? planes;
+
+  /// The region of the image to process, in the upright coordinates results are reported in.
+  ///
+  /// Only used on Android.
+  final Rect? roi;
+
+  /// The max length of the longer side of the image when it is processed.
+  ///
+  /// Only used on Android.
+  final int? maxDimension;
+
+  /// Whether the decoded file is kept in the `DecodedImageCache`, see
+  /// [withRegion].
+  ///
+  /// Only used on Android.
+  final bool shareDecoded;
+
+  /// The number of this image within a stream of camera frames, see [withSequence].
+  ///
+  /// Only used on Android.
+  final int? sequence;
+
+  /// The error code a detector completes with when it skipped a frame of a stream.
+  static const String droppedFrameCode = 'dropped';
+
   InputImage._({
     this.filePath,
     this.bytes,
@@ -29,8 +56,68 @@ class InputImage {
     required this.type,
     this.metadata,
     this.rotation,
+    this.planes,
+    this.roi,
+    this.maxDimension,
+    this.sequence,
+    this.shareDecoded = false,
   });
 
+  /// Returns a copy of this image that is cropped to [roi] and downscaled so
+  /// that its longer side is at most [maxDimension] before being processed.
+  ///
+  /// Images created from a file are decoded at a reduced size, and only the
+  /// [roi] of the file is decoded, which keeps memory low for large photos.
+  ///
+  /// With [shareDecoded] the decoded file is kept in the `DecodedImageCache`,
+  /// so other detectors processing the same file with the same [roi] and
+  /// [maxDimension] do not decode it again. Files are read at full resolution
+  /// when neither [roi] nor [maxDimension] is given.
+  ///
+  /// Coordinates in the results are still reported in the space of the whole image.
+  /// Segmentation masks cover the processed region only.
+  /// Only used on Android.
+  InputImage withRegion(
+      {Rect? roi, int? maxDimension, bool shareDecoded = false}) {
+    return InputImage._(
+      filePath: filePath,
+      bytes: bytes,
+      bitmapData: bitmapData,
+      type: type,
+      metadata: metadata,
+      rotation: rotation,
+      planes: planes,
+      roi: roi,
+      maxDimension: maxDimension,
+      sequence: sequence,
+      shareDecoded: shareDecoded,
+    );
+  }
+
+  /// Returns a copy of this image marked as frame [sequence] of a stream.
+  ///
+  /// A detector keeps at most one frame of a stream in flight and one waiting.
+  /// When a newer frame arrives while one is waiting, the waiting frame is
+  /// skipped and its `processImage` call throws a `PlatformException` with code
+  /// [droppedFrameCode]. Sequence numbers must increase from frame to frame,
+  /// results are never delivered for a frame older than one already delivered.
+  /// Only used on Android.
+  InputImage withSequence(int sequence) {
+    return InputImage._(
+      filePath: filePath,
+      bytes: bytes,
+      bitmapData: bitmapData,
+      type: type,
+      metadata: metadata,
+      rotation: rotation,
+      planes: planes,
+      roi: roi,
+      maxDimension: maxDimension,
+      sequence: sequence,
+      shareDecoded: shareDecoded,
+    );
+  }
+
   /// Creates an instance of [InputImage] from path of image stored in device.
   factory InputImage.fromFilePath(String path) {
     return InputImage._(filePath: path, type: InputImageType.file);
@@ -48,6 +135,18 @@ class InputImage {
         bytes: bytes, type: InputImageType.bytes, metadata: metadata);
   }
 
+  /// Creates an instance of [InputImage] from the Y, U and V planes of a
+  /// [InputImageFormat.yuv_420_888] image, such as the planes of a `CameraImage`.
+  ///
+  /// The planes are sent as they are, without packing them into a single
+  /// buffer in Dart first. Android only.
+  factory InputImage.fromPlanes(
+      {required List<InputImagePlane> planes,
+      required InputImageMetadata metadata}) {
+    return InputImage._(
+        planes: planes, type: InputImageType.planes, metadata: metadata);
+  }
+
   /// Creates an instance of [InputImage] from bitmap data.
   ///
   /// This constructor is designed to work with bitmap data from Flutter UI components
@@ -102,7 +201,19 @@ class InputImage {
         'path': filePath,
         'metadata': metadata?.toJson(),
         'bitmapData': bitmapData,
-        'rotation': rotation
+        'rotation': rotation,
+        'planes': planes?.map((plane) => plane.toJson()).toList(),
+        'roi': roi != null
+            ? {
+                'left': roi!.left,
+                'top': roi!.top,
+                'right': roi!.right,
+                'bottom': roi!.bottom,
+              }
+            : null,
+        'maxDimension': maxDimension,
+        'sequence': sequence,
+        'shareDecoded': shareDecoded,
       };
 }
 
@@ -111,6 +222,33 @@ enum InputImageType {
   file,
   bytes,
   bitmap,
+  planes,
+}
+
+/// A single plane of an image created with [InputImage.fromPlanes].
+class InputImagePlane {
+  /// The bytes of the plane.
+  final Uint8List bytes;
+
+  /// The row stride of the plane, in bytes.
+  final int bytesPerRow;
+
+  /// The distance between two consecutive pixels of the plane, in bytes.
+  final int bytesPerPixel;
+
+  /// Constructor to create an instance of [InputImagePlane].
+  InputImagePlane({
+    required this.bytes,
+    required this.bytesPerRow,
+    required this.bytesPerPixel,
+  });
+
+  /// Returns a json representation of an instance of [InputImagePlane].
+  Map<String, dynamic> toJson() => {
+        'bytes': bytes,
+        'bytesPerRow': bytesPerRow,
+        'bytesPerPixel': bytesPerPixel,
+      };
 }
 
 /// Data of image required when creating image from bytes.
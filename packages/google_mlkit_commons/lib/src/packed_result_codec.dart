@@ -0,0 +1,138 @@
+import 'dart:convert';
+import 'dart:typed_data';
+
+/// Decodes results that a detector sent in the packed binary format.
+///
+/// Detectors created with `packedResults: true` send their results as one
+/// byte array instead of a tree of maps and lists. Map keys are sent once per
+/// result, numbers with a fixed width and point arrays as typed runs. The
+/// result is still built as maps and lists on Android before it is packed.
+/// The decoded value has the same structure as an unpacked result.
+/// Only available on Android.
+class PackedResultCodec {
+  static const int _version = 1;
+
+  static const int _null = 0;
+  static const int _true = 1;
+  static const int _false = 2;
+  static const int _int = 3;
+  static const int _long = 4;
+  static const int _float = 5;
+  static const int _double = 6;
+  static const int _string = 7;
+  static const int _list = 8;
+  static const int _map = 9;
+  static const int _bytes = 10;
+  static const int _intArray = 11;
+  static const int _floatArray = 12;
+  static const int _doubleArray = 13;
+
+  final Uint8List _bytesIn;
+  final ByteData _data;
+  int _position = 0;
+  late final List<String> _keys;
+
+  PackedResultCodec._(this._bytesIn)
+      : _data = ByteData.sublistView(_bytesIn);
+
+  /// Returns [result] decoded if it is a packed result, or as it is otherwise.
+  static dynamic unpack(dynamic result) =>
+      result is Uint8List ? decode(result) : result;
+
+  /// Decodes a packed result.
+  static dynamic decode(Uint8List bytes) {
+    final reader = PackedResultCodec._(bytes);
+    final version = reader._readByte();
+    if (version != _version) {
+      throw FormatException('Unsupported packed result version $version');
+    }
+    final keyCount = reader._readSize();
+    reader._keys =
+        List<String>.generate(keyCount, (_) => reader._readString());
+    return reader._readValue();
+  }
+
+  dynamic _readValue() {
+    final type = _readByte();
+    switch (type) {
+      case _null:
+        return null;
+      case _true:
+        return true;
+      case _false:
+        return false;
+      case _int:
+        final value = _data.getInt32(_position, Endian.little);
+        _position += 4;
+        return value;
+      case _long:
+        final value = _data.getInt64(_position, Endian.little);
+        _position += 8;
+        return value;
+      case _float:
+        final value = _data.getFloat32(_position, Endian.little);
+        _position += 4;
+        return value;
+      case _double:
+        final value = _data.getFloat64(_position, Endian.little);
+        _position += 8;
+        return value;
+      case _string:
+        return _readString();
+      case _list:
+        final length = _readSize();
+        return List<dynamic>.generate(length, (_) => _readValue());
+      case _map:
+        final length = _readSize();
+        final map = <dynamic, dynamic>{};
+        for (int i = 0; i < length; i++) {
+          final key = _keys[_readSize()];
+          map[key] = _readValue();
+        }
+        return map;
+      case _bytes:
+        final length = _readSize();
+        return _readBytes(length);
+      case _intArray:
+        final length = _readSize();
+        return _readBytes(length * 4).buffer.asInt32List();
+      case _floatArray:
+        final length = _readSize();
+        return _readBytes(length * 4).buffer.asFloat32List();
+      case _doubleArray:
+        final length = _readSize();
+        return _readBytes(length * 8).buffer.asFloat64List();
+      default:
+        throw FormatException('Unknown value type $type in packed result');
+    }
+  }
+
+  int _readByte() => _bytesIn[_position++];
+
+  int _readSize() {
+    int value = 0;
+    int shift = 0;
+    while (true) {
+      final byte = _readByte();
+      value |= (byte & 0x7F) << shift;
+      if (byte & 0x80 == 0) return value;
+      shift += 7;
+    }
+  }
+
+  String _readString() {
+    final length = _readSize();
+    final value =
+        utf8.decoder.convert(_bytesIn, _position, _position + length);
+    _position += length;
+    return value;
+  }
+
+  /// Copies the next [length] bytes, so typed views of them are aligned.
+  Uint8List _readBytes(int length) {
+    final bytes = Uint8List.fromList(
+        Uint8List.sublistView(_bytesIn, _position, _position + length));
+    _position += length;
+    return bytes;
+  }
+}
@@ -0,0 +1,27 @@
+import 'dart:collection';
+import 'dart:typed_data';
+
+/// Confidences of a segmentation mask that were sent as one byte each.
+///
+/// Reads every byte as a confidence between 0 and 1 without copying the bytes
+/// into a list of doubles.
+class QuantizedConfidences extends ListBase<double> {
+  final Uint8List _bytes;
+
+  /// Constructor to create an instance of [QuantizedConfidences] over [_bytes].
+  QuantizedConfidences(this._bytes);
+
+  @override
+  int get length => _bytes.length;
+
+  @override
+  set length(int newLength) =>
+      throw UnsupportedError('Cannot resize a confidence mask');
+
+  @override
+  double operator [](int index) => _bytes[index] / 255;
+
+  @override
+  void operator []=(int index, double value) =>
+      _bytes[index] = (value.clamp(0.0, 1.0) * 255).round();
+}
@@ -0,0 +1,82 @@
+import 'dart:async';
+
+import 'package:flutter/services.dart';
+
+import 'input_image.dart';
+
+/// One detector run requested from [VisionAnalyzer.analyze].
+///
+/// Detectors create these through their `analysis()` methods.
+class VisionAnalysis<T> {
+  /// The type the detector is registered with on the native side.
+  final String type;
+
+  /// The arguments of the detector, as sent with its own `processImage` call.
+  final Map<String, dynamic> arguments;
+
+  /// Converts the native result into the value returned by `processImage`.
+  final T Function(dynamic result) parse;
+
+  /// The maximum length of the longer side of the image this detector runs on.
+  /// Images of the same size are converted once and shared between detectors.
+  final int? maxDimension;
+
+  /// Constructor to create an instance of [VisionAnalysis].
+  VisionAnalysis({
+    required this.type,
+    required this.arguments,
+    required this.parse,
+    this.maxDimension,
+  });
+
+  Map<String, dynamic> _toJson() => {
+        'type': type,
+        'arguments': arguments,
+        if (maxDimension != null) 'maxDimension': maxDimension,
+      };
+}
+
+/// The outcome of one [VisionAnalysis].
+class VisionAnalysisResult<T> {
+  /// The parsed result, null if the detector failed.
+  final T? value;
+
+  /// The error reported by the detector, if any.
+  final PlatformException? error;
+
+  /// Constructor to create an instance of [VisionAnalysisResult].
+  VisionAnalysisResult({this.value, this.error});
+
+  /// Whether the detector completed successfully.
+  bool get hasError => error != null;
+}
+
+/// Runs several detectors on one image.
+class VisionAnalyzer {
+  static const MethodChannel _channel = MethodChannel('google_mlkit_commons');
+
+  /// Converts [inputImage] once and runs all [analyses] on it concurrently.
+  /// Returns one [VisionAnalysisResult] per analysis, in the same order.
+  /// Only available on Android.
+  static Future<List<VisionAnalysisResult>> analyze(
+      InputImage inputImage, List<VisionAnalysis> analyses) async {
+    final result = await _channel.invokeListMethod<dynamic>('vision#analyze', {
+      'imageData': inputImage.toJson(),
+      'detectors': analyses.map((analysis) => analysis._toJson()).toList(),
+    });
+
+    final results = <VisionAnalysisResult>[];
+    for (int i = 0; i < analyses.length; i++) {
+      final Map<dynamic, dynamic> entry = result![i];
+      if (entry.containsKey('error')) {
+        results.add(VisionAnalysisResult(
+            error: PlatformException(
+                code: entry['error'], message: entry['message'])));
+      } else {
+        results.add(
+            VisionAnalysisResult(value: analyses[i].parse(entry['result'])));
+      }
+    }
+    return results;
+  }
+}
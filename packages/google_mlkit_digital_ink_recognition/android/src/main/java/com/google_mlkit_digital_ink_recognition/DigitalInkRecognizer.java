@@ -18,6 +18,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
@@ -27,7 +28,7 @@ public class DigitalInkRecognizer implements MethodChannel.MethodCallHandler {
     private static final String CLOSE = "vision#closeDigitalInkRecognizer";
     private static final String MANAGE = "vision#manageInkModels";
 
-    private final Map<String, com.google.mlkit.vision.digitalink.DigitalInkRecognizer> instances = new HashMap<>();
+    private final Map<String, com.google.mlkit.vision.digitalink.DigitalInkRecognizer> instances = new ConcurrentHashMap<>();
     private final GenericModelManager genericModelManager = new GenericModelManager();
 
     @Override
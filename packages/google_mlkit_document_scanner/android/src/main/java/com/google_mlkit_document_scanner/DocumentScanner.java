@@ -19,6 +19,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 import io.flutter.embedding.engine.plugins.activity.ActivityPluginBinding;
 import io.flutter.plugin.common.MethodCall;
@@ -29,9 +30,9 @@ public class DocumentScanner implements MethodChannel.MethodCallHandler, PluginR
     private static final String START = "vision#startDocumentScanner";
     private static final String CLOSE = "vision#closeDocumentScanner";
     private static final String TAG = "DocumentScanner";
-    private final Map<String, GmsDocumentScanner> instances = new HashMap<>();
+    private final Map<String, GmsDocumentScanner> instances = new ConcurrentHashMap<>();
     private final ActivityPluginBinding binding;
-    private MethodChannel.Result pendingResult = null;
+    private volatile MethodChannel.Result pendingResult = null;
     final private int START_DOCUMENT_ACTIVITY = 0x362738;
 
     public DocumentScanner(ActivityPluginBinding binding) {
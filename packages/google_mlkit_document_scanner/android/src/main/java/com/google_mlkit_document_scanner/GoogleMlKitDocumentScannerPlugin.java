@@ -5,7 +5,9 @@ import androidx.annotation.NonNull;
 import io.flutter.embedding.engine.plugins.activity.ActivityAware;
 import io.flutter.embedding.engine.plugins.activity.ActivityPluginBinding;
 import io.flutter.embedding.engine.plugins.FlutterPlugin;
+import io.flutter.plugin.common.BinaryMessenger;
 import io.flutter.plugin.common.MethodChannel;
+import io.flutter.plugin.common.StandardMethodCodec;
 
 public class GoogleMlKitDocumentScannerPlugin implements FlutterPlugin, ActivityAware {
     private static final String channelName = "google_mlkit_document_scanner";
@@ -13,7 +15,8 @@ public class GoogleMlKitDocumentScannerPlugin implements FlutterPlugin, Activity
 
     @Override
     public void onAttachedToEngine(@NonNull FlutterPluginBinding flutterPluginBinding) {
-        channel = new MethodChannel(flutterPluginBinding.getBinaryMessenger(), channelName);
+        BinaryMessenger messenger = flutterPluginBinding.getBinaryMessenger();
+        channel = new MethodChannel(messenger, channelName, StandardMethodCodec.INSTANCE, messenger.makeBackgroundTaskQueue());
     }
 
     @Override
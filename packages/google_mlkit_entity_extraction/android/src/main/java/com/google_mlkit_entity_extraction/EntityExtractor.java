@@ -25,6 +25,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
 
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
@@ -34,7 +35,7 @@ public class EntityExtractor implements MethodChannel.MethodCallHandler {
     private static final String CLOSE = "nlp#closeEntityExtractor";
     private static final String MANAGE = "nlp#manageEntityExtractionModels";
 
-    private final Map<String, com.google.mlkit.nl.entityextraction.EntityExtractor> instances = new HashMap<>();
+    private final Map<String, com.google.mlkit.nl.entityextraction.EntityExtractor> instances = new ConcurrentHashMap<>();
     private final GenericModelManager genericModelManager = new GenericModelManager();
 
     @Override
@@ -3,7 +3,9 @@ package com.google_mlkit_entity_extraction;
 import androidx.annotation.NonNull;
 
 import io.flutter.embedding.engine.plugins.FlutterPlugin;
+import io.flutter.plugin.common.BinaryMessenger;
 import io.flutter.plugin.common.MethodChannel;
+import io.flutter.plugin.common.StandardMethodCodec;
 
 public class GoogleMlKitEntityExtractionPlugin implements FlutterPlugin {
     private MethodChannel channel;
@@ -11,7 +13,8 @@ public class GoogleMlKitEntityExtractionPlugin implements FlutterPlugin {
 
     @Override
     public void onAttachedToEngine(@NonNull FlutterPluginBinding flutterPluginBinding) {
-        channel = new MethodChannel(flutterPluginBinding.getBinaryMessenger(), channelName);
+        BinaryMessenger messenger = flutterPluginBinding.getBinaryMessenger();
+        channel = new MethodChannel(messenger, channelName, StandardMethodCodec.INSTANCE, messenger.makeBackgroundTaskQueue());
         channel.setMethodCallHandler(new EntityExtractor());
     }
 
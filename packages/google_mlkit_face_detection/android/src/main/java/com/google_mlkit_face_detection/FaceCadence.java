@@ -0,0 +1,276 @@
+package com.google_mlkit_face_detection;
+
+import android.graphics.Rect;
+
+import androidx.annotation.Nullable;
+
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.face.Face;
+import com.google_mlkit_commons.ImageTransform;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//Runs the face detector on every [interval]th frame of a stream only. On the frames in between, the faces of the last
+//detection are moved along with the image: each face box is block matched on a sparse grid of the luma plane around
+//its last position. A face that cannot be matched well enough forces a full detection on that frame.
+//Only frames backed by a NV21 or YV12 buffer can be predicted, other frames are always detected.
+class FaceCadence {
+    //Samples per side of the grid a face box is matched with.
+    private static final int GRID = 16;
+    //Mean absolute luma difference per sample above which a match is not trusted.
+    private static final int MAX_MEAN_DIFFERENCE = 18;
+
+    private final int interval;
+
+    private int framesSinceDetection = 0;
+    private int frameWidth;
+    private int frameHeight;
+    private int frameRotation;
+    private ImageTransform frameTransform;
+    private final List<TrackedFace> faces = new ArrayList<>();
+
+    private long detectedFrames = 0;
+    private long predictedFrames = 0;
+    private long detectionNanos = 0;
+    private long predictionNanos = 0;
+    private long comparedFaces = 0;
+    private double totalError = 0;
+    private double maxError = 0;
+
+    private static class TrackedFace {
+        final Integer trackingId;
+        final Map<String, Object> data;
+        final Rect box;
+        final int[] template;
+        int dx = 0;
+        int dy = 0;
+
+        TrackedFace(Integer trackingId, Map<String, Object> data, Rect box, int[] template) {
+            this.trackingId = trackingId;
+            this.data = data;
+            this.box = box;
+            this.template = template;
+        }
+    }
+
+    FaceCadence(int interval) {
+        this.interval = interval;
+    }
+
+    //Returns the faces of the last detection moved onto [inputImage], or null if the frame has to be detected.
+    @Nullable
+    synchronized List<Map<String, Object>> predict(InputImage inputImage) {
+        long start = System.nanoTime();
+        ByteBuffer luma = getLuma(inputImage);
+        if (luma == null || frameTransform == null || framesSinceDetection + 1 >= interval
+                || inputImage.getWidth() != frameWidth || inputImage.getHeight() != frameHeight
+                || inputImage.getRotationDegrees() != frameRotation) {
+            return null;
+        }
+
+        int[] offsets = new int[faces.size() * 2];
+        for (int i = 0; i < faces.size(); i++) {
+            TrackedFace face = faces.get(i);
+            if (!match(face, luma, offsets, i * 2)) return null;
+        }
+
+        List<Map<String, Object>> predicted = new ArrayList<>(faces.size());
+        for (int i = 0; i < faces.size(); i++) {
+            TrackedFace face = faces.get(i);
+            face.dx = offsets[i * 2];
+            face.dy = offsets[i * 2 + 1];
+            predicted.add(shift(face));
+        }
+        framesSinceDetection++;
+        predictedFrames++;
+        predictionNanos += System.nanoTime() - start;
+        return predicted;
+    }
+
+    //Takes the faces detected on [inputImage] as the reference for the next frames.
+    synchronized void update(InputImage inputImage, ImageTransform transform, List<Face> visionFaces,
+                             List<Map<String, Object>> faceData, long detectionStartNanos) {
+        detectedFrames++;
+        detectionNanos += System.nanoTime() - detectionStartNanos;
+        Map<Integer, TrackedFace> previous = new HashMap<>();
+        for (TrackedFace face : faces) {
+            if (face.trackingId != null) previous.put(face.trackingId, face);
+        }
+        faces.clear();
+        framesSinceDetection = 0;
+
+        ByteBuffer luma = getLuma(inputImage);
+        if (luma == null) {
+            frameTransform = null;
+            return;
+        }
+        frameWidth = inputImage.getWidth();
+        frameHeight = inputImage.getHeight();
+        frameRotation = inputImage.getRotationDegrees();
+        frameTransform = transform;
+
+        for (int i = 0; i < visionFaces.size(); i++) {
+            Face visionFace = visionFaces.get(i);
+            Rect box = ImageTransform.uprightToBuffer(
+                    visionFace.getBoundingBox(), frameWidth, frameHeight, frameRotation);
+            TrackedFace last = visionFace.getTrackingId() != null ? previous.get(visionFace.getTrackingId()) : null;
+            if (last != null && (last.dx != 0 || last.dy != 0)) {
+                recordError(last, visionFace.getBoundingBox());
+            }
+            faces.add(new TrackedFace(visionFace.getTrackingId(), faceData.get(i), box, sample(luma, box, 0, 0)));
+        }
+    }
+
+    synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("detectedFrames", detectedFrames);
+        stats.put("predictedFrames", predictedFrames);
+        stats.put("meanDetectionMillis", detectedFrames > 0 ? detectionNanos / 1e6 / detectedFrames : 0.0);
+        stats.put("meanPredictionMillis", predictedFrames > 0 ? predictionNanos / 1e6 / predictedFrames : 0.0);
+        stats.put("meanPositionError", comparedFaces > 0 ? totalError / comparedFaces : 0.0);
+        stats.put("maxPositionError", maxError);
+        return stats;
+    }
+
+    //Compares the last predicted position of a face with where the detector found it, in source pixels.
+    private void recordError(TrackedFace last, Rect detected) {
+        float[] upright = toUpright(last.dx, last.dy);
+        Rect reference = ImageTransform.bufferToUpright(last.box, frameWidth, frameHeight, frameRotation);
+        float predictedX = reference.exactCenterX() + upright[0];
+        float predictedY = reference.exactCenterY() + upright[1];
+        double error = frameTransform.mapLength((float) Math.hypot(
+                predictedX - detected.exactCenterX(), predictedY - detected.exactCenterY()));
+        comparedFaces++;
+        totalError += error;
+        maxError = Math.max(maxError, error);
+    }
+
+    //Searches the offset of [face] around its last one with a three step search, writing it to [offsets] at [index].
+    private boolean match(TrackedFace face, ByteBuffer luma, int[] offsets, int index) {
+        int bestDx = face.dx;
+        int bestDy = face.dy;
+        int bestCost = cost(face, luma, bestDx, bestDy);
+        for (int step = Math.max(1, Math.max(face.box.width(), face.box.height()) / 8); step >= 1; step /= 2) {
+            int centerDx = bestDx;
+            int centerDy = bestDy;
+            for (int y = -1; y <= 1; y++) {
+                for (int x = -1; x <= 1; x++) {
+                    if (x == 0 && y == 0) continue;
+                    int c = cost(face, luma, centerDx + x * step, centerDy + y * step);
+                    if (c < bestCost) {
+                        bestCost = c;
+                        bestDx = centerDx + x * step;
+                        bestDy = centerDy + y * step;
+                    }
+                }
+            }
+        }
+        offsets[index] = bestDx;
+        offsets[index + 1] = bestDy;
+        return bestCost <= MAX_MEAN_DIFFERENCE;
+    }
+
+    //Mean absolute difference between the template of [face] and the frame with the box moved by dx, dy.
+    private int cost(TrackedFace face, ByteBuffer luma, int dx, int dy) {
+        int[] samples = sample(luma, face.box, dx, dy);
+        int total = 0;
+        int count = 0;
+        for (int i = 0; i < samples.length; i++) {
+            if (samples[i] < 0 || face.template[i] < 0) continue;
+            total += Math.abs(samples[i] - face.template[i]);
+            count++;
+        }
+        return count > samples.length / 2 ? total / count : Integer.MAX_VALUE;
+    }
+
+    //Reads a GRID x GRID grid of luma values over [box] moved by dx, dy. Samples outside of the frame are -1.
+    private int[] sample(ByteBuffer luma, Rect box, int dx, int dy) {
+        int[] samples = new int[GRID * GRID];
+        for (int row = 0; row < GRID; row++) {
+            int y = box.top + dy + (2 * row + 1) * box.height() / (2 * GRID);
+            for (int col = 0; col < GRID; col++) {
+                int x = box.left + dx + (2 * col + 1) * box.width() / (2 * GRID);
+                samples[row * GRID + col] = x >= 0 && y >= 0 && x < frameWidth && y < frameHeight
+                        ? luma.get(y * frameWidth + x) & 0xFF
+                        : -1;
+            }
+        }
+        return samples;
+    }
+
+    //Copies the serialized face with its box, landmarks and contours moved by the offset of the face.
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> shift(TrackedFace face) {
+        float[] upright = toUpright(face.dx, face.dy);
+        float dx = frameTransform.mapLength(upright[0]);
+        float dy = frameTransform.mapLength(upright[1]);
+
+        Map<String, Object> data = new HashMap<>(face.data);
+        Map<String, Integer> rect = (Map<String, Integer>) face.data.get("rect");
+        if (rect != null) {
+            Map<String, Integer> moved = new HashMap<>();
+            moved.put("left", rect.get("left") + Math.round(dx));
+            moved.put("top", rect.get("top") + Math.round(dy));
+            moved.put("right", rect.get("right") + Math.round(dx));
+            moved.put("bottom", rect.get("bottom") + Math.round(dy));
+            data.put("rect", moved);
+        }
+        Map<String, double[]> landmarks = (Map<String, double[]>) face.data.get("landmarks");
+        if (landmarks != null) {
+            Map<String, double[]> moved = new HashMap<>();
+            for (Map.Entry<String, double[]> entry : landmarks.entrySet()) {
+                moved.put(entry.getKey(), new double[]{entry.getValue()[0] + dx, entry.getValue()[1] + dy});
+            }
+            data.put("landmarks", moved);
+        }
+        Map<String, List<double[]>> contours = (Map<String, List<double[]>>) face.data.get("contours");
+        if (contours != null) {
+            Map<String, List<double[]>> moved = new HashMap<>();
+            for (Map.Entry<String, List<double[]>> entry : contours.entrySet()) {
+                List<double[]> points = new ArrayList<>(entry.getValue().size());
+                for (double[] point : entry.getValue()) {
+                    points.add(new double[]{point[0] + dx, point[1] + dy});
+                }
+                moved.put(entry.getKey(), points);
+            }
+            data.put("contours", moved);
+        }
+        float[] contourPoints = (float[]) face.data.get("contourPoints");
+        if (contourPoints != null) {
+            float[] moved = new float[contourPoints.length];
+            for (int i = 0; i < contourPoints.length; i += 2) {
+                moved[i] = contourPoints[i] + dx;
+                moved[i + 1] = contourPoints[i + 1] + dy;
+            }
+            data.put("contourPoints", moved);
+        }
+        data.put("predicted", true);
+        return data;
+    }
+
+    //Turns an offset within the buffer into an offset in upright coordinates.
+    private float[] toUpright(int dx, int dy) {
+        switch (frameRotation) {
+            case 90:
+                return new float[]{-dy, dx};
+            case 180:
+                return new float[]{-dx, -dy};
+            case 270:
+                return new float[]{dy, -dx};
+            default:
+                return new float[]{dx, dy};
+        }
+    }
+
+    //The Y plane leads both NV21 and YV12 buffers, with a row stride of the image width.
+    @Nullable
+    private static ByteBuffer getLuma(InputImage inputImage) {
+        int format = inputImage.getFormat();
+        if (format != InputImage.IMAGE_FORMAT_NV21 && format != InputImage.IMAGE_FORMAT_YV12) return null;
+        return inputImage.getByteBuffer();
+    }
+}
@@ -6,28 +6,56 @@ import android.graphics.Rect;
 
 import androidx.annotation.NonNull;
 
+import com.google.android.gms.tasks.Task;
 import com.google.mlkit.vision.common.InputImage;
 import com.google.mlkit.vision.face.Face;
 import com.google.mlkit.vision.face.FaceContour;
 import com.google.mlkit.vision.face.FaceDetection;
 import com.google.mlkit.vision.face.FaceDetectorOptions;
 import com.google.mlkit.vision.face.FaceLandmark;
+import com.google_mlkit_commons.ImageTransform;
 import com.google_mlkit_commons.InputImageConverter;
+import com.google_mlkit_commons.ResultExecutor;
+import com.google_mlkit_commons.VisionAnalyzer;
+import com.google_mlkit_commons.VisionAnalyzers;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 
-class FaceDetector implements MethodChannel.MethodCallHandler {
+class FaceDetector implements MethodChannel.MethodCallHandler, VisionAnalyzer {
     private static final String START = "vision#startFaceDetector";
     private static final String CLOSE = "vision#closeFaceDetector";
+    private static final String GET_CADENCE_STATS = "vision#getFaceCadenceStats";
+
+    //Same order as FaceLandmarkType and FaceContourType in Dart.
+    private static final String[] LANDMARK_NAMES = {
+            "bottomMouth", "rightMouth", "leftMouth", "rightEye", "leftEye",
+            "rightEar", "leftEar", "rightCheek", "leftCheek", "noseBase"};
+    private static final int[] LANDMARK_TYPES = {
+            FaceLandmark.MOUTH_BOTTOM, FaceLandmark.MOUTH_RIGHT, FaceLandmark.MOUTH_LEFT, FaceLandmark.RIGHT_EYE, FaceLandmark.LEFT_EYE,
+            FaceLandmark.RIGHT_EAR, FaceLandmark.LEFT_EAR, FaceLandmark.RIGHT_CHEEK, FaceLandmark.LEFT_CHEEK, FaceLandmark.NOSE_BASE};
+    private static final String[] CONTOUR_NAMES = {
+            "face", "leftEyebrowTop", "leftEyebrowBottom", "rightEyebrowTop", "rightEyebrowBottom",
+            "leftEye", "rightEye", "upperLipTop", "upperLipBottom", "lowerLipTop",
+            "lowerLipBottom", "noseBridge", "noseBottom", "leftCheek", "rightCheek"};
+    private static final int[] CONTOUR_TYPES = {
+            FaceContour.FACE, FaceContour.LEFT_EYEBROW_TOP, FaceContour.LEFT_EYEBROW_BOTTOM, FaceContour.RIGHT_EYEBROW_TOP, FaceContour.RIGHT_EYEBROW_BOTTOM,
+            FaceContour.LEFT_EYE, FaceContour.RIGHT_EYE, FaceContour.UPPER_LIP_TOP, FaceContour.UPPER_LIP_BOTTOM, FaceContour.LOWER_LIP_TOP,
+            FaceContour.LOWER_LIP_BOTTOM, FaceContour.NOSE_BRIDGE, FaceContour.NOSE_BOTTOM, FaceContour.LEFT_CHEEK, FaceContour.RIGHT_CHEEK};
+    //Number of points ML Kit reports per contour, the index table of packed contours. Must match the Dart side.
+    private static final int[] CONTOUR_POINT_COUNTS = {36, 5, 5, 5, 5, 16, 16, 11, 9, 9, 9, 2, 3, 1, 1};
+    private static final int CONTOUR_TOTAL_POINTS = 133;
 
     private final Context context;
-    private final Map<String, com.google.mlkit.vision.face.FaceDetector> instances = new HashMap<>();
+    private final Map<String, com.google.mlkit.vision.face.FaceDetector> instances = new ConcurrentHashMap<>();
+    private final Map<String, FaceCadence> cadences = new ConcurrentHashMap<>();
 
     public FaceDetector(Context context) {
         this.context = context;
@@ -38,47 +66,69 @@ class FaceDetector implements MethodChannel.MethodCallHandler {
         String method = call.method;
         switch (method) {
             case START:
-                handleDetection(call, result);
+                VisionAnalyzers.process(call, context, this, result);
                 break;
             case CLOSE:
                 closeDetector(call);
                 result.success(null);
                 break;
+            case GET_CADENCE_STATS:
+                FaceCadence cadence = cadences.get((String) call.argument("id"));
+                result.success(cadence != null ? cadence.getStats() : null);
+                break;
             default:
                 result.notImplemented();
                 break;
         }
     }
 
-    private void handleDetection(MethodCall call, final MethodChannel.Result result) {
-        Map<String, Object> imageData = (Map<String, Object>) call.argument("imageData");
-        InputImage inputImage = InputImageConverter.getInputImageFromData(imageData, context, result);
-        if (inputImage == null)
-            return;
+    @Override
+    public Task<?> analyze(@NonNull MethodCall call, @NonNull InputImage inputImage, @NonNull final MethodChannel.Result result) {
+        ImageTransform transform = InputImageConverter.getImageTransform(inputImage);
 
         String id = call.argument("id");
+        Map<String, Object> options = call.argument("options");
         com.google.mlkit.vision.face.FaceDetector detector = instances.get(id);
         if (detector == null) {
-            Map<String, Object> options = call.argument("options");
             if (options == null) {
                 result.error("FaceDetectorError", "Invalid options", null);
-                return;
+                return null;
             }
 
             FaceDetectorOptions detectorOptions = parseOptions(options);
             detector = FaceDetection.getClient(detectorOptions);
             instances.put(id, detector);
+            Object interval = options.get("detectionInterval");
+            if (interval instanceof Integer && (Integer) interval > 1) {
+                cadences.put(id, new FaceCadence((Integer) interval));
+            }
+        }
+
+        //Between full detections the faces of a stream are moved along with the image instead.
+        FaceCadence cadence = cadences.get(id);
+        if (cadence != null) {
+            List<Map<String, Object>> predicted = cadence.predict(inputImage);
+            if (predicted != null) {
+                result.success(predicted);
+                return null;
+            }
         }
+        long detectionStart = System.nanoTime();
+
+        //Only the features the detector was created with are serialized, the others would be null for every face.
+        boolean landmarks = options == null || Boolean.TRUE.equals(options.get("enableLandmarks"));
+        boolean contours = options == null || Boolean.TRUE.equals(options.get("enableContours"));
+        boolean packContours = options != null && Boolean.TRUE.equals(options.get("packContours"));
 
-        detector.process(inputImage)
-                .addOnSuccessListener(
+        return detector.process(inputImage)
+                .addOnSuccessListener(ResultExecutor.get(),
                         visionFaces -> {
                             List<Map<String, Object>> faces = new ArrayList<>(visionFaces.size());
                             for (Face face : visionFaces) {
                                 Map<String, Object> faceData = new HashMap<>();
 
                                 Map<String, Integer> frame = new HashMap<>();
-                                Rect rect = face.getBoundingBox();
+                                Rect rect = transform.mapRect(face.getBoundingBox());
                                 frame.put("left", rect.left);
                                 frame.put("top", rect.top);
                                 frame.put("right", rect.right);
@@ -105,16 +155,31 @@ class FaceDetector implements MethodChannel.MethodCallHandler {
                                     faceData.put("trackingId", face.getTrackingId());
                                 }
 
-                                faceData.put("landmarks", getLandmarkData(face));
+                                if (landmarks) {
+                                    faceData.put("landmarks", getLandmarkData(face, transform));
+                                }
 
-                                faceData.put("contours", getContourData(face));
+                                if (contours && packContours) {
+                                    float[] contourPoints = getPackedContourData(face, transform);
+                                    if (contourPoints != null) {
+                                        faceData.put("contourPoints", contourPoints);
+                                    }
+                                } else if (contours) {
+                                    faceData.put("contours", getContourData(face, transform));
+                                }
 
+                                if (cadence != null) {
+                                    faceData.put("predicted", false);
+                                }
                                 faces.add(faceData);
                             }
 
+                            if (cadence != null) {
+                                cadence.update(inputImage, transform, visionFaces, faces, detectionStart);
+                            }
                             result.success(faces);
                         })
-                .addOnFailureListener(
+                .addOnFailureListener(ResultExecutor.get(),
                         e -> result.error("FaceDetectorError", e.toString(), null));
     }
 
@@ -157,67 +222,67 @@ class FaceDetector implements MethodChannel.MethodCallHandler {
         return builder.build();
     }
 
-    private Map<String, double[]> getLandmarkData(Face face) {
+    //Landmarks that were not detected are left out.
+    private Map<String, double[]> getLandmarkData(Face face, ImageTransform transform) {
         Map<String, double[]> landmarks = new HashMap<>();
-
-        landmarks.put("bottomMouth", landmarkPosition(face, FaceLandmark.MOUTH_BOTTOM));
-        landmarks.put("rightMouth", landmarkPosition(face, FaceLandmark.MOUTH_RIGHT));
-        landmarks.put("leftMouth", landmarkPosition(face, FaceLandmark.MOUTH_LEFT));
-        landmarks.put("rightEye", landmarkPosition(face, FaceLandmark.RIGHT_EYE));
-        landmarks.put("leftEye", landmarkPosition(face, FaceLandmark.LEFT_EYE));
-        landmarks.put("rightEar", landmarkPosition(face, FaceLandmark.RIGHT_EAR));
-        landmarks.put("leftEar", landmarkPosition(face, FaceLandmark.LEFT_EAR));
-        landmarks.put("rightCheek", landmarkPosition(face, FaceLandmark.RIGHT_CHEEK));
-        landmarks.put("leftCheek", landmarkPosition(face, FaceLandmark.LEFT_CHEEK));
-        landmarks.put("noseBase", landmarkPosition(face, FaceLandmark.NOSE_BASE));
-
+        for (int i = 0; i < LANDMARK_NAMES.length; i++) {
+            double[] position = landmarkPosition(face, transform, LANDMARK_TYPES[i]);
+            if (position != null) {
+                landmarks.put(LANDMARK_NAMES[i], position);
+            }
+        }
         return landmarks;
     }
 
-    private Map<String, List<double[]>> getContourData(Face face) {
+    //Contours that were not detected are left out.
+    private Map<String, List<double[]>> getContourData(Face face, ImageTransform transform) {
         Map<String, List<double[]>> contours = new HashMap<>();
-
-        contours.put("face", contourPosition(face, FaceContour.FACE));
-        contours.put(
-                "leftEyebrowTop", contourPosition(face, FaceContour.LEFT_EYEBROW_TOP));
-        contours.put(
-                "leftEyebrowBottom", contourPosition(face, FaceContour.LEFT_EYEBROW_BOTTOM));
-        contours.put(
-                "rightEyebrowTop", contourPosition(face, FaceContour.RIGHT_EYEBROW_TOP));
-        contours.put(
-                "rightEyebrowBottom",
-                contourPosition(face, FaceContour.RIGHT_EYEBROW_BOTTOM));
-        contours.put("leftEye", contourPosition(face, FaceContour.LEFT_EYE));
-        contours.put("rightEye", contourPosition(face, FaceContour.RIGHT_EYE));
-        contours.put("upperLipTop", contourPosition(face, FaceContour.UPPER_LIP_TOP));
-        contours.put(
-                "upperLipBottom", contourPosition(face, FaceContour.UPPER_LIP_BOTTOM));
-        contours.put("lowerLipTop", contourPosition(face, FaceContour.LOWER_LIP_TOP));
-        contours.put(
-                "lowerLipBottom", contourPosition(face, FaceContour.LOWER_LIP_BOTTOM));
-        contours.put("noseBridge", contourPosition(face, FaceContour.NOSE_BRIDGE));
-        contours.put("noseBottom", contourPosition(face, FaceContour.NOSE_BOTTOM));
-        contours.put("leftCheek", contourPosition(face, FaceContour.LEFT_CHEEK));
-        contours.put("rightCheek", contourPosition(face, FaceContour.RIGHT_CHEEK));
-
+        for (int i = 0; i < CONTOUR_NAMES.length; i++) {
+            List<double[]> points = contourPosition(face, transform, CONTOUR_TYPES[i]);
+            if (points != null) {
+                contours.put(CONTOUR_NAMES[i], points);
+            }
+        }
         return contours;
     }
 
-    private double[] landmarkPosition(Face face, int landmarkInt) {
+    //Writes the x, y pairs of all contours into one array, laid out by CONTOUR_POINT_COUNTS.
+    //Points of a contour that was not detected are NaN. Returns null if the face has no contours at all.
+    private float[] getPackedContourData(Face face, ImageTransform transform) {
+        float[] packed = new float[CONTOUR_TOTAL_POINTS * 2];
+        boolean found = false;
+        int offset = 0;
+        for (int i = 0; i < CONTOUR_TYPES.length; i++) {
+            FaceContour contour = face.getContour(CONTOUR_TYPES[i]);
+            List<PointF> points = contour != null ? contour.getPoints() : null;
+            int count = points != null ? Math.min(points.size(), CONTOUR_POINT_COUNTS[i]) : 0;
+            for (int j = 0; j < count; j++) {
+                PointF point = points.get(j);
+                packed[offset + j * 2] = transform.mapX(point.x);
+                packed[offset + j * 2 + 1] = transform.mapY(point.y);
+            }
+            Arrays.fill(packed, offset + count * 2, offset + CONTOUR_POINT_COUNTS[i] * 2, Float.NaN);
+            found |= count > 0;
+            offset += CONTOUR_POINT_COUNTS[i] * 2;
+        }
+        return found ? packed : null;
+    }
+
+    private double[] landmarkPosition(Face face, ImageTransform transform, int landmarkInt) {
         FaceLandmark landmark = face.getLandmark(landmarkInt);
         if (landmark != null) {
-            return new double[] { landmark.getPosition().x, landmark.getPosition().y };
+            return new double[] { transform.mapX(landmark.getPosition().x), transform.mapY(landmark.getPosition().y) };
         }
         return null;
     }
 
-    private List<double[]> contourPosition(Face face, int contourInt) {
+    private List<double[]> contourPosition(Face face, ImageTransform transform, int contourInt) {
         FaceContour contour = face.getContour(contourInt);
         if (contour != null) {
             List<PointF> contourPoints = contour.getPoints();
             List<double[]> result = new ArrayList<>();
             for (int i = 0; i < contourPoints.size(); i++) {
-                result.add(new double[] { contourPoints.get(i).x, contourPoints.get(i).y });
+                result.add(new double[] { transform.mapX(contourPoints.get(i).x), transform.mapY(contourPoints.get(i).y) });
             }
             return result;
         }
@@ -226,10 +291,12 @@ class FaceDetector implements MethodChannel.MethodCallHandler {
 
     private void closeDetector(MethodCall call) {
         String id = call.argument("id");
+        VisionAnalyzers.close(this, id);
         com.google.mlkit.vision.face.FaceDetector detector = instances.get(id);
         if (detector == null)
             return;
         detector.close();
         instances.remove(id);
+        cadences.remove(id);
     }
 }
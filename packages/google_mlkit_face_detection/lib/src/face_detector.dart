@@ -15,26 +15,59 @@ class FaceDetector {
   /// Instance id.
   final id = DateTime.now().microsecondsSinceEpoch.toString();
 
+  /// Whether results are sent in the packed binary format of [PackedResultCodec].
+  /// Only used on Android.
+  final bool packedResults;
+
   /// Constructor to create an instance of [FaceDetector].
-  FaceDetector({required this.options});
+  FaceDetector({required this.options, this.packedResults = false});
 
   /// Processes the given image for face detection.
   Future<List<Face>> processImage(InputImage inputImage) async {
-    final result = await _channel.invokeListMethod<dynamic>(
+    final result = await _channel.invokeMethod(
         'vision#startFaceDetector', <String, dynamic>{
-      'options': options.toJson(),
-      'id': id,
+      ..._arguments(),
       'imageData': inputImage.toJson(),
     });
+    return _parseResult(result);
+  }
 
+  /// Returns this detector as a [VisionAnalysis] for [VisionAnalyzer.analyze],
+  /// optionally running on a copy of the image no larger than [maxDimension].
+  VisionAnalysis<List<Face>> analysis({int? maxDimension}) => VisionAnalysis(
+      type: 'face',
+      arguments: _arguments(),
+      parse: _parseResult,
+      maxDimension: maxDimension);
+
+  Map<String, dynamic> _arguments() => <String, dynamic>{
+        'options': options.toJson(),
+        'id': id,
+        'packedResults': packedResults,
+      };
+
+  static List<Face> _parseResult(dynamic result) {
     final List<Face> faces = <Face>[];
-    for (final dynamic json in result!) {
+    for (final dynamic json in PackedResultCodec.unpack(result)) {
       faces.add(Face.fromJson(json));
     }
 
     return faces;
   }
 
+  /// Returns how the frames of this detector were split between detection and
+  /// prediction when [FaceDetectorOptions.detectionInterval] is above 1.
+  ///
+  /// The map holds `detectedFrames`, `predictedFrames`, the mean time in
+  /// milliseconds of a detection (`meanDetectionMillis`) and of a prediction
+  /// (`meanPredictionMillis`), and how far in pixels predicted faces were from
+  /// where the next detection found them (`meanPositionError`,
+  /// `maxPositionError`). Null if the detector does not predict or has not run
+  /// yet. Only available on Android.
+  Future<Map<String, dynamic>?> getCadenceStats() =>
+      _channel.invokeMapMethod<String, dynamic>(
+          'vision#getFaceCadenceStats', {'id': id});
+
   /// Closes the detector and releases its resources.
   Future<void> close() =>
       _channel.invokeMethod<void>('vision#closeFaceDetector', {'id': id});
@@ -55,8 +88,11 @@ class FaceDetectorOptions {
     this.enableTracking = false,
     this.minFaceSize = 0.1,
     this.performanceMode = FaceDetectorMode.fast,
+    this.packContours = false,
+    this.detectionInterval = 1,
   })  : assert(minFaceSize >= 0.0),
-        assert(minFaceSize <= 1.0);
+        assert(minFaceSize <= 1.0),
+        assert(detectionInterval >= 1);
 
   /// Whether to run additional classifiers for characterizing attributes.
   ///
@@ -85,6 +121,22 @@ class FaceDetectorOptions {
   /// Option for controlling additional accuracy / speed trade-offs.
   final FaceDetectorMode performanceMode;
 
+  /// Whether the contour points of a face are sent as one float array instead
+  /// of a list per contour, which is much cheaper when tracking several faces.
+  /// The [Face.contours] are the same either way. Only used on Android.
+  final bool packContours;
+
+  /// Runs the detector on every [detectionInterval]th frame of a stream only.
+  ///
+  /// On the frames in between, the faces of the last detection are moved along
+  /// with the image, which is much cheaper than detecting them. Such faces have
+  /// [Face.predicted] set. A frame is detected anyway when a face cannot be
+  /// followed, e.g. because it turned or left the image. Works best together
+  /// with [enableTracking] on frames of [InputImage.withSequence]. Only used on
+  /// Android for images in the nv21 or yv12 format, the default of 1 detects
+  /// every frame.
+  final int detectionInterval;
+
   /// Returns a json representation of an instance of [FaceDetectorOptions].
   Map<String, dynamic> toJson() => {
         'enableClassification': enableClassification,
@@ -93,6 +145,8 @@ class FaceDetectorOptions {
         'enableTracking': enableTracking,
         'minFaceSize': minFaceSize,
         'mode': performanceMode.name,
+        'packContours': packContours,
+        'detectionInterval': detectionInterval,
       };
 }
 
@@ -166,6 +220,10 @@ class Face {
   /// Null if contour was not detected.
   final Map<FaceContourType, FaceContour?> contours;
 
+  /// Whether this face was moved along from the last detection instead of
+  /// being detected, see [FaceDetectorOptions.detectionInterval].
+  final bool predicted;
+
   Face({
     required this.boundingBox,
     required this.landmarks,
@@ -177,6 +235,7 @@ class Face {
     this.rightEyeOpenProbability,
     this.smilingProbability,
     this.trackingId,
+    this.predicted = false,
   });
 
   /// Returns an instance of [Face] from a given [json].
@@ -189,10 +248,12 @@ class Face {
         rightEyeOpenProbability: json['rightEyeOpenProbability'],
         smilingProbability: json['smilingProbability'],
         trackingId: json['trackingId'],
+        predicted: json['predicted'] ?? false,
         landmarks: Map<FaceLandmarkType, FaceLandmark?>.fromIterables(
             FaceLandmarkType.values,
             FaceLandmarkType.values.map((FaceLandmarkType type) {
-          final List<dynamic>? pos = json['landmarks'][type.name];
+          final List<dynamic>? pos =
+              (json['landmarks'] ?? <String, dynamic>{})[type.name];
           return (pos == null)
               ? null
               : FaceLandmark(
@@ -200,23 +261,51 @@ class Face {
                   position: Point<int>(pos[0].toInt(), pos[1].toInt()),
                 );
         })),
-        contours: Map<FaceContourType, FaceContour?>.fromIterables(
-            FaceContourType.values,
-            FaceContourType.values.map((FaceContourType type) {
-          /// added empty map to pass the tests
-          final List<dynamic>? arr =
-              (json['contours'] ?? <String, dynamic>{})[type.name];
-          return (arr == null)
-              ? null
-              : FaceContour(
-                  type: type,
-                  points: arr
-                      .map<Point<int>>((dynamic pos) =>
-                          Point<int>(pos[0].toInt(), pos[1].toInt()))
-                      .toList(),
-                );
-        })),
+        contours: json['contourPoints'] != null
+            ? _unpackContours(json['contourPoints'])
+            : Map<FaceContourType, FaceContour?>.fromIterables(
+                FaceContourType.values,
+                FaceContourType.values.map((FaceContourType type) {
+              /// added empty map to pass the tests
+              final List<dynamic>? arr =
+                  (json['contours'] ?? <String, dynamic>{})[type.name];
+              return (arr == null)
+                  ? null
+                  : FaceContour(
+                      type: type,
+                      points: arr
+                          .map<Point<int>>((dynamic pos) =>
+                              Point<int>(pos[0].toInt(), pos[1].toInt()))
+                          .toList(),
+                    );
+            })),
       );
+
+  /// Number of points per [FaceContourType] in packed contours, in the order of
+  /// [FaceContourType.values].
+  static const List<int> _contourPointCounts = [
+    36, 5, 5, 5, 5, 16, 16, 11, 9, 9, 9, 2, 3, 1, 1
+  ];
+
+  static Map<FaceContourType, FaceContour?> _unpackContours(
+      List<dynamic> packed) {
+    final contours = <FaceContourType, FaceContour?>{};
+    int offset = 0;
+    for (final type in FaceContourType.values) {
+      final count = _contourPointCounts[type.index];
+      final points = <Point<int>>[];
+      for (int i = 0; i < count; i++) {
+        final double x = packed[offset + i * 2];
+        final double y = packed[offset + i * 2 + 1];
+        if (x.isNaN || y.isNaN) break;
+        points.add(Point<int>(x.toInt(), y.toInt()));
+      }
+      contours[type] =
+          points.isEmpty ? null : FaceContour(type: type, points: points);
+      offset += count * 2;
+    }
+    return contours;
+  }
 }
 
 /// A landmark on a human face detected in an image.
@@ -4,29 +4,54 @@ import android.content.Context;
 import android.graphics.Rect;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
+import com.google.android.gms.tasks.Task;
 import com.google.mlkit.vision.common.InputImage;
 import com.google.mlkit.vision.common.Triangle;
 import com.google.mlkit.vision.facemesh.FaceMesh;
 import com.google.mlkit.vision.facemesh.FaceMeshDetection;
 import com.google.mlkit.vision.facemesh.FaceMeshDetectorOptions;
 import com.google.mlkit.vision.facemesh.FaceMeshPoint;
+import com.google_mlkit_commons.ImageTransform;
 import com.google_mlkit_commons.InputImageConverter;
+import com.google_mlkit_commons.ResultExecutor;
+import com.google_mlkit_commons.VisionAnalyzer;
+import com.google_mlkit_commons.VisionAnalyzers;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 
-class FaceMeshDetector implements MethodChannel.MethodCallHandler {
+class FaceMeshDetector implements MethodChannel.MethodCallHandler, VisionAnalyzer {
     private static final String START = "vision#startFaceMeshDetector";
     private static final String CLOSE = "vision#closeFaceMeshDetector";
+    private static final int[] CONTOUR_TYPES = {
+            FaceMesh.FACE_OVAL,
+            FaceMesh.LEFT_EYEBROW_TOP,
+            FaceMesh.LEFT_EYEBROW_BOTTOM,
+            FaceMesh.RIGHT_EYEBROW_TOP,
+            FaceMesh.RIGHT_EYEBROW_BOTTOM,
+            FaceMesh.LEFT_EYE,
+            FaceMesh.RIGHT_EYE,
+            FaceMesh.UPPER_LIP_TOP,
+            FaceMesh.UPPER_LIP_BOTTOM,
+            FaceMesh.LOWER_LIP_TOP,
+            FaceMesh.LOWER_LIP_BOTTOM,
+            FaceMesh.NOSE_BRIDGE
+    };
+
+    //The triangles and contours of a face mesh are the same for every mesh, only the point positions change.
+    private static volatile Map<String, Object> topology;
 
     private final Context context;
-    private final Map<String, com.google.mlkit.vision.facemesh.FaceMeshDetector> instances = new HashMap<>();
+    private final Map<String, com.google.mlkit.vision.facemesh.FaceMeshDetector> instances = new ConcurrentHashMap<>();
 
     public FaceMeshDetector(Context context) {
         this.context = context;
@@ -37,7 +62,7 @@ class FaceMeshDetector implements MethodChannel.MethodCallHandler {
         String method = call.method;
         switch (method) {
             case START:
-                handleDetection(call, result);
+                VisionAnalyzers.process(call, context, this, result);
                 break;
             case CLOSE:
                 closeDetector(call);
@@ -49,10 +74,9 @@ class FaceMeshDetector implements MethodChannel.MethodCallHandler {
         }
     }
 
-    private void handleDetection(MethodCall call, final MethodChannel.Result result) {
-        Map<String, Object> imageData = (Map<String, Object>) call.argument("imageData");
-        InputImage inputImage = InputImageConverter.getInputImageFromData(imageData, context, result);
-        if (inputImage == null) return;
+    @Override
+    public Task<?> analyze(@NonNull MethodCall call, @NonNull InputImage inputImage, @NonNull final MethodChannel.Result result) {
+        ImageTransform transform = InputImageConverter.getImageTransform(inputImage);
 
         String id = call.argument("id");
         com.google.mlkit.vision.facemesh.FaceMeshDetector detector = instances.get(id);
@@ -74,83 +98,195 @@ class FaceMeshDetector implements MethodChannel.MethodCallHandler {
 
                 default:
                     result.error("FaceMeshDetectorError", "Invalid options", null);
-                    return;
+                    return null;
             }
 
             instances.put(id, detector);
         }
 
-        detector.process(inputImage)
-                .addOnSuccessListener(
+        boolean packedVertices = Boolean.TRUE.equals(call.argument("packedVertices"));
+        boolean withTopology = Boolean.TRUE.equals(call.argument("withTopology"));
+        List<Integer> contourTypes = call.argument("contourTypes");
+        List<Integer> vertexIndexes = call.argument("vertexIndexes");
+        boolean subset = contourTypes != null || vertexIndexes != null;
+
+        return detector.process(inputImage)
+                .addOnSuccessListener(ResultExecutor.get(),
                         visionMeshes -> {
                             List<Map<String, Object>> faceMeshes = new ArrayList<>(visionMeshes.size());
                             for (FaceMesh mesh : visionMeshes) {
                                 Map<String, Object> meshData = new HashMap<>();
 
                                 Map<String, Integer> frame = new HashMap<>();
-                                Rect rect = mesh.getBoundingBox();
+                                Rect rect = transform.mapRect(mesh.getBoundingBox());
                                 frame.put("left", rect.left);
                                 frame.put("top", rect.top);
                                 frame.put("right", rect.right);
                                 frame.put("bottom", rect.bottom);
                                 meshData.put("rect", frame);
 
-                                meshData.put("points", pointsToList(mesh.getAllPoints()));
+                                boolean[] selected = subset ? selectPoints(mesh, contourTypes, vertexIndexes) : null;
+                                if (packedVertices) {
+                                    if (selected != null) {
+                                        int[] indexes = selectedIndexes(selected);
+                                        meshData.put("vertices", getVertices(mesh, transform, indexes));
+                                        meshData.put("vertexIndexes", indexes);
+                                    } else {
+                                        meshData.put("vertices", getVertices(mesh, transform, null));
+                                    }
+                                    if (withTopology && !mesh.getAllTriangles().isEmpty()) {
+                                        meshData.put("topology", getTopology(mesh));
+                                    }
+                                } else {
+                                    List<FaceMeshPoint> points = mesh.getAllPoints();
+                                    if (selected != null) {
+                                        points = new ArrayList<>();
+                                        for (FaceMeshPoint point : mesh.getAllPoints()) {
+                                            if (selected[point.getIndex()]) points.add(point);
+                                        }
+                                    }
+                                    meshData.put("points", pointsToList(points, transform));
 
-                                List<List<Map<String, Object>>> triangles = new ArrayList<>();
-                                for (Triangle<FaceMeshPoint> triangle : mesh.getAllTriangles()) {
-                                    triangles.add(pointsToList(triangle.getAllPoints()));
-                                }
-                                meshData.put("triangles", triangles);
-
-                                int[] types = {
-                                        FaceMesh.FACE_OVAL,
-                                        FaceMesh.LEFT_EYEBROW_TOP,
-                                        FaceMesh.LEFT_EYEBROW_BOTTOM,
-                                        FaceMesh.RIGHT_EYEBROW_TOP,
-                                        FaceMesh.RIGHT_EYEBROW_BOTTOM,
-                                        FaceMesh.LEFT_EYE,
-                                        FaceMesh.RIGHT_EYE,
-                                        FaceMesh.UPPER_LIP_TOP,
-                                        FaceMesh.UPPER_LIP_BOTTOM,
-                                        FaceMesh.LOWER_LIP_TOP,
-                                        FaceMesh.LOWER_LIP_BOTTOM,
-                                        FaceMesh.NOSE_BRIDGE
-                                };
-                                Map<Integer, List<Map<String, Object>>> contours = new HashMap<>();
-                                for (int type : types) {
-                                    contours.put(type - 1, pointsToList(mesh.getPoints(type)));
+                                    List<List<Map<String, Object>>> triangles = new ArrayList<>();
+                                    for (Triangle<FaceMeshPoint> triangle : mesh.getAllTriangles()) {
+                                        if (isSelected(selected, triangle.getAllPoints())) {
+                                            triangles.add(pointsToList(triangle.getAllPoints(), transform));
+                                        }
+                                    }
+                                    meshData.put("triangles", triangles);
+
+                                    Map<Integer, List<Map<String, Object>>> contours = new HashMap<>();
+                                    for (int type : CONTOUR_TYPES) {
+                                        List<FaceMeshPoint> contourPoints = mesh.getPoints(type);
+                                        if (isSelected(selected, contourPoints)) {
+                                            contours.put(type - 1, pointsToList(contourPoints, transform));
+                                        }
+                                    }
+                                    meshData.put("contours", contours);
                                 }
-                                meshData.put("contours", contours);
 
                                 faceMeshes.add(meshData);
                             }
 
                             result.success(faceMeshes);
                         })
-                .addOnFailureListener(
+                .addOnFailureListener(ResultExecutor.get(),
                         e -> result.error("FaceMeshDetectorError", e.toString(), null));
     }
 
-    private List<Map<String, Object>> pointsToList(List<FaceMeshPoint> points) {
+    //Writes the x, y, z of every point at 3 * its index, or of the points with [indexes] in their order.
+    private float[] getVertices(FaceMesh mesh, ImageTransform transform, @Nullable int[] indexes) {
+        List<FaceMeshPoint> points = mesh.getAllPoints();
+        int[] slots = new int[points.size()];
+        if (indexes != null) {
+            Arrays.fill(slots, -1);
+            for (int i = 0; i < indexes.length; i++) slots[indexes[i]] = i;
+        } else {
+            for (int i = 0; i < slots.length; i++) slots[i] = i;
+        }
+        float[] vertices = new float[(indexes != null ? indexes.length : points.size()) * 3];
+        for (FaceMeshPoint point : points) {
+            int slot = slots[point.getIndex()];
+            if (slot < 0) continue;
+            vertices[slot * 3] = transform.mapX(point.getPosition().getX());
+            vertices[slot * 3 + 1] = transform.mapY(point.getPosition().getY());
+            vertices[slot * 3 + 2] = transform.mapLength(point.getPosition().getZ());
+        }
+        return vertices;
+    }
+
+    //Marks the points of the requested contours and the requested point indexes. Unknown indexes are ignored.
+    private boolean[] selectPoints(FaceMesh mesh, @Nullable List<Integer> contourTypes, @Nullable List<Integer> vertexIndexes) {
+        boolean[] selected = new boolean[mesh.getAllPoints().size()];
+        if (contourTypes != null) {
+            for (int type : contourTypes) {
+                if (type < 0 || type >= CONTOUR_TYPES.length) continue;
+                for (FaceMeshPoint point : mesh.getPoints(CONTOUR_TYPES[type])) {
+                    selected[point.getIndex()] = true;
+                }
+            }
+        }
+        if (vertexIndexes != null) {
+            for (int index : vertexIndexes) {
+                if (index >= 0 && index < selected.length) selected[index] = true;
+            }
+        }
+        return selected;
+    }
+
+    private int[] selectedIndexes(boolean[] selected) {
+        int count = 0;
+        for (boolean s : selected) {
+            if (s) count++;
+        }
+        int[] indexes = new int[count];
+        for (int i = 0, j = 0; i < selected.length; i++) {
+            if (selected[i]) indexes[j++] = i;
+        }
+        return indexes;
+    }
+
+    //A triangle or contour is kept when all of its points are selected, or when there is no selection.
+    private boolean isSelected(@Nullable boolean[] selected, List<FaceMeshPoint> points) {
+        if (selected == null) return true;
+        if (points.isEmpty()) return false;
+        for (FaceMeshPoint point : points) {
+            if (!selected[point.getIndex()]) return false;
+        }
+        return true;
+    }
+
+    //The point indexes of all triangles, three per triangle, and of each contour.
+    private static Map<String, Object> getTopology(FaceMesh mesh) {
+        Map<String, Object> cached = topology;
+        if (cached != null) return cached;
+
+        List<Triangle<FaceMeshPoint>> triangles = mesh.getAllTriangles();
+        int[] triangleIndexes = new int[triangles.size() * 3];
+        for (int i = 0; i < triangles.size(); i++) {
+            List<FaceMeshPoint> points = triangles.get(i).getAllPoints();
+            for (int j = 0; j < 3; j++) {
+                triangleIndexes[i * 3 + j] = points.get(j).getIndex();
+            }
+        }
+
+        Map<Integer, int[]> contours = new HashMap<>();
+        for (int type : CONTOUR_TYPES) {
+            List<FaceMeshPoint> points = mesh.getPoints(type);
+            int[] indexes = new int[points.size()];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = points.get(i).getIndex();
+            }
+            contours.put(type - 1, indexes);
+        }
+
+        cached = new HashMap<>();
+        cached.put("triangles", triangleIndexes);
+        cached.put("contours", contours);
+        topology = cached;
+        return cached;
+    }
+
+    private List<Map<String, Object>> pointsToList(List<FaceMeshPoint> points, ImageTransform transform) {
         List<Map<String, Object>> list = new ArrayList<>();
         for (FaceMeshPoint point : points) {
-            list.add(pointToMap(point));
+            list.add(pointToMap(point, transform));
         }
         return list;
     }
 
-    private Map<String, Object> pointToMap(FaceMeshPoint point) {
+    private Map<String, Object> pointToMap(FaceMeshPoint point, ImageTransform transform) {
         Map<String, Object> pointMap = new HashMap<>();
         pointMap.put("index", point.getIndex());
-        pointMap.put("x", point.getPosition().getX());
-        pointMap.put("y", point.getPosition().getY());
-        pointMap.put("z", point.getPosition().getZ());
+        pointMap.put("x", transform.mapX(point.getPosition().getX()));
+        pointMap.put("y", transform.mapY(point.getPosition().getY()));
+        pointMap.put("z", transform.mapLength(point.getPosition().getZ()));
         return pointMap;
     }
 
     private void closeDetector(MethodCall call) {
         String id = call.argument("id");
+        VisionAnalyzers.close(this, id);
         com.google.mlkit.vision.facemesh.FaceMeshDetector detector = instances.get(id);
         if (detector == null) return;
         detector.close();
@@ -1,3 +1,5 @@
+import 'dart:typed_data';
+
 import 'package:flutter/material.dart';
 
 import 'package:flutter/services.dart' as services;
@@ -14,21 +16,81 @@ class FaceMeshDetector {
   /// Options for [FaceMeshDetector].
   final FaceMeshDetectorOptions option;
 
+  /// Whether results are sent in the packed binary format of [PackedResultCodec].
+  /// Only used on Android.
+  final bool packedResults;
+
+  /// Whether each mesh is sent as one float array of vertices instead of maps
+  /// of points, triangles and contours.
+  ///
+  /// The triangles and contours of a face mesh always connect the same points,
+  /// so they are sent once per detector and rebuilt from the vertices of each
+  /// frame. The resulting [FaceMesh] is the same either way. Only used on
+  /// Android.
+  final bool packedVertices;
+
+  /// Only the points of these contours are sent, if set.
+  ///
+  /// Together with [vertexIndexes] this selects a subset of the mesh, e.g. the
+  /// lips and eyes. The points of a [FaceMesh] are then only the selected ones,
+  /// and its triangles and contours only those whose points are all selected.
+  /// Only used on Android.
+  final List<FaceMeshContourType>? contourTypes;
+
+  /// Only the points with these indexes, from 0 to 467, are sent, if set.
+  /// See [contourTypes]. Only used on Android.
+  final List<int>? vertexIndexes;
+
+  _FaceMeshTopology? _topology;
+
   /// Constructor to create an instance of [FaceMeshDetector].
-  FaceMeshDetector({required this.option});
+  FaceMeshDetector(
+      {required this.option,
+      this.packedResults = false,
+      this.packedVertices = false,
+      this.contourTypes,
+      this.vertexIndexes});
 
   /// Processes the given image for face mesh detection.
   Future<List<FaceMesh>> processImage(InputImage inputImage) async {
-    final result = await _channel.invokeListMethod<dynamic>(
+    final result = await _channel.invokeMethod(
         'vision#startFaceMeshDetector', <String, dynamic>{
-      'id': id,
-      'option': option.index,
+      ..._arguments(),
       'imageData': inputImage.toJson(),
     });
+    return _parseResult(result);
+  }
+
+  /// Returns this detector as a [VisionAnalysis] for [VisionAnalyzer.analyze],
+  /// optionally running on a copy of the image no larger than [maxDimension].
+  VisionAnalysis<List<FaceMesh>> analysis({int? maxDimension}) =>
+      VisionAnalysis(
+          type: 'face_mesh',
+          arguments: _arguments(),
+          parse: _parseResult,
+          maxDimension: maxDimension);
 
+  Map<String, dynamic> _arguments() => <String, dynamic>{
+        'id': id,
+        'option': option.index,
+        'packedResults': packedResults,
+        'packedVertices': packedVertices,
+        'withTopology': packedVertices && _topology == null,
+        'contourTypes': contourTypes?.map((type) => type.index).toList(),
+        'vertexIndexes': vertexIndexes,
+      };
+
+  List<FaceMesh> _parseResult(dynamic result) {
     final List<FaceMesh> meshes = <FaceMesh>[];
-    for (final dynamic json in result!) {
-      meshes.add(FaceMesh.fromJson(json));
+    for (final dynamic json in PackedResultCodec.unpack(result)) {
+      if (json['vertices'] == null) {
+        meshes.add(FaceMesh.fromJson(json));
+        continue;
+      }
+      if (json['topology'] != null) {
+        _topology ??= _FaceMeshTopology.fromJson(json['topology']);
+      }
+      meshes.add(FaceMesh._fromVertices(json, _topology));
     }
 
     return meshes;
@@ -78,7 +140,9 @@ class FaceMesh {
         contours: Map<FaceMeshContourType, List<FaceMeshPoint>>.fromIterables(
             FaceMeshContourType.values,
             FaceMeshContourType.values.map((FaceMeshContourType type) {
-          final List<dynamic>? arr = (json['contours'] ?? {})[type.index];
+          final Map<dynamic, dynamic> contours = json['contours'] ?? {};
+          final List<dynamic>? arr =
+              contours[type.index] ?? contours['${type.index}'];
           return (arr == null)
               ? []
               : arr
@@ -89,6 +153,73 @@ class FaceMesh {
                   .toList();
         })),
       );
+
+  /// Rebuilds the points, triangles and contours of a mesh from its packed
+  /// vertices. Without a [topology] only the points are available.
+  factory FaceMesh._fromVertices(
+      Map<dynamic, dynamic> json, _FaceMeshTopology? topology) {
+    final Float32List vertices = json['vertices'];
+    final List<int>? indexes = json['vertexIndexes'];
+    final List<FaceMeshPoint> points = List<FaceMeshPoint>.generate(
+        vertices.length ~/ 3,
+        (int i) => FaceMeshPoint(
+              index: indexes != null ? indexes[i] : i,
+              x: vertices[i * 3],
+              y: vertices[i * 3 + 1],
+              z: vertices[i * 3 + 2],
+            ));
+    final Map<int, FaceMeshPoint> byIndex = {
+      for (final FaceMeshPoint point in points) point.index: point
+    };
+    // Triangles and contours are kept when all of their points were sent.
+    List<FaceMeshPoint>? pointsOf(Iterable<int> indexes) {
+      final List<FaceMeshPoint> selected = [];
+      for (final int index in indexes) {
+        final FaceMeshPoint? point = byIndex[index];
+        if (point == null) return null;
+        selected.add(point);
+      }
+      return selected;
+    }
+
+    final List<int> triangles = topology?.triangles ?? const [];
+    final List<FaceMeshTriangle> meshTriangles = [];
+    for (int i = 0; i + 2 < triangles.length; i += 3) {
+      final List<FaceMeshPoint>? trianglePoints =
+          pointsOf(triangles.sublist(i, i + 3));
+      if (trianglePoints != null) {
+        meshTriangles.add(FaceMeshTriangle(points: trianglePoints));
+      }
+    }
+    return FaceMesh(
+      boundingBox: RectJson.fromJson(json['rect']),
+      points: points,
+      triangles: meshTriangles,
+      contours: Map<FaceMeshContourType, List<FaceMeshPoint>>.fromIterables(
+          FaceMeshContourType.values,
+          FaceMeshContourType.values.map((FaceMeshContourType type) =>
+              pointsOf(topology?.contours[type.index] ?? const <int>[]) ??
+              [])),
+    );
+  }
+}
+
+/// The point indexes of the triangles and contours of a face mesh.
+class _FaceMeshTopology {
+  /// Three point indexes per triangle.
+  final List<int> triangles;
+
+  /// The point indexes of each contour, by [FaceMeshContourType.index].
+  final Map<int, List<int>> contours;
+
+  _FaceMeshTopology(this.triangles, this.contours);
+
+  factory _FaceMeshTopology.fromJson(Map<dynamic, dynamic> json) =>
+      _FaceMeshTopology(
+          json['triangles'],
+          (json['contours'] as Map<dynamic, dynamic>).map(
+              (dynamic type, dynamic indexes) => MapEntry(
+                  type is int ? type : int.parse(type), indexes as List<int>)));
 }
 
 /// Represents a 3D point in face mesh, by index and PointF3D.
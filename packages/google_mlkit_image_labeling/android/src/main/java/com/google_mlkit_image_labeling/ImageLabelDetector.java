@@ -4,6 +4,7 @@ import android.content.Context;
 
 import androidx.annotation.NonNull;
 
+import com.google.android.gms.tasks.Task;
 import com.google.mlkit.common.model.CustomRemoteModel;
 import com.google.mlkit.common.model.LocalModel;
 import com.google.mlkit.linkfirebase.FirebaseModelSource;
@@ -14,23 +15,26 @@ import com.google.mlkit.vision.label.ImageLabeling;
 import com.google.mlkit.vision.label.custom.CustomImageLabelerOptions;
 import com.google.mlkit.vision.label.defaults.ImageLabelerOptions;
 import com.google_mlkit_commons.GenericModelManager;
-import com.google_mlkit_commons.InputImageConverter;
+import com.google_mlkit_commons.ResultExecutor;
+import com.google_mlkit_commons.VisionAnalyzer;
+import com.google_mlkit_commons.VisionAnalyzers;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 
-public class ImageLabelDetector implements MethodChannel.MethodCallHandler {
+public class ImageLabelDetector implements MethodChannel.MethodCallHandler, VisionAnalyzer {
     private static final String START = "vision#startImageLabelDetector";
     private static final String CLOSE = "vision#closeImageLabelDetector";
     private static final String MANAGE = "vision#manageFirebaseModels";
 
     private final Context context;
-    private final Map<String, ImageLabeler> instances = new HashMap<>();
+    private final Map<String, ImageLabeler> instances = new ConcurrentHashMap<>();
     private final GenericModelManager genericModelManager = new GenericModelManager();
 
     public ImageLabelDetector(Context context) {
@@ -42,7 +46,7 @@ public class ImageLabelDetector implements MethodChannel.MethodCallHandler {
         String method = call.method;
         switch (method) {
             case START:
-                handleDetection(call, result);
+                VisionAnalyzers.process(call, context, this, result);
                 break;
             case CLOSE:
                 closeDetector(call);
@@ -57,18 +61,15 @@ public class ImageLabelDetector implements MethodChannel.MethodCallHandler {
         }
     }
 
-    private void handleDetection(MethodCall call, final MethodChannel.Result result) {
-        Map<String, Object> imageData = call.argument("imageData");
-        InputImage inputImage = InputImageConverter.getInputImageFromData(imageData, context, result);
-        if (inputImage == null) return;
-
+    @Override
+    public Task<?> analyze(@NonNull MethodCall call, @NonNull InputImage inputImage, @NonNull final MethodChannel.Result result) {
         String id = call.argument("id");
         ImageLabeler imageLabeler = instances.get(id);
         if (imageLabeler == null) {
             Map<String, Object> options = call.argument("options");
             if (options == null) {
                 result.error("ImageLabelDetectorError", "Invalid options", null);
-                return;
+                return null;
             }
 
             String type = (String) options.get("type");
@@ -82,19 +83,19 @@ public class ImageLabelDetector implements MethodChannel.MethodCallHandler {
                 CustomImageLabelerOptions labelerOptions = getRemoteOptions(options);
                 if (labelerOptions == null) {
                     result.error("Error Model has not been downloaded yet", "Model has not been downloaded yet", "Model has not been downloaded yet");
-                    return;
+                    return null;
                 }
                 imageLabeler = ImageLabeling.getClient(labelerOptions);
             } else {
                 String error = "Invalid model type: " + type;
                 result.error(type, error, error);
-                return;
+                return null;
             }
             instances.put(id, imageLabeler);
         }
 
-        imageLabeler.process(inputImage)
-                .addOnSuccessListener(imageLabels -> {
+        return imageLabeler.process(inputImage)
+                .addOnSuccessListener(ResultExecutor.get(), imageLabels -> {
                     List<Map<String, Object>> labels = new ArrayList<>(imageLabels.size());
                     for (ImageLabel label : imageLabels) {
                         Map<String, Object> labelData = new HashMap<>();
@@ -106,7 +107,7 @@ public class ImageLabelDetector implements MethodChannel.MethodCallHandler {
 
                     result.success(labels);
                 })
-                .addOnFailureListener(e -> result.error("ImageLabelDetectorError", e.toString(), null));
+                .addOnFailureListener(ResultExecutor.get(), e -> result.error("ImageLabelDetectorError", e.toString(), null));
     }
 
     //Labeler options that are provided to default image labeler(uses inbuilt model).
@@ -151,6 +152,7 @@ public class ImageLabelDetector implements MethodChannel.MethodCallHandler {
 
     private void closeDetector(MethodCall call) {
         String id = call.argument("id");
+        VisionAnalyzers.close(this, id);
         ImageLabeler imageLabeler = instances.get(id);
         if (imageLabeler == null) return;
         imageLabeler.close();
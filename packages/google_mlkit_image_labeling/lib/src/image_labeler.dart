@@ -19,10 +19,27 @@ class ImageLabeler {
   Future<List<ImageLabel>> processImage(InputImage inputImage) async {
     final result = await _channel.invokeMethod(
         'vision#startImageLabelDetector', <String, dynamic>{
-      'options': options.toJson(),
-      'id': id,
-      'imageData': inputImage.toJson()
+      ..._arguments(),
+      'imageData': inputImage.toJson(),
     });
+    return _parseResult(result);
+  }
+
+  /// Returns this labeler as a [VisionAnalysis] for [VisionAnalyzer.analyze],
+  /// optionally running on a copy of the image no larger than [maxDimension].
+  VisionAnalysis<List<ImageLabel>> analysis({int? maxDimension}) =>
+      VisionAnalysis(
+          type: 'image_labeling',
+          arguments: _arguments(),
+          parse: _parseResult,
+          maxDimension: maxDimension);
+
+  Map<String, dynamic> _arguments() => <String, dynamic>{
+        'options': options.toJson(),
+        'id': id,
+      };
+
+  static List<ImageLabel> _parseResult(dynamic result) {
     final imageLabels = <ImageLabel>[];
 
     for (final dynamic json in result) {
@@ -11,6 +11,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
@@ -19,7 +20,7 @@ public class LanguageDetector implements MethodChannel.MethodCallHandler {
     private static final String START = "nlp#startLanguageIdentifier";
     private static final String CLOSE = "nlp#closeLanguageIdentifier";
 
-    private final Map<String, LanguageIdentifier> instances = new HashMap<>();
+    private final Map<String, LanguageIdentifier> instances = new ConcurrentHashMap<>();
 
     @Override
     public void onMethodCall(@NonNull MethodCall call, @NonNull MethodChannel.Result result) {
@@ -2,21 +2,30 @@ package com.google_mlkit_object_detection;
 
 import androidx.annotation.NonNull;
 
+import com.google_mlkit_commons.VisionAnalyzers;
+
 import io.flutter.embedding.engine.plugins.FlutterPlugin;
+import io.flutter.plugin.common.BinaryMessenger;
 import io.flutter.plugin.common.MethodChannel;
+import io.flutter.plugin.common.StandardMethodCodec;
 
 public class GoogleMlKitObjectDetectionPlugin implements FlutterPlugin {
     private MethodChannel channel;
+    private static final String analyzerType = "object";
     private static final String channelName = "google_mlkit_object_detector";
 
     @Override
     public void onAttachedToEngine(@NonNull FlutterPluginBinding flutterPluginBinding) {
-        channel = new MethodChannel(flutterPluginBinding.getBinaryMessenger(), channelName);
-        channel.setMethodCallHandler(new ObjectDetector(flutterPluginBinding.getApplicationContext()));
+        BinaryMessenger messenger = flutterPluginBinding.getBinaryMessenger();
+        channel = new MethodChannel(messenger, channelName, StandardMethodCodec.INSTANCE, messenger.makeBackgroundTaskQueue());
+        ObjectDetector handler = new ObjectDetector(flutterPluginBinding.getApplicationContext());
+        channel.setMethodCallHandler(handler);
+        VisionAnalyzers.register(analyzerType, handler);
     }
 
     @Override
     public void onDetachedFromEngine(@NonNull FlutterPluginBinding binding) {
         channel.setMethodCallHandler(null);
+        VisionAnalyzers.unregister(analyzerType);
     }
 }
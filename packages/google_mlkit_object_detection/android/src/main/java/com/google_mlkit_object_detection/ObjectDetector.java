@@ -5,6 +5,7 @@ import android.graphics.Rect;
 
 import androidx.annotation.NonNull;
 
+import com.google.android.gms.tasks.Task;
 import com.google.mlkit.common.model.CustomRemoteModel;
 import com.google.mlkit.common.model.LocalModel;
 import com.google.mlkit.linkfirebase.FirebaseModelSource;
@@ -14,23 +15,28 @@ import com.google.mlkit.vision.objects.ObjectDetection;
 import com.google.mlkit.vision.objects.custom.CustomObjectDetectorOptions;
 import com.google.mlkit.vision.objects.defaults.ObjectDetectorOptions;
 import com.google_mlkit_commons.GenericModelManager;
+import com.google_mlkit_commons.ImageTransform;
 import com.google_mlkit_commons.InputImageConverter;
+import com.google_mlkit_commons.ResultExecutor;
+import com.google_mlkit_commons.VisionAnalyzer;
+import com.google_mlkit_commons.VisionAnalyzers;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 
-public class ObjectDetector implements MethodChannel.MethodCallHandler {
+public class ObjectDetector implements MethodChannel.MethodCallHandler, VisionAnalyzer {
     private static final String START = "vision#startObjectDetector";
     private static final String CLOSE = "vision#closeObjectDetector";
     private static final String MANAGE = "vision#manageFirebaseModels";
 
     private final Context context;
-    private final Map<String, com.google.mlkit.vision.objects.ObjectDetector> instances = new HashMap<>();
+    private final Map<String, com.google.mlkit.vision.objects.ObjectDetector> instances = new ConcurrentHashMap<>();
     private final GenericModelManager genericModelManager = new GenericModelManager();
 
     public ObjectDetector(Context context) {
@@ -42,7 +48,7 @@ public class ObjectDetector implements MethodChannel.MethodCallHandler {
         String method = call.method;
         switch (method) {
             case START:
-                handleDetection(call, result);
+                VisionAnalyzers.process(call, context, this, result);
                 break;
             case CLOSE:
                 closeDetector(call);
@@ -57,10 +63,9 @@ public class ObjectDetector implements MethodChannel.MethodCallHandler {
         }
     }
 
-    private void handleDetection(MethodCall call, final MethodChannel.Result result) {
-        Map<String, Object> imageData = (Map<String, Object>) call.argument("imageData");
-        InputImage inputImage = InputImageConverter.getInputImageFromData(imageData, context, result);
-        if (inputImage == null) return;
+    @Override
+    public Task<?> analyze(@NonNull MethodCall call, @NonNull InputImage inputImage, @NonNull final MethodChannel.Result result) {
+        ImageTransform transform = InputImageConverter.getImageTransform(inputImage);
 
         String id = call.argument("id");
         com.google.mlkit.vision.objects.ObjectDetector objectDetector = instances.get(id);
@@ -68,7 +73,7 @@ public class ObjectDetector implements MethodChannel.MethodCallHandler {
             Map<String, Object> options = call.argument("options");
             if (options == null) {
                 result.error("ImageLabelDetectorError", "Invalid options", null);
-                return;
+                return null;
             }
 
             String type = (String) options.get("type");
@@ -82,29 +87,29 @@ public class ObjectDetector implements MethodChannel.MethodCallHandler {
                 CustomObjectDetectorOptions detectorOptions = getRemoteOptions(options);
                 if (detectorOptions == null) {
                     result.error("Error Model has not been downloaded yet", "Model has not been downloaded yet", "Model has not been downloaded yet");
-                    return;
+                    return null;
                 }
                 objectDetector = ObjectDetection.getClient(detectorOptions);
             } else {
                 String error = "Invalid model type: " + type;
                 result.error(type, error, error);
-                return;
+                return null;
             }
             instances.put(id, objectDetector);
         }
 
-        objectDetector.process(inputImage).addOnSuccessListener(detectedObjects -> {
+        return objectDetector.process(inputImage).addOnSuccessListener(ResultExecutor.get(), detectedObjects -> {
             List<Map<String, Object>> objects = new ArrayList<>();
             for (DetectedObject detectedObject : detectedObjects) {
                 Map<String, Object> objectMap = new HashMap<>();
                 addData(objectMap,
                         detectedObject.getTrackingId(),
-                        detectedObject.getBoundingBox(),
+                        transform.mapRect(detectedObject.getBoundingBox()),
                         detectedObject.getLabels());
                 objects.add(objectMap);
             }
             result.success(objects);
-        }).addOnFailureListener(e -> {
+        }).addOnFailureListener(ResultExecutor.get(), e -> {
             e.printStackTrace();
             result.error("ObjectDetectionError", e.toString(), null);
         });
@@ -209,6 +214,7 @@ public class ObjectDetector implements MethodChannel.MethodCallHandler {
 
     private void closeDetector(MethodCall call) {
         String id = call.argument("id");
+        VisionAnalyzers.close(this, id);
         com.google.mlkit.vision.objects.ObjectDetector objectDetector = instances.get(id);
         if (objectDetector == null) return;
         objectDetector.close();
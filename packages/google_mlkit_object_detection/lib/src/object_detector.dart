@@ -20,10 +20,27 @@ class ObjectDetector {
   Future<List<DetectedObject>> processImage(InputImage inputImage) async {
     final result = await _channel.invokeMethod(
         'vision#startObjectDetector', <String, dynamic>{
-      'id': id,
+      ..._arguments(),
       'imageData': inputImage.toJson(),
-      'options': options.toJson()
     });
+    return _parseResult(result);
+  }
+
+  /// Returns this detector as a [VisionAnalysis] for [VisionAnalyzer.analyze],
+  /// optionally running on a copy of the image no larger than [maxDimension].
+  VisionAnalysis<List<DetectedObject>> analysis({int? maxDimension}) =>
+      VisionAnalysis(
+          type: 'object',
+          arguments: _arguments(),
+          parse: _parseResult,
+          maxDimension: maxDimension);
+
+  Map<String, dynamic> _arguments() => <String, dynamic>{
+        'id': id,
+        'options': options.toJson(),
+      };
+
+  static List<DetectedObject> _parseResult(dynamic result) {
     final objects = <DetectedObject>[];
     for (final dynamic json in result) {
       objects.add(DetectedObject.fromJson(json));
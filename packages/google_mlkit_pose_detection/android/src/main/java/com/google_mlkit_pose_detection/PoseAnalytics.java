@@ -0,0 +1,78 @@
+package com.google_mlkit_pose_detection;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//Derives joint angles and repetition counts from the landmarks of a detector, so a stream only has to send those.
+//A joint angle is the angle at its "middle" landmark between the "first" and "last" ones, in degrees in the image plane.
+//If it has a "lowerAngle" and an "upperAngle", one repetition is counted each time the angle drops below the lower
+//one and then rises above the upper one again, e.g. the knee angle of a squat.
+class PoseAnalytics {
+    //Landmarks less likely to be in the frame than this do not count repetitions.
+    private static final float MIN_LIKELIHOOD = 0.5f;
+
+    private final int[] joints;
+    private final double[] lowerAngles;
+    private final double[] upperAngles;
+    private final boolean[] lowered;
+    private final int[] repetitions;
+
+    PoseAnalytics(List<Map<String, Object>> jointAngles) {
+        int count = jointAngles.size();
+        joints = new int[count * 3];
+        lowerAngles = new double[count];
+        upperAngles = new double[count];
+        lowered = new boolean[count];
+        repetitions = new int[count];
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> jointAngle = jointAngles.get(i);
+            joints[i * 3] = (int) jointAngle.get("first");
+            joints[i * 3 + 1] = (int) jointAngle.get("middle");
+            joints[i * 3 + 2] = (int) jointAngle.get("last");
+            Object lower = jointAngle.get("lowerAngle");
+            Object upper = jointAngle.get("upperAngle");
+            lowerAngles[i] = lower instanceof Number ? ((Number) lower).doubleValue() : Double.NaN;
+            upperAngles[i] = upper instanceof Number ? ((Number) upper).doubleValue() : Double.NaN;
+        }
+    }
+
+    //Returns the "angles" and "repetitions" for [landmarks], laid out as PosePredictor lays them out.
+    //Only inferred landmarks count repetitions, an extrapolation may overshoot the thresholds.
+    synchronized Map<String, Object> analyze(float[] landmarks, boolean inferred) {
+        float[] angles = new float[lowerAngles.length];
+        for (int i = 0; i < angles.length; i++) {
+            int first = joints[i * 3] * PosePredictor.STRIDE;
+            int middle = joints[i * 3 + 1] * PosePredictor.STRIDE;
+            int last = joints[i * 3 + 2] * PosePredictor.STRIDE;
+            double angle = Math.toDegrees(
+                    Math.atan2(landmarks[last + 1] - landmarks[middle + 1], landmarks[last] - landmarks[middle])
+                            - Math.atan2(landmarks[first + 1] - landmarks[middle + 1], landmarks[first] - landmarks[middle]));
+            angle = Math.abs(angle);
+            if (angle > 180) angle = 360 - angle;
+            angles[i] = (float) angle;
+
+            boolean visible = landmarks[first + 3] >= MIN_LIKELIHOOD
+                    && landmarks[middle + 3] >= MIN_LIKELIHOOD
+                    && landmarks[last + 3] >= MIN_LIKELIHOOD;
+            if (!inferred || !visible || Double.isNaN(lowerAngles[i]) || Double.isNaN(upperAngles[i])) continue;
+            if (angle < lowerAngles[i]) {
+                lowered[i] = true;
+            } else if (lowered[i] && angle > upperAngles[i]) {
+                lowered[i] = false;
+                repetitions[i]++;
+            }
+        }
+
+        Map<String, Object> analytics = new HashMap<>();
+        analytics.put("angles", angles);
+        analytics.put("repetitions", repetitions.clone());
+        return analytics;
+    }
+
+    synchronized void reset() {
+        Arrays.fill(lowered, false);
+        Arrays.fill(repetitions, 0);
+    }
+}
@@ -4,27 +4,36 @@ import android.content.Context;
 
 import androidx.annotation.NonNull;
 
+import com.google.android.gms.tasks.Task;
 import com.google.mlkit.vision.common.InputImage;
 import com.google.mlkit.vision.pose.PoseDetection;
 import com.google.mlkit.vision.pose.PoseLandmark;
 import com.google.mlkit.vision.pose.accurate.AccuratePoseDetectorOptions;
 import com.google.mlkit.vision.pose.defaults.PoseDetectorOptions;
+import com.google_mlkit_commons.ImageTransform;
 import com.google_mlkit_commons.InputImageConverter;
+import com.google_mlkit_commons.ResultExecutor;
+import com.google_mlkit_commons.VisionAnalyzer;
+import com.google_mlkit_commons.VisionAnalyzers;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 
-public class PoseDetector implements MethodChannel.MethodCallHandler {
+public class PoseDetector implements MethodChannel.MethodCallHandler, VisionAnalyzer {
     private static final String START = "vision#startPoseDetector";
     private static final String CLOSE = "vision#closePoseDetector";
+    private static final String RESET_REPETITIONS = "vision#resetPoseRepetitions";
 
     private final Context context;
-    private final Map<String, com.google.mlkit.vision.pose.PoseDetector> instances = new HashMap<>();
+    private final Map<String, com.google.mlkit.vision.pose.PoseDetector> instances = new ConcurrentHashMap<>();
+    private final Map<String, PosePredictor> predictors = new ConcurrentHashMap<>();
+    private final Map<String, PoseAnalytics> analytics = new ConcurrentHashMap<>();
 
     public PoseDetector(Context context) {
         this.context = context;
@@ -35,30 +44,34 @@ public class PoseDetector implements MethodChannel.MethodCallHandler {
         String method = call.method;
         switch (method) {
             case START:
-                handleDetection(call, result);
+                VisionAnalyzers.process(call, context, this, result);
                 break;
             case CLOSE:
                 closeDetector(call);
                 result.success(null);
                 break;
+            case RESET_REPETITIONS:
+                PoseAnalytics poseAnalytics = analytics.get((String) call.argument("id"));
+                if (poseAnalytics != null) poseAnalytics.reset();
+                result.success(null);
+                break;
             default:
                 result.notImplemented();
                 break;
         }
     }
 
-    private void handleDetection(MethodCall call, final MethodChannel.Result result) {
-        Map<String, Object> imageData = (Map<String, Object>) call.argument("imageData");
-        InputImage inputImage = InputImageConverter.getInputImageFromData(imageData, context, result);
-        if (inputImage == null) return;
+    @Override
+    public Task<?> analyze(@NonNull MethodCall call, @NonNull InputImage inputImage, @NonNull final MethodChannel.Result result) {
+        ImageTransform transform = InputImageConverter.getImageTransform(inputImage);
 
         String id = call.argument("id");
+        Map<String, Object> options = call.argument("options");
         com.google.mlkit.vision.pose.PoseDetector poseDetector = instances.get(id);
         if (poseDetector == null) {
-            Map<String, Object> options = call.argument("options");
             if (options == null) {
                 result.error("PoseDetectorError", "Invalid options", null);
-                return;
+                return null;
             }
 
             String mode = (String) options.get("mode");
@@ -80,36 +93,111 @@ public class PoseDetector implements MethodChannel.MethodCallHandler {
                 poseDetector = PoseDetection.getClient(detectorOptions);
             }
             instances.put(id, poseDetector);
+
+            Object maxInterval = options.get("maxInferenceInterval");
+            Object maxError = options.get("maxPredictionError");
+            if (detectorMode == PoseDetectorOptions.STREAM_MODE && maxInterval instanceof Integer && (Integer) maxInterval > 1) {
+                predictors.put(id, new PosePredictor((Integer) maxInterval, maxError instanceof Number ? ((Number) maxError).doubleValue() : Double.MAX_VALUE));
+            }
+
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> jointAngles = (List<Map<String, Object>>) options.get("jointAngles");
+            if (jointAngles != null && !jointAngles.isEmpty()) {
+                analytics.put(id, new PoseAnalytics(jointAngles));
+            }
+        }
+
+        PoseOutput output = new PoseOutput(options, analytics.get(id));
+
+        //Frames the predictor can extrapolate to skip inference.
+        //Landmarks are extrapolated to when the frame arrived, not to when a frame that waited for the detector starts.
+        PosePredictor predictor = predictors.get(id);
+        long frameTime = VisionAnalyzers.getFrameTime(inputImage);
+        long inferenceStart = System.nanoTime();
+        if (predictor != null) {
+            float[] predicted = predictor.predict(frameTime, VisionAnalyzers.getFrameInterval(this, id));
+            if (predicted != null) {
+                result.success(output.toPoses(predicted, true));
+                return null;
+            }
         }
 
-        poseDetector.process(inputImage)
-                .addOnSuccessListener(
+        return poseDetector.process(inputImage)
+                .addOnSuccessListener(ResultExecutor.get(),
                         pose -> {
-                            List<List<Map<String, Object>>> array = new ArrayList<>();
+                            float[] landmarks = null;
                             if (!pose.getAllPoseLandmarks().isEmpty()) {
-                                List<Map<String, Object>> landmarks = new ArrayList<>();
+                                landmarks = new float[PosePredictor.LANDMARKS * PosePredictor.STRIDE];
                                 for (PoseLandmark poseLandmark : pose.getAllPoseLandmarks()) {
-                                    Map<String, Object> landmarkMap = new HashMap<>();
-                                    landmarkMap.put("type", poseLandmark.getLandmarkType());
-                                    landmarkMap.put("x", poseLandmark.getPosition3D().getX());
-                                    landmarkMap.put("y", poseLandmark.getPosition3D().getY());
-                                    landmarkMap.put("z", poseLandmark.getPosition3D().getZ());
-                                    landmarkMap.put("likelihood", poseLandmark.getInFrameLikelihood());
-                                    landmarks.add(landmarkMap);
+                                    int offset = poseLandmark.getLandmarkType() * PosePredictor.STRIDE;
+                                    landmarks[offset] = transform.mapX(poseLandmark.getPosition3D().getX());
+                                    landmarks[offset + 1] = transform.mapY(poseLandmark.getPosition3D().getY());
+                                    landmarks[offset + 2] = transform.mapLength(poseLandmark.getPosition3D().getZ());
+                                    landmarks[offset + 3] = poseLandmark.getInFrameLikelihood();
                                 }
-                                array.add(landmarks);
                             }
-                            result.success(array);
+                            if (predictor != null) {
+                                predictor.update(landmarks, frameTime, System.nanoTime() - inferenceStart);
+                            }
+                            result.success(output.toPoses(landmarks, false));
                         })
-                .addOnFailureListener(
+                .addOnFailureListener(ResultExecutor.get(),
                         e -> result.error("PoseDetectorError", e.toString(), null));
     }
 
+    //Serializes the landmarks of a frame, laid out by PoseLandmark type with x, y, z and likelihood each, the way the
+    //options of the detector ask for: one map per landmark, or one map per pose holding the packed landmarks and analytics.
+    private static class PoseOutput {
+        private final boolean packLandmarks;
+        private final boolean analyticsOnly;
+        private final PoseAnalytics analytics;
+
+        PoseOutput(Map<String, Object> options, PoseAnalytics analytics) {
+            this.analytics = analytics;
+            this.analyticsOnly = analytics != null && options != null && Boolean.TRUE.equals(options.get("analyticsOnly"));
+            this.packLandmarks = analytics != null || options != null && Boolean.TRUE.equals(options.get("packLandmarks"));
+        }
+
+        List<Object> toPoses(float[] landmarks, boolean interpolated) {
+            List<Object> array = new ArrayList<>();
+            if (landmarks == null) return array;
+            if (packLandmarks) {
+                Map<String, Object> pose = analytics != null ? analytics.analyze(landmarks, !interpolated) : new HashMap<>();
+                if (!analyticsOnly) {
+                    pose.put("landmarks", landmarks);
+                }
+                pose.put("interpolated", interpolated);
+                array.add(pose);
+                return array;
+            }
+
+            List<Map<String, Object>> pose = new ArrayList<>();
+            for (int type = 0; type < PosePredictor.LANDMARKS; type++) {
+                int offset = type * PosePredictor.STRIDE;
+                Map<String, Object> landmarkMap = new HashMap<>();
+                landmarkMap.put("type", type);
+                landmarkMap.put("x", landmarks[offset]);
+                landmarkMap.put("y", landmarks[offset + 1]);
+                landmarkMap.put("z", landmarks[offset + 2]);
+                landmarkMap.put("likelihood", landmarks[offset + 3]);
+                if (interpolated) {
+                    landmarkMap.put("interpolated", true);
+                }
+                pose.add(landmarkMap);
+            }
+            array.add(pose);
+            return array;
+        }
+    }
+
     private void closeDetector(MethodCall call) {
         String id = call.argument("id");
+        VisionAnalyzers.close(this, id);
         com.google.mlkit.vision.pose.PoseDetector poseDetector = instances.get(id);
         if (poseDetector == null) return;
         poseDetector.close();
         instances.remove(id);
+        predictors.remove(id);
+        analytics.remove(id);
     }
 }
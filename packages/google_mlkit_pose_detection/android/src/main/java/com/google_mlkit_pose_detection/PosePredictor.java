@@ -0,0 +1,120 @@
+package com.google_mlkit_pose_detection;
+
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+
+//Lets a stream skip pose inference on some frames by extrapolating the landmarks of the last inferences instead.
+//The velocity of every coordinate is smoothed with a One Euro filter, which follows fast movements closely and damps
+//jitter when the body is still. How many frames are predicted per inference follows the measured inference time and
+//the interval at which the camera delivers frames, up to [maxInterval]. Without a known frame interval [maxInterval] is
+//used. Either way inference runs on every frame while the last extrapolation was too far off.
+class PosePredictor {
+    static final int LANDMARKS = 33;
+    //x, y, z and likelihood per landmark.
+    static final int STRIDE = 4;
+
+    private static final double MIN_CUTOFF = 1.0;
+    private static final double BETA = 0.05;
+    private static final double VELOCITY_CUTOFF = 1.0;
+    //Weight of a new sample in the running average of the inference time.
+    private static final double SMOOTHING = 0.2;
+    //Landmarks less likely to be in the frame are not used to measure the error of an extrapolation.
+    private static final float MIN_LIKELIHOOD = 0.5f;
+
+    private final int maxInterval;
+    private final double maxError;
+
+    private float[] landmarks;
+    private final double[] velocity = new double[LANDMARKS * 3];
+    private long landmarksNanos;
+    private long frameNanos = 0;
+    private double inferenceNanos = 0;
+    private double lastError = 0;
+    private int framesSinceInference = 0;
+
+    PosePredictor(int maxInterval, double maxError) {
+        this.maxInterval = maxInterval;
+        this.maxError = maxError;
+    }
+
+    //Returns the landmarks extrapolated to [frameTimeNanos], or null if the frame has to be inferred. [frameIntervalNanos]
+    //is the time between frames arriving from the camera, including the ones dropped during inference, or 0 if unknown.
+    @Nullable
+    synchronized float[] predict(long frameTimeNanos, long frameIntervalNanos) {
+        frameNanos = frameIntervalNanos;
+        if (landmarks == null || lastError > maxError || framesSinceInference + 1 >= interval()) {
+            return null;
+        }
+        framesSinceInference++;
+        return extrapolate(frameTimeNanos);
+    }
+
+    //Takes the inferred [inferred] landmarks of the frame at [frameTimeNanos], or null if no pose was found.
+    synchronized void update(@Nullable float[] inferred, long frameTimeNanos, long inferenceTimeNanos) {
+        inferenceNanos = average(inferenceNanos, inferenceTimeNanos);
+        framesSinceInference = 0;
+        if (inferred == null || landmarks == null) {
+            landmarks = inferred;
+            landmarksNanos = frameTimeNanos;
+            lastError = 0;
+            Arrays.fill(velocity, 0);
+            return;
+        }
+
+        lastError = measureError(extrapolate(frameTimeNanos), inferred);
+        double dt = Math.max(frameTimeNanos - landmarksNanos, 1) / 1e9;
+        for (int i = 0; i < LANDMARKS; i++) {
+            for (int axis = 0; axis < 3; axis++) {
+                int v = i * 3 + axis;
+                double rawVelocity = (inferred[i * STRIDE + axis] - landmarks[i * STRIDE + axis]) / dt;
+                double smoothedVelocity = velocity[v] + alpha(VELOCITY_CUTOFF, dt) * (rawVelocity - velocity[v]);
+                //A faster movement raises the cutoff, so the velocity lags less behind it.
+                double cutoff = MIN_CUTOFF + BETA * Math.abs(smoothedVelocity);
+                velocity[v] += alpha(cutoff, dt) * (smoothedVelocity - velocity[v]);
+            }
+        }
+        landmarks = inferred;
+        landmarksNanos = frameTimeNanos;
+    }
+
+    //Frames per inference: as many as arrive while one inference runs.
+    private int interval() {
+        if (frameNanos <= 0 || inferenceNanos <= 0) return maxInterval;
+        int interval = (int) Math.ceil(inferenceNanos / frameNanos);
+        return Math.max(1, Math.min(maxInterval, interval));
+    }
+
+    private float[] extrapolate(long frameTimeNanos) {
+        double dt = (frameTimeNanos - landmarksNanos) / 1e9;
+        float[] predicted = landmarks.clone();
+        for (int i = 0; i < LANDMARKS; i++) {
+            for (int axis = 0; axis < 3; axis++) {
+                predicted[i * STRIDE + axis] += (float) (velocity[i * 3 + axis] * dt);
+            }
+        }
+        return predicted;
+    }
+
+    //Mean distance in the image plane between the extrapolated and the inferred landmarks.
+    private static double measureError(float[] predicted, float[] inferred) {
+        double total = 0;
+        int count = 0;
+        for (int i = 0; i < LANDMARKS; i++) {
+            int offset = i * STRIDE;
+            if (inferred[offset + 3] < MIN_LIKELIHOOD) continue;
+            total += Math.hypot(predicted[offset] - inferred[offset], predicted[offset + 1] - inferred[offset + 1]);
+            count++;
+        }
+        return count > 0 ? total / count : 0;
+    }
+
+    private static double alpha(double cutoff, double dt) {
+        double tau = 1.0 / (2 * Math.PI * cutoff);
+        return 1.0 / (1.0 + tau / dt);
+    }
+
+    private static double average(double average, double sample) {
+        return average == 0 ? sample : average + SMOOTHING * (sample - average);
+    }
+}
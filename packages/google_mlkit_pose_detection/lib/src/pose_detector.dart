@@ -12,32 +12,62 @@ class PoseDetector {
   /// Instance id.
   final id = DateTime.now().microsecondsSinceEpoch.toString();
 
+  /// Whether results are sent in the packed binary format of [PackedResultCodec].
+  /// Only used on Android.
+  final bool packedResults;
+
   /// Constructor to create an instance of [PoseDetector].
-  PoseDetector({required this.options});
+  PoseDetector({required this.options, this.packedResults = false});
 
   /// Processes the given [InputImage] for pose detection.
   /// It returns a list of [Pose].
   Future<List<Pose>> processImage(InputImage inputImage) async {
     final result = await _channel.invokeMethod(
         'vision#startPoseDetector', <String, dynamic>{
-      'options': options.toJson(),
-      'id': id,
-      'imageData': inputImage.toJson()
+      ..._arguments(),
+      'imageData': inputImage.toJson(),
     });
+    return _parseResult(result);
+  }
+
+  /// Returns this detector as a [VisionAnalysis] for [VisionAnalyzer.analyze],
+  /// optionally running on a copy of the image no larger than [maxDimension].
+  VisionAnalysis<List<Pose>> analysis({int? maxDimension}) => VisionAnalysis(
+      type: 'pose',
+      arguments: _arguments(),
+      parse: _parseResult,
+      maxDimension: maxDimension);
+
+  Map<String, dynamic> _arguments() => <String, dynamic>{
+        'options': options.toJson(),
+        'id': id,
+        'packedResults': packedResults,
+      };
 
+  static List<Pose> _parseResult(dynamic result) {
     final List<Pose> poses = [];
-    for (final pose in result) {
+    for (final pose in PackedResultCodec.unpack(result)) {
+      if (pose is Map) {
+        poses.add(Pose._fromPacked(pose));
+        continue;
+      }
       final Map<PoseLandmarkType, PoseLandmark> landmarks = {};
+      bool interpolated = false;
       for (final point in pose) {
         final landmark = PoseLandmark.fromJson(point);
         landmarks[landmark.type] = landmark;
+        interpolated |= point['interpolated'] ?? false;
       }
-      poses.add(Pose(landmarks: landmarks));
+      poses.add(Pose(landmarks: landmarks, interpolated: interpolated));
     }
 
     return poses;
   }
 
+  /// Sets the [Pose.repetitions] counted so far back to 0.
+  Future<void> resetRepetitions() =>
+      _channel.invokeMethod('vision#resetPoseRepetitions', {'id': id});
+
   /// Closes the detector and releases its resources.
   Future<void> close() =>
       _channel.invokeMethod('vision#closePoseDetector', {'id': id});
@@ -51,15 +81,61 @@ class PoseDetectorOptions {
   /// The mode for the pose detector.
   final PoseDetectionMode mode;
 
+  /// The most frames of a stream that share one inference.
+  ///
+  /// Above 1, the detector skips inference on some frames and extrapolates the
+  /// landmarks of the last inferences instead, which lets overlays follow the
+  /// frame rate of the camera while the model runs at a lower rate. The
+  /// number of frames per inference adapts to how long an inference takes
+  /// compared to the interval between camera frames, which is measured for
+  /// frames sent with `InputImage.withSequence`, dropped frames included.
+  /// Without sequence numbers up to [maxInferenceInterval] frames share one
+  /// inference while the extrapolation stays within [maxPredictionError].
+  /// Such poses have [Pose.interpolated] set. Only used in
+  /// [PoseDetectionMode.stream] on Android.
+  final int maxInferenceInterval;
+
+  /// How far in pixels extrapolated landmarks may have been from the next
+  /// inference before every frame is inferred again, see
+  /// [maxInferenceInterval].
+  final double maxPredictionError;
+
+  /// Whether the landmarks of a pose are sent as one float array instead of a
+  /// map per landmark. The [Pose.landmarks] are the same either way. Only used
+  /// on Android.
+  final bool packLandmarks;
+
+  /// Joint angles computed natively for every pose, in [Pose.jointAngles].
+  ///
+  /// Also counts the repetitions of joint angles that have thresholds, in
+  /// [Pose.repetitions]. Setting them packs the landmarks, see
+  /// [packLandmarks]. Only used on Android.
+  final List<PoseJointAngle> jointAngles;
+
+  /// Whether only the [jointAngles] and repetitions of a pose are sent, and no
+  /// landmarks at all. Only used on Android.
+  final bool analyticsOnly;
+
   /// Constructor to create an instance of [PoseDetectorOptions].
   PoseDetectorOptions(
       {this.model = PoseDetectionModel.base,
-      this.mode = PoseDetectionMode.stream});
+      this.mode = PoseDetectionMode.stream,
+      this.maxInferenceInterval = 1,
+      this.maxPredictionError = 20,
+      this.packLandmarks = false,
+      this.jointAngles = const [],
+      this.analyticsOnly = false})
+      : assert(maxInferenceInterval >= 1);
 
   /// Returns a json representation of an instance of [PoseDetectorOptions].
   Map<String, dynamic> toJson() => {
         'model': model.name,
         'mode': mode.name,
+        'maxInferenceInterval': maxInferenceInterval,
+        'maxPredictionError': maxPredictionError,
+        'packLandmarks': packLandmarks,
+        'jointAngles': jointAngles.map((angle) => angle.toJson()).toList(),
+        'analyticsOnly': analyticsOnly,
       };
 }
 
@@ -118,13 +194,87 @@ enum PoseLandmarkType {
   rightFootIndex
 }
 
+/// An angle between three landmarks, computed natively by [PoseDetector].
+class PoseJointAngle {
+  /// The landmark at one end of the angle.
+  final PoseLandmarkType first;
+
+  /// The landmark at the vertex of the angle, e.g. the knee.
+  final PoseLandmarkType middle;
+
+  /// The landmark at the other end of the angle.
+  final PoseLandmarkType last;
+
+  /// Together with [upperAngle] counts one repetition each time the angle, in
+  /// degrees, drops below [lowerAngle] and then rises above [upperAngle].
+  final double? lowerAngle;
+
+  /// See [lowerAngle].
+  final double? upperAngle;
+
+  /// Constructor to create an instance of [PoseJointAngle].
+  PoseJointAngle(
+      {required this.first,
+      required this.middle,
+      required this.last,
+      this.lowerAngle,
+      this.upperAngle});
+
+  /// Returns a json representation of an instance of [PoseJointAngle].
+  Map<String, dynamic> toJson() => {
+        'first': first.index,
+        'middle': middle.index,
+        'last': last.index,
+        'lowerAngle': lowerAngle,
+        'upperAngle': upperAngle,
+      };
+}
+
 /// Describes a pose detection result.
 class Pose {
   /// A map of all the landmarks in the detected pose.
   final Map<PoseLandmarkType, PoseLandmark> landmarks;
 
+  /// Whether the landmarks were extrapolated from earlier frames instead of
+  /// inferred, see [PoseDetectorOptions.maxInferenceInterval].
+  final bool interpolated;
+
+  /// The angles in degrees of [PoseDetectorOptions.jointAngles], in order.
+  final List<double> jointAngles;
+
+  /// The repetitions counted so far for each of
+  /// [PoseDetectorOptions.jointAngles], in order.
+  final List<int> repetitions;
+
   /// Constructor to create an instance of [Pose].
-  Pose({required this.landmarks});
+  Pose(
+      {required this.landmarks,
+      this.interpolated = false,
+      this.jointAngles = const [],
+      this.repetitions = const []});
+
+  factory Pose._fromPacked(Map<dynamic, dynamic> json) {
+    final Map<PoseLandmarkType, PoseLandmark> landmarks = {};
+    final List<double>? packed = json['landmarks'];
+    if (packed != null) {
+      for (final type in PoseLandmarkType.values) {
+        final offset = type.index * 4;
+        landmarks[type] = PoseLandmark(
+          type: type,
+          x: packed[offset],
+          y: packed[offset + 1],
+          z: packed[offset + 2],
+          likelihood: packed[offset + 3],
+        );
+      }
+    }
+    return Pose(
+      landmarks: landmarks,
+      interpolated: json['interpolated'] ?? false,
+      jointAngles: json['angles'] ?? const [],
+      repetitions: json['repetitions'] ?? const [],
+    );
+  }
 }
 
 /// A landmark in a pose detection result.
@@ -0,0 +1,302 @@
+package com.google_mlkit_selfie_segmentation;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+import androidx.annotation.Nullable;
+
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.segmentation.SegmentationMask;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+//Puts the person of a frame in front of another background: a solid "color", the frame itself blurred by a "radius",
+//or a background "image" registered before. Blends along the edge of the mask as wide as "feather", in confidence.
+//The mask never leaves this class, only the composited frame is sent, as JPEG or as raw RGBA bytes.
+//Pixels and bitmaps are kept per segmenter and reused for every frame of the same size.
+class BackgroundCompositor {
+    //Blurring runs on a copy of the frame this many times smaller, which is much cheaper and looks the same.
+    private static final int BLUR_DOWNSCALE = 4;
+
+    private static final Map<String, Bitmap> backgrounds = new ConcurrentHashMap<>();
+
+    private final Paint filter = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+    private final MaskEncoder maskEncoder = new MaskEncoder();
+    private int[] source = new int[0];
+    private int[] background = new int[0];
+    private int[] buffer = new int[0];
+    private float[] mask = new float[0];
+    private byte[] rgba = new byte[0];
+    private Bitmap frame;
+    private Bitmap small;
+    private Bitmap canvas;
+
+    static void registerBackground(String id, Bitmap bitmap) {
+        backgrounds.put(id, bitmap);
+    }
+
+    static void unregisterBackground(String id) {
+        backgrounds.remove(id);
+    }
+
+    //Returns the "width", "height", "format" and "bytes" of the composited frame.
+    synchronized Map<String, Object> composite(InputImage inputImage, SegmentationMask segmentationMask, Map<String, Object> spec,
+                                               boolean reuse) {
+        int width = uprightWidth(inputImage);
+        int height = uprightHeight(inputImage);
+        int size = width * height;
+        if (source.length != size) {
+            source = new int[size];
+            background = new int[size];
+            mask = new float[size];
+        }
+        readUpright(inputImage, source, width, height);
+        readMask(segmentationMask, width, height);
+        fillBackground(spec, width, height);
+
+        double featherValue = spec.get("feather") instanceof Number ? ((Number) spec.get("feather")).doubleValue() : 0.1;
+        float feather = (float) Math.max(0.001, Math.min(0.5, featherValue));
+        float low = 0.5f - feather;
+        float range = 2 * feather;
+        for (int i = 0; i < size; i++) {
+            float t = Math.max(0f, Math.min(1f, (mask[i] - low) / range));
+            float alpha = t * t * (3 - 2 * t);
+            source[i] = blend(background[i], source[i], alpha);
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("width", width);
+        result.put("height", height);
+        if ("rgba".equals(spec.get("format"))) {
+            byte[] bytes = reuse && rgba.length == size * 4 ? rgba : new byte[size * 4];
+            for (int i = 0; i < size; i++) {
+                int color = source[i];
+                bytes[i * 4] = (byte) (color >> 16);
+                bytes[i * 4 + 1] = (byte) (color >> 8);
+                bytes[i * 4 + 2] = (byte) color;
+                bytes[i * 4 + 3] = (byte) 0xFF;
+            }
+            if (reuse) rgba = bytes;
+            result.put("format", "rgba");
+            result.put("bytes", bytes);
+        } else {
+            int quality = spec.get("quality") instanceof Integer ? (Integer) spec.get("quality") : 80;
+            Bitmap output = frame(width, height);
+            output.setPixels(source, 0, width, 0, 0, width, height);
+            jpeg.reset();
+            output.compress(Bitmap.CompressFormat.JPEG, quality, jpeg);
+            result.put("format", "jpeg");
+            result.put("bytes", jpeg.toByteArray());
+        }
+        return result;
+    }
+
+    private void readMask(SegmentationMask segmentationMask, int width, int height) {
+        int maskWidth = segmentationMask.getWidth();
+        int maskHeight = segmentationMask.getHeight();
+        float[] values = maskEncoder.copy(segmentationMask.getBuffer(), maskWidth * maskHeight, true);
+        if (maskWidth == width && maskHeight == height) {
+            System.arraycopy(values, 0, mask, 0, values.length);
+        } else {
+            MaskEncoder.resample(values, maskWidth, maskHeight, mask, width, height);
+        }
+    }
+
+    private void fillBackground(Map<String, Object> spec, int width, int height) {
+        Object color = spec.get("color");
+        Object radius = spec.get("radius");
+        Bitmap image = spec.get("image") != null ? backgrounds.get((String) spec.get("image")) : null;
+        if (image != null) {
+            Bitmap target = canvas(width, height);
+            drawScaled(image, centerCrop(image.getWidth(), image.getHeight(), width, height), target);
+            target.getPixels(background, 0, width, 0, 0, width, height);
+        } else if (radius instanceof Number) {
+            blur(width, height, ((Number) radius).intValue());
+        } else {
+            Arrays.fill(background, color instanceof Number ? ((Number) color).intValue() : 0xFF000000);
+        }
+    }
+
+    //Scales the frame down, box blurs it twice, which is close to a gaussian blur, and scales it back up.
+    private void blur(int width, int height, int radius) {
+        Bitmap full = frame(width, height);
+        full.setPixels(source, 0, width, 0, 0, width, height);
+        int smallWidth = Math.max(1, width / BLUR_DOWNSCALE);
+        int smallHeight = Math.max(1, height / BLUR_DOWNSCALE);
+        if (small == null || small.getWidth() != smallWidth || small.getHeight() != smallHeight) {
+            small = Bitmap.createBitmap(smallWidth, smallHeight, Bitmap.Config.ARGB_8888);
+        }
+        drawScaled(full, null, small);
+
+        int smallSize = smallWidth * smallHeight;
+        if (buffer.length < smallSize * 2) buffer = new int[smallSize * 2];
+        small.getPixels(buffer, 0, smallWidth, 0, 0, smallWidth, smallHeight);
+        int smallRadius = Math.max(1, radius / BLUR_DOWNSCALE);
+        for (int pass = 0; pass < 2; pass++) {
+            boxBlur(buffer, smallSize, smallWidth, smallHeight, smallRadius, 1, smallWidth);
+            boxBlur(buffer, smallSize, smallHeight, smallWidth, smallRadius, smallWidth, 1);
+        }
+        small.setPixels(buffer, 0, smallWidth, 0, 0, smallWidth, smallHeight);
+
+        Bitmap target = canvas(width, height);
+        drawScaled(small, null, target);
+        target.getPixels(background, 0, width, 0, 0, width, height);
+    }
+
+    //Blurs [lines] lines of [length] pixels each, [step] apart within a line and [lineStep] apart between lines,
+    //with a running sum over 2 * [radius] + 1 pixels. Uses the second half of the pixels as scratch space.
+    private static void boxBlur(int[] pixels, int scratch, int length, int lines, int radius, int step, int lineStep) {
+        int window = 2 * radius + 1;
+        for (int line = 0; line < lines; line++) {
+            int start = line * lineStep;
+            int r = 0, g = 0, b = 0;
+            for (int i = -radius; i <= radius; i++) {
+                int color = pixels[start + clamp(i, length) * step];
+                r += (color >> 16) & 0xFF;
+                g += (color >> 8) & 0xFF;
+                b += color & 0xFF;
+            }
+            for (int i = 0; i < length; i++) {
+                pixels[scratch + i] = 0xFF000000 | (r / window) << 16 | (g / window) << 8 | (b / window);
+                int out = pixels[start + clamp(i - radius, length) * step];
+                int in = pixels[start + clamp(i + radius + 1, length) * step];
+                r += ((in >> 16) & 0xFF) - ((out >> 16) & 0xFF);
+                g += ((in >> 8) & 0xFF) - ((out >> 8) & 0xFF);
+                b += (in & 0xFF) - (out & 0xFF);
+            }
+            for (int i = 0; i < length; i++) {
+                pixels[start + i * step] = pixels[scratch + i];
+            }
+        }
+    }
+
+    private static int clamp(int index, int length) {
+        return index < 0 ? 0 : index >= length ? length - 1 : index;
+    }
+
+    private static int blend(int background, int foreground, float alpha) {
+        int r = (int) (((background >> 16) & 0xFF) + (((foreground >> 16) & 0xFF) - ((background >> 16) & 0xFF)) * alpha);
+        int g = (int) (((background >> 8) & 0xFF) + (((foreground >> 8) & 0xFF) - ((background >> 8) & 0xFF)) * alpha);
+        int b = (int) ((background & 0xFF) + ((foreground & 0xFF) - (background & 0xFF)) * alpha);
+        return 0xFF000000 | r << 16 | g << 8 | b;
+    }
+
+    //The part of an image of the given size that covers the target size without distortion.
+    private static Rect centerCrop(int imageWidth, int imageHeight, int width, int height) {
+        float scale = Math.min((float) imageWidth / width, (float) imageHeight / height);
+        int cropWidth = Math.round(width * scale);
+        int cropHeight = Math.round(height * scale);
+        int left = (imageWidth - cropWidth) / 2;
+        int top = (imageHeight - cropHeight) / 2;
+        return new Rect(left, top, left + cropWidth, top + cropHeight);
+    }
+
+    private void drawScaled(Bitmap bitmap, @Nullable Rect from, Bitmap target) {
+        new Canvas(target).drawBitmap(bitmap, from, new Rect(0, 0, target.getWidth(), target.getHeight()), filter);
+    }
+
+    private Bitmap frame(int width, int height) {
+        if (frame == null || frame.getWidth() != width || frame.getHeight() != height) {
+            frame = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+        return frame;
+    }
+
+    private Bitmap canvas(int width, int height) {
+        if (canvas == null || canvas.getWidth() != width || canvas.getHeight() != height) {
+            canvas = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+        return canvas;
+    }
+
+    private static int uprightWidth(InputImage inputImage) {
+        return inputImage.getRotationDegrees() % 180 == 0 ? inputImage.getWidth() : inputImage.getHeight();
+    }
+
+    private static int uprightHeight(InputImage inputImage) {
+        return inputImage.getRotationDegrees() % 180 == 0 ? inputImage.getHeight() : inputImage.getWidth();
+    }
+
+    //Reads the pixels of the frame as ARGB colors, rotated upright like the mask.
+    private void readUpright(InputImage inputImage, int[] pixels, int width, int height) {
+        int bufferWidth = inputImage.getWidth();
+        int bufferHeight = inputImage.getHeight();
+        int rotation = inputImage.getRotationDegrees();
+        Bitmap bitmap = inputImage.getBitmapInternal();
+        ByteBuffer yuv = inputImage.getByteBuffer();
+        int[] raw = null;
+        if (bitmap != null) {
+            if (buffer.length < bufferWidth * bufferHeight) buffer = new int[bufferWidth * bufferHeight];
+            raw = buffer;
+            bitmap.getPixels(raw, 0, bufferWidth, 0, 0, bufferWidth, bufferHeight);
+        } else if (yuv == null) {
+            throw new IllegalArgumentException("Compositing needs a bitmap, NV21 or YV12 image");
+        }
+        boolean nv21 = inputImage.getFormat() == InputImage.IMAGE_FORMAT_NV21;
+        int lumaSize = bufferWidth * bufferHeight;
+        int chromaSize = lumaSize / 4;
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int bx, by;
+                switch (rotation) {
+                    case 90:
+                        bx = y;
+                        by = bufferHeight - 1 - x;
+                        break;
+                    case 180:
+                        bx = bufferWidth - 1 - x;
+                        by = bufferHeight - 1 - y;
+                        break;
+                    case 270:
+                        bx = bufferWidth - 1 - y;
+                        by = x;
+                        break;
+                    default:
+                        bx = x;
+                        by = y;
+                        break;
+                }
+                if (raw != null) {
+                    pixels[y * width + x] = raw[by * bufferWidth + bx];
+                    continue;
+                }
+                int luma = yuv.get(by * bufferWidth + bx) & 0xFF;
+                int u, v;
+                if (nv21) {
+                    int chroma = lumaSize + (by / 2) * bufferWidth + (bx & ~1);
+                    v = yuv.get(chroma) & 0xFF;
+                    u = yuv.get(chroma + 1) & 0xFF;
+                } else {
+                    int chroma = (by / 2) * (bufferWidth / 2) + bx / 2;
+                    v = yuv.get(lumaSize + chroma) & 0xFF;
+                    u = yuv.get(lumaSize + chromaSize + chroma) & 0xFF;
+                }
+                pixels[y * width + x] = yuvToArgb(luma, u, v);
+            }
+        }
+    }
+
+    //BT.601 video range.
+    private static int yuvToArgb(int y, int u, int v) {
+        int c = Math.max(0, y - 16) * 1192;
+        int d = u - 128;
+        int e = v - 128;
+        int r = clampColor((c + 1634 * e) >> 10);
+        int g = clampColor((c - 401 * d - 832 * e) >> 10);
+        int b = clampColor((c + 2066 * d) >> 10);
+        return 0xFF000000 | r << 16 | g << 8 | b;
+    }
+
+    private static int clampColor(int value) {
+        return value < 0 ? 0 : Math.min(value, 255);
+    }
+}
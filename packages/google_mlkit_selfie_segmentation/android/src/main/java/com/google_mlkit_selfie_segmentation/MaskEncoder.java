@@ -0,0 +1,81 @@
+package com.google_mlkit_selfie_segmentation;
+
+import com.google.mlkit.vision.segmentation.SegmentationMask;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+//Turns the masks of one segmenter into results, optionally resampled to another size and quantized to one byte per
+//pixel. The arrays are kept between frames. Reusing the array that is sent is only safe when the result is encoded
+//before the next mask arrives, which is the case for direct calls but not for results that wait in a fan-out.
+class MaskEncoder {
+    private float[] confidences = new float[0];
+    private float[] resampled = new float[0];
+    private byte[] quantized = new byte[0];
+
+    //[outputWidth] and [outputHeight] are 0 to keep the size of the mask.
+    synchronized Map<String, Object> encode(SegmentationMask mask, int outputWidth, int outputHeight, boolean quantize, boolean reuse) {
+        int width = mask.getWidth();
+        int height = mask.getHeight();
+        boolean resample = outputWidth > 0 && outputHeight > 0 && (outputWidth != width || outputHeight != height);
+        boolean sendsConfidences = !resample && !quantize;
+
+        float[] values = copy(mask.getBuffer(), width * height, reuse || !sendsConfidences);
+        if (resample) {
+            float[] output = resampled.length == outputWidth * outputHeight && (reuse || quantize)
+                    ? resampled
+                    : new float[outputWidth * outputHeight];
+            resample(values, width, height, output, outputWidth, outputHeight);
+            if (reuse || quantize) resampled = output;
+            values = output;
+            width = outputWidth;
+            height = outputHeight;
+        }
+
+        Map<String, Object> map = new HashMap<>();
+        map.put("width", width);
+        map.put("height", height);
+        if (quantize) {
+            byte[] bytes = quantized.length == values.length && reuse ? quantized : new byte[values.length];
+            for (int i = 0; i < values.length; i++) {
+                bytes[i] = (byte) Math.round(Math.max(0f, Math.min(1f, values[i])) * 255f);
+            }
+            if (reuse) quantized = bytes;
+            map.put("quantizedConfidences", bytes);
+        } else {
+            map.put("confidences", values);
+        }
+        return map;
+    }
+
+    //Copies the floats of [buffer] in one bulk read, into the kept array if [reuse] allows it.
+    float[] copy(ByteBuffer buffer, int length, boolean reuse) {
+        float[] values = reuse && confidences.length == length ? confidences : new float[length];
+        buffer.rewind();
+        buffer.asFloatBuffer().get(values, 0, length);
+        if (reuse) confidences = values;
+        return values;
+    }
+
+    //Bilinear resampling, with pixel centers aligned between both sizes.
+    static void resample(float[] source, int sourceWidth, int sourceHeight, float[] target, int targetWidth, int targetHeight) {
+        float scaleX = (float) sourceWidth / targetWidth;
+        float scaleY = (float) sourceHeight / targetHeight;
+        for (int y = 0; y < targetHeight; y++) {
+            float sy = Math.max(0f, Math.min(sourceHeight - 1f, (y + 0.5f) * scaleY - 0.5f));
+            int y0 = (int) sy;
+            int y1 = Math.min(y0 + 1, sourceHeight - 1);
+            float fy = sy - y0;
+            for (int x = 0; x < targetWidth; x++) {
+                float sx = Math.max(0f, Math.min(sourceWidth - 1f, (x + 0.5f) * scaleX - 0.5f));
+                int x0 = (int) sx;
+                int x1 = Math.min(x0 + 1, sourceWidth - 1);
+                float fx = sx - x0;
+                float top = source[y0 * sourceWidth + x0] + (source[y0 * sourceWidth + x1] - source[y0 * sourceWidth + x0]) * fx;
+                float bottom = source[y1 * sourceWidth + x0] + (source[y1 * sourceWidth + x1] - source[y1 * sourceWidth + x0]) * fx;
+                target[y * targetWidth + x] = top + (bottom - top) * fy;
+            }
+        }
+    }
+}
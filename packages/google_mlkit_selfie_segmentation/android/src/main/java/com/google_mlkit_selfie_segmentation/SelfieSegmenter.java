@@ -1,28 +1,36 @@
 package com.google_mlkit_selfie_segmentation;
 
 import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 
 import androidx.annotation.NonNull;
 
+import com.google.android.gms.tasks.Task;
 import com.google.mlkit.vision.common.InputImage;
 import com.google.mlkit.vision.segmentation.Segmentation;
 import com.google.mlkit.vision.segmentation.Segmenter;
 import com.google.mlkit.vision.segmentation.selfie.SelfieSegmenterOptions;
-import com.google_mlkit_commons.InputImageConverter;
+import com.google_mlkit_commons.ResultExecutor;
+import com.google_mlkit_commons.VisionAnalyzer;
+import com.google_mlkit_commons.VisionAnalyzers;
 
-import java.nio.ByteBuffer;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 
-public class SelfieSegmenter implements MethodChannel.MethodCallHandler {
+public class SelfieSegmenter implements MethodChannel.MethodCallHandler, VisionAnalyzer {
     private static final String START = "vision#startSelfieSegmenter";
     private static final String CLOSE = "vision#closeSelfieSegmenter";
+    private static final String REGISTER_BACKGROUND = "vision#registerSegmentationBackground";
+    private static final String UNREGISTER_BACKGROUND = "vision#unregisterSegmentationBackground";
 
     private final Context context;
-    private final Map<String, Segmenter> instances = new HashMap<>();
+    private final Map<String, Segmenter> instances = new ConcurrentHashMap<>();
+    private final Map<String, MaskEncoder> encoders = new ConcurrentHashMap<>();
+    private final Map<String, BackgroundCompositor> compositors = new ConcurrentHashMap<>();
 
     public SelfieSegmenter(Context context) {
         this.context = context;
@@ -33,12 +41,19 @@ public class SelfieSegmenter implements MethodChannel.MethodCallHandler {
         String method = call.method;
         switch (method) {
             case START:
-                handleDetection(call, result);
+                VisionAnalyzers.process(call, context, this, result);
                 break;
             case CLOSE:
                 closeDetector(call);
                 result.success(null);
                 break;
+            case REGISTER_BACKGROUND:
+                registerBackground(call, result);
+                break;
+            case UNREGISTER_BACKGROUND:
+                BackgroundCompositor.unregisterBackground(call.argument("backgroundId"));
+                result.success(null);
+                break;
             default:
                 result.notImplemented();
                 break;
@@ -63,53 +78,88 @@ public class SelfieSegmenter implements MethodChannel.MethodCallHandler {
         return Segmentation.getClient(options);
     }
 
-    private void handleDetection(MethodCall call, final MethodChannel.Result result) {
-        Map<String, Object> imageData = (Map<String, Object>) call.argument("imageData");
-        InputImage inputImage = InputImageConverter.getInputImageFromData(imageData, context, result);
-        if (inputImage == null) return;
-
+    @Override
+    public Task<?> analyze(@NonNull MethodCall call, @NonNull InputImage inputImage, @NonNull final MethodChannel.Result result) {
         String id = call.argument("id");
         Segmenter segmenter = instances.get(id);
         if (segmenter == null) {
             segmenter = initialize(call);
             instances.put(id, segmenter);
         }
-
-        segmenter.process(inputImage)
-                .addOnSuccessListener(
-                        segmentationMask -> {
-                            Map<String, Object> map = new HashMap<>();
-                            ByteBuffer mask = segmentationMask.getBuffer();
-                            int maskWidth = segmentationMask.getWidth();
-                            int maskHeight = segmentationMask.getHeight();
-
-                            map.put("width", maskWidth);
-                            map.put("height", maskHeight);
-
-                            final float[] confidences = new float[maskWidth * maskHeight];
-//                            mask.asFloatBuffer().get(confidences, 0, confidences.length);
-
-                            for (int y = 0; y < maskHeight; y++) {
-                                for (int x = 0; x < maskWidth; x++) {
-                                    // Gets the confidence of the (x,y) pixel in the mask being in the foreground.
-                                    // float foregroundConfidence = mask.getFloat();
-                                    confidences[y * maskWidth + x] = mask.getFloat();
+        Map<String, Object> background = call.argument("background");
+        if (background != null) {
+            BackgroundCompositor compositor = getCompositor(id);
+            return segmenter.process(inputImage)
+                    .addOnSuccessListener(ResultExecutor.get(),
+                            segmentationMask -> {
+                                try {
+                                    result.success(compositor.composite(inputImage, segmentationMask, background, START.equals(call.method)));
+                                } catch (RuntimeException e) {
+                                    result.error("Selfie segmentation failed!", e.getMessage(), null);
                                 }
-                            }
+                            })
+                    .addOnFailureListener(ResultExecutor.get(),
+                            e -> result.error("Selfie segmentation failed!", e.getMessage(), e));
+        }
 
-                            map.put("confidences", confidences);
+        MaskEncoder maskEncoder = getEncoder(id);
 
+        Integer outputWidth = call.argument("outputWidth");
+        Integer outputHeight = call.argument("outputHeight");
+        boolean quantize = Boolean.TRUE.equals(call.argument("quantizeMask"));
+        //Direct calls encode the result right away, so the arrays of the encoder can be sent as they are.
+        boolean reuse = START.equals(call.method);
+
+        return segmenter.process(inputImage)
+                .addOnSuccessListener(ResultExecutor.get(),
+                        segmentationMask -> {
+                            Map<String, Object> map = maskEncoder.encode(segmentationMask,
+                                    outputWidth != null ? outputWidth : 0, outputHeight != null ? outputHeight : 0, quantize, reuse);
                             result.success(map);
                         })
-                .addOnFailureListener(
+                .addOnFailureListener(ResultExecutor.get(),
                         e -> result.error("Selfie segmentation failed!", e.getMessage(), e));
     }
 
+    private BackgroundCompositor getCompositor(String id) {
+        BackgroundCompositor compositor = compositors.get(id);
+        if (compositor == null) {
+            compositor = new BackgroundCompositor();
+            compositors.put(id, compositor);
+        }
+        return compositor;
+    }
+
+    //Decodes an encoded image once, so composited frames can use it as their background by its id.
+    private void registerBackground(MethodCall call, MethodChannel.Result result) {
+        String backgroundId = call.argument("backgroundId");
+        byte[] bytes = call.argument("bytes");
+        Bitmap bitmap = bytes != null ? BitmapFactory.decodeByteArray(bytes, 0, bytes.length) : null;
+        if (backgroundId == null || bitmap == null) {
+            result.error("Selfie segmentation failed!", "Could not decode the background image", null);
+            return;
+        }
+        BackgroundCompositor.registerBackground(backgroundId, bitmap);
+        result.success(null);
+    }
+
+    private MaskEncoder getEncoder(String id) {
+        MaskEncoder encoder = encoders.get(id);
+        if (encoder == null) {
+            encoder = new MaskEncoder();
+            encoders.put(id, encoder);
+        }
+        return encoder;
+    }
+
     private void closeDetector(MethodCall call) {
         String id = call.argument("id");
+        VisionAnalyzers.close(this, id);
         Segmenter segmenter = instances.get(id);
         if (segmenter == null) return;
         segmenter.close();
         instances.remove(id);
+        encoders.remove(id);
+        compositors.remove(id);
     }
 }
@@ -1,3 +1,5 @@
+import 'dart:typed_data';
+
 import 'package:flutter/services.dart';
 import 'package:google_mlkit_commons/google_mlkit_commons.dart';
 
@@ -16,6 +18,19 @@ class SelfieSegmenter {
   // Consider using this option if you want to apply customized rescaling logic or rescaling is not needed for your use case.
   final bool enableRawSizeMask;
 
+  /// Resamples the mask natively to [outputWidth] x [outputHeight], if both
+  /// are set. Only used on Android.
+  final int? outputWidth;
+
+  /// See [outputWidth].
+  final int? outputHeight;
+
+  /// Whether the confidences are sent as one byte each instead of a float,
+  /// which is 4 times less data per frame at a precision of 1/255. The
+  /// [SegmentationMask.confidences] are read the same way either way. Only
+  /// used on Android.
+  final bool quantizeMask;
+
   /// Instance id.
   final id = DateTime.now().microsecondsSinceEpoch.toString();
 
@@ -23,6 +38,9 @@ class SelfieSegmenter {
   SelfieSegmenter({
     this.mode = SegmenterMode.stream,
     this.enableRawSizeMask = false,
+    this.outputWidth,
+    this.outputHeight,
+    this.quantizeMask = false,
   });
 
   /// Processes the given [InputImage] for segmentation.
@@ -30,15 +48,64 @@ class SelfieSegmenter {
   Future<SegmentationMask?> processImage(InputImage inputImage) async {
     final result = await _channel
         .invokeMethod('vision#startSelfieSegmenter', <String, dynamic>{
-      'id': id,
+      ..._arguments(),
+      'imageData': inputImage.toJson(),
+    });
+
+    return _parseResult(result);
+  }
+
+  /// Segments the given [InputImage] and puts the person in front of
+  /// [background], natively.
+  ///
+  /// Only the composited frame is sent back, the mask stays on the native
+  /// side. The image has to be a bitmap or a frame in the nv21 or yv12 format.
+  /// Only available on Android.
+  Future<CompositedImage?> compositeImage(
+      InputImage inputImage, SegmentationBackground background) async {
+    final result = await _channel
+        .invokeMethod('vision#startSelfieSegmenter', <String, dynamic>{
+      ..._arguments(),
+      'background': background.toJson(),
       'imageData': inputImage.toJson(),
-      'isStream': mode == SegmenterMode.stream,
-      'enableRawSizeMask': enableRawSizeMask,
     });
 
-    return result == null ? null : SegmentationMask.fromJson(result);
+    return result == null ? null : CompositedImage.fromJson(result);
   }
 
+  /// Decodes [encodedImage], e.g. a JPEG or PNG, once so that
+  /// [SegmentationBackground.image] can refer to it by [backgroundId].
+  static Future<void> registerBackground(
+          String backgroundId, Uint8List encodedImage) =>
+      _channel.invokeMethod('vision#registerSegmentationBackground',
+          {'backgroundId': backgroundId, 'bytes': encodedImage});
+
+  /// Releases a background registered with [registerBackground].
+  static Future<void> unregisterBackground(String backgroundId) =>
+      _channel.invokeMethod('vision#unregisterSegmentationBackground',
+          {'backgroundId': backgroundId});
+
+  /// Returns this segmenter as a [VisionAnalysis] for [VisionAnalyzer.analyze],
+  /// optionally running on a copy of the image no larger than [maxDimension].
+  VisionAnalysis<SegmentationMask?> analysis({int? maxDimension}) =>
+      VisionAnalysis(
+          type: 'selfie_segmentation',
+          arguments: _arguments(),
+          parse: _parseResult,
+          maxDimension: maxDimension);
+
+  Map<String, dynamic> _arguments() => <String, dynamic>{
+        'id': id,
+        'isStream': mode == SegmenterMode.stream,
+        'enableRawSizeMask': enableRawSizeMask,
+        'outputWidth': outputWidth,
+        'outputHeight': outputHeight,
+        'quantizeMask': quantizeMask,
+      };
+
+  static SegmentationMask? _parseResult(dynamic result) =>
+      result == null ? null : SegmentationMask.fromJson(result);
+
   /// Closes the detector and releases its resources.
   Future<void> close() =>
       _channel.invokeMethod('vision#closeSelfieSegmenter', {'id': id});
@@ -57,6 +124,121 @@ enum SegmenterMode {
   stream,
 }
 
+/// The format of a [CompositedImage].
+enum CompositedImageFormat {
+  /// A JPEG image.
+  jpeg,
+
+  /// Raw R, G, B, A bytes, row by row.
+  rgba,
+}
+
+/// What [SelfieSegmenter.compositeImage] puts behind the person of a frame.
+class SegmentationBackground {
+  /// A solid ARGB color.
+  final int? color;
+
+  /// The frame itself, blurred by this radius in pixels.
+  final int? blurRadius;
+
+  /// An image registered with [SelfieSegmenter.registerBackground], scaled to
+  /// cover the frame.
+  final String? backgroundId;
+
+  /// How soft the edge of the person is, as the range of confidences around
+  /// 0.5 that blend between the person and the background, from 0 to 0.5.
+  final double feather;
+
+  /// The format the composited frame is sent in.
+  final CompositedImageFormat format;
+
+  /// The quality of [CompositedImageFormat.jpeg] frames, from 0 to 100.
+  final int jpegQuality;
+
+  const SegmentationBackground._(
+      {this.color,
+      this.blurRadius,
+      this.backgroundId,
+      this.feather = 0.1,
+      this.format = CompositedImageFormat.jpeg,
+      this.jpegQuality = 80});
+
+  /// A solid background of the ARGB [color], e.g. `0xFF00FF00`.
+  const SegmentationBackground.color(int color,
+      {double feather = 0.1,
+      CompositedImageFormat format = CompositedImageFormat.jpeg,
+      int jpegQuality = 80})
+      : this._(
+            color: color,
+            feather: feather,
+            format: format,
+            jpegQuality: jpegQuality);
+
+  /// The frame itself, blurred by [radius] pixels.
+  const SegmentationBackground.blur(int radius,
+      {double feather = 0.1,
+      CompositedImageFormat format = CompositedImageFormat.jpeg,
+      int jpegQuality = 80})
+      : this._(
+            blurRadius: radius,
+            feather: feather,
+            format: format,
+            jpegQuality: jpegQuality);
+
+  /// The image registered as [backgroundId].
+  const SegmentationBackground.image(String backgroundId,
+      {double feather = 0.1,
+      CompositedImageFormat format = CompositedImageFormat.jpeg,
+      int jpegQuality = 80})
+      : this._(
+            backgroundId: backgroundId,
+            feather: feather,
+            format: format,
+            jpegQuality: jpegQuality);
+
+  /// Returns a json representation of an instance of [SegmentationBackground].
+  Map<String, dynamic> toJson() => {
+        'color': color,
+        'radius': blurRadius,
+        'image': backgroundId,
+        'feather': feather,
+        'format': format.name,
+        'quality': jpegQuality,
+      };
+}
+
+/// A frame composited by [SelfieSegmenter.compositeImage].
+class CompositedImage {
+  /// The width of the image.
+  final int width;
+
+  /// The height of the image.
+  final int height;
+
+  /// The format of [bytes].
+  final CompositedImageFormat format;
+
+  /// The encoded image.
+  final Uint8List bytes;
+
+  /// Constructor to create an instance of [CompositedImage].
+  CompositedImage({
+    required this.width,
+    required this.height,
+    required this.format,
+    required this.bytes,
+  });
+
+  /// Returns an instance of [CompositedImage] from a given [json].
+  factory CompositedImage.fromJson(Map<dynamic, dynamic> json) =>
+      CompositedImage(
+        width: json['width'] as int,
+        height: json['height'] as int,
+        format: CompositedImageFormat.values.byName(json['format']),
+        bytes: json['bytes'],
+      );
+}
+
 /// The result from a [Segmenter] operation.
 class SegmentationMask {
   /// The width of the mask.
@@ -77,11 +259,13 @@ class SegmentationMask {
 
   /// Returns an instance of [SegmentationMask] from a given [json].
   factory SegmentationMask.fromJson(Map<dynamic, dynamic> json) {
+    final quantized = json['quantizedConfidences'];
     final values = json['confidences'];
-    final List<double> confidences = [];
-    for (final item in values) {
-      confidences.add(double.parse(item.toString()));
-    }
+    final List<double> confidences = quantized is Uint8List
+        ? QuantizedConfidences(quantized)
+        : values is List<double>
+            ? values
+            : List<double>.from(values);
     return SegmentationMask(
       width: json['width'] as int,
       height: json['height'] as int,
@@ -0,0 +1,117 @@
+package com.google_mlkit_subject_segmentation;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Build;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+//Encodes the bitmaps of a segmentation result in the "bitmapEncoding" the options ask for, on a pool of worker threads,
+//so the bitmaps of several subjects are encoded in parallel and the results thread is not blocked meanwhile.
+class BitmapEncoder {
+    static final String PNG = "png";
+    static final String WEBP_LOSSLESS = "webpLossless";
+    static final String JPEG = "jpeg";
+    static final String RGBA = "rgba";
+    static final String FILE = "file";
+
+    private static final ExecutorService workers = Executors.newFixedThreadPool(
+            Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() - 1)), runnable -> {
+                Thread thread = new Thread(runnable, "google_mlkit_subject_encoder");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final String encoding;
+    private final int quality;
+    private final File directory;
+
+    BitmapEncoder(String encoding, int quality, File directory) {
+        this.encoding = encoding;
+        this.quality = quality;
+        this.directory = directory;
+    }
+
+    //Plain PNG bytes keep the result as it was before encodings could be chosen.
+    boolean isLegacy() {
+        return PNG.equals(encoding);
+    }
+
+    Task<Object> encode(Bitmap bitmap) {
+        return Tasks.call(workers, () -> isLegacy() ? compress(bitmap, Bitmap.CompressFormat.PNG, 100) : encodeToMap(bitmap));
+    }
+
+    //Returns the "format", "width" and "height" of the bitmap, and its "bytes" or the "path" of the file holding them.
+    private Map<String, Object> encodeToMap(Bitmap bitmap) throws IOException {
+        Map<String, Object> data = new HashMap<>();
+        data.put("format", encoding);
+        data.put("width", bitmap.getWidth());
+        data.put("height", bitmap.getHeight());
+        switch (encoding) {
+            case WEBP_LOSSLESS:
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+                    data.put("bytes", compress(bitmap, Bitmap.CompressFormat.WEBP_LOSSLESS, 100));
+                } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                    //Before Android 11 there is no explicit lossless format, WEBP at quality 100 is lossless on Android 10.
+                    data.put("bytes", compress(bitmap, Bitmap.CompressFormat.WEBP, 100));
+                } else {
+                    //Before Android 10 WEBP is always lossy, the mask is sent as PNG instead.
+                    data.put("format", PNG);
+                    data.put("bytes", compress(bitmap, Bitmap.CompressFormat.PNG, 100));
+                }
+                break;
+            case JPEG:
+                //JPEG has no alpha channel, the alpha of every pixel is sent next to it as one byte.
+                data.put("bytes", compress(bitmap, Bitmap.CompressFormat.JPEG, quality));
+                data.put("alpha", getAlpha(bitmap));
+                break;
+            case RGBA:
+                ByteBuffer pixels = ByteBuffer.allocate(bitmap.getByteCount());
+                bitmap.copyPixelsToBuffer(pixels);
+                data.put("bytes", pixels.array());
+                break;
+            case FILE:
+                File file = File.createTempFile("subject", ".png", directory);
+                try (OutputStream outputStream = new FileOutputStream(file)) {
+                    bitmap.compress(Bitmap.CompressFormat.PNG, 100, outputStream);
+                }
+                data.put("path", file.getAbsolutePath());
+                break;
+            default:
+                throw new IllegalArgumentException("Not a bitmap encoding: " + encoding);
+        }
+        return data;
+    }
+
+    private static byte[] compress(Bitmap bitmap, Bitmap.CompressFormat format, int quality) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        bitmap.compress(format, quality, outputStream);
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] getAlpha(Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] row = new int[width];
+        byte[] alpha = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            for (int x = 0; x < width; x++) {
+                alpha[y * width + x] = (byte) Color.alpha(row[x]);
+            }
+        }
+        return alpha;
+    }
+}
@@ -0,0 +1,86 @@
+package com.google_mlkit_subject_segmentation;
+
+import java.nio.FloatBuffer;
+import java.util.Map;
+
+//Puts confidence masks into a result the way the options ask for: as floats, quantized to one byte per pixel, or as
+//the run lengths of the mask thresholded at "maskThreshold". Subject masks that cover the whole image can be cropped
+//to the box of their subject, since they are empty outside of it.
+class ConfidenceMaskEncoder {
+    private final boolean cropSubjectMasks;
+    private final boolean quantize;
+    private final Double threshold;
+
+    ConfidenceMaskEncoder(Map<String, Object> options) {
+        cropSubjectMasks = options != null && Boolean.TRUE.equals(options.get("cropSubjectMasks"));
+        quantize = options != null && Boolean.TRUE.equals(options.get("quantizeMasks"));
+        Object maskThreshold = options != null ? options.get("maskThreshold") : null;
+        threshold = maskThreshold instanceof Number ? ((Number) maskThreshold).doubleValue() : null;
+    }
+
+    //Puts the mask of the whole image into [data] under [key].
+    void putMask(Map<String, Object> data, String key, FloatBuffer mask, int width, int height) {
+        float[] values = new float[mask.remaining()];
+        mask.get(values);
+        put(data, key, values, width, height);
+    }
+
+    //Puts the mask of a subject into [data] under "confidenceMask". ML Kit may size it to the subject or to the image.
+    void putSubjectMask(Map<String, Object> data, FloatBuffer mask, int startX, int startY, int width, int height,
+                        int imageWidth, int imageHeight) {
+        float[] values = new float[mask.remaining()];
+        mask.get(values);
+        if (values.length == width * height) {
+            put(data, "confidenceMask", values, width, height);
+        } else if (cropSubjectMasks && values.length == imageWidth * imageHeight
+                && startX >= 0 && startY >= 0 && startX + width <= imageWidth && startY + height <= imageHeight) {
+            float[] cropped = new float[width * height];
+            for (int y = 0; y < height; y++) {
+                System.arraycopy(values, (startY + y) * imageWidth + startX, cropped, y * width, width);
+            }
+            put(data, "confidenceMask", cropped, width, height);
+        } else {
+            put(data, "confidenceMask", values, imageWidth, imageHeight);
+        }
+    }
+
+    //The floats go under [key], bytes under [key]"Bytes" and runs under [key]"Runs", next to the size of the mask.
+    private void put(Map<String, Object> data, String key, float[] values, int width, int height) {
+        if (threshold != null) {
+            data.put(key + "Runs", runLengths(values, threshold.floatValue()));
+        } else if (quantize) {
+            byte[] bytes = new byte[values.length];
+            for (int i = 0; i < values.length; i++) {
+                bytes[i] = (byte) Math.round(Math.max(0f, Math.min(1f, values[i])) * 255f);
+            }
+            data.put(key + "Bytes", bytes);
+        } else {
+            data.put(key, values);
+        }
+        data.put(key + "Width", width);
+        data.put(key + "Height", height);
+    }
+
+    //Lengths of the alternating runs of pixels below and at or above [threshold], row by row, starting below it.
+    static int[] runLengths(float[] values, float threshold) {
+        int count = 1;
+        boolean inside = false;
+        for (float value : values) {
+            if ((value >= threshold) != inside) {
+                inside = !inside;
+                count++;
+            }
+        }
+        int[] runs = new int[count];
+        int run = 0;
+        inside = false;
+        for (float value : values) {
+            if ((value >= threshold) != inside) {
+                inside = !inside;
+                run++;
+            }
+            runs[run]++;
+        }
+        return runs;
+    }
+}
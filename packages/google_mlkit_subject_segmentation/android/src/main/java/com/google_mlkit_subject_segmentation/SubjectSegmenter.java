@@ -5,31 +5,35 @@ import android.graphics.Bitmap;
 
 import androidx.annotation.NonNull;
 
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
 import com.google.mlkit.vision.common.InputImage;
 import com.google.mlkit.vision.segmentation.subject.Subject;
 import com.google.mlkit.vision.segmentation.subject.SubjectSegmentation;
 import com.google.mlkit.vision.segmentation.subject.SubjectSegmentationResult;
 
-import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.nio.FloatBuffer;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 
 import com.google.mlkit.vision.segmentation.subject.SubjectSegmenterOptions;
-import com.google_mlkit_commons.InputImageConverter;
+import com.google_mlkit_commons.ResultExecutor;
+import com.google_mlkit_commons.VisionAnalyzer;
+import com.google_mlkit_commons.VisionAnalyzers;
 
-public class SubjectSegmenter implements MethodChannel.MethodCallHandler {
+public class SubjectSegmenter implements MethodChannel.MethodCallHandler, VisionAnalyzer {
     private static final String START = "vision#startSubjectSegmenter";
     private static final String CLOSE = "vision#closeSubjectSegmenter";
 
     private final Context context;
 
-    private final Map<String, com.google.mlkit.vision.segmentation.subject.SubjectSegmenter> instances = new HashMap<>();
+    private final Map<String, com.google.mlkit.vision.segmentation.subject.SubjectSegmenter> instances = new ConcurrentHashMap<>();
 
     public SubjectSegmenter(Context context) {
         this.context = context;
@@ -40,7 +44,7 @@ public class SubjectSegmenter implements MethodChannel.MethodCallHandler {
         String method = call.method;
         switch (method) {
             case START:
-                handleDetection(call, result);
+                VisionAnalyzers.process(call, context, this, result);
                 break;
             case CLOSE:
                 closeDetector(call);
@@ -52,14 +56,17 @@ public class SubjectSegmenter implements MethodChannel.MethodCallHandler {
         }
     }
 
-    private void handleDetection(MethodCall call, MethodChannel.Result result) {
-        Map<String, Object> imageData = (Map<String, Object>) call.argument("imageData");
-        InputImage inputImage = InputImageConverter.getInputImageFromData(imageData, context, result);
-        if (inputImage == null) return;
-
+    @Override
+    public Task<?> analyze(@NonNull MethodCall call, @NonNull InputImage inputImage, @NonNull final MethodChannel.Result result) {
         String id = call.argument("id");
         com.google.mlkit.vision.segmentation.subject.SubjectSegmenter subjectSegmenter = getOrCreateSegmenter(id, call);
-        subjectSegmenter.process(inputImage).addOnSuccessListener(subjectSegmentationResult -> processResult(subjectSegmentationResult, result)).addOnFailureListener(e -> result.error("Subject segmentation failure!", e.getMessage(), e));
+        BitmapEncoder encoder = getBitmapEncoder(call.argument("options"));
+        ConfidenceMaskEncoder maskEncoder = new ConfidenceMaskEncoder(call.argument("options"));
+        //Masks are laid out like the upright image.
+        boolean upright = inputImage.getRotationDegrees() % 180 == 0;
+        int imageWidth = upright ? inputImage.getWidth() : inputImage.getHeight();
+        int imageHeight = upright ? inputImage.getHeight() : inputImage.getWidth();
+        return subjectSegmenter.process(inputImage).addOnSuccessListener(ResultExecutor.get(), subjectSegmentationResult -> processResult(subjectSegmentationResult, encoder, maskEncoder, imageWidth, imageHeight, result)).addOnFailureListener(ResultExecutor.get(), e -> result.error("Subject segmentation failure!", e.getMessage(), e));
     }
 
     private com.google.mlkit.vision.segmentation.subject.SubjectSegmenter getOrCreateSegmenter(String id, MethodCall call) {
@@ -95,35 +102,65 @@ public class SubjectSegmenter implements MethodChannel.MethodCallHandler {
         }
     }
 
-    private void processResult(SubjectSegmentationResult subjectSegmentationResult, MethodChannel.Result result) {
+    private BitmapEncoder getBitmapEncoder(Map<String, Object> options) {
+        Object encoding = options != null ? options.get("bitmapEncoding") : null;
+        Object quality = options != null ? options.get("jpegQuality") : null;
+        return new BitmapEncoder(
+                encoding != null ? (String) encoding : BitmapEncoder.PNG,
+                quality instanceof Integer ? (Integer) quality : 90,
+                context.getCacheDir());
+    }
+
+    //Bitmaps are encoded on the worker pool of BitmapEncoder, the result is sent once all of them are done.
+    private void processResult(SubjectSegmentationResult subjectSegmentationResult, BitmapEncoder encoder, ConfidenceMaskEncoder maskEncoder,
+                               int imageWidth, int imageHeight, MethodChannel.Result result) {
         Map<String, Object> resultMap = new HashMap<>();
+        List<Task<Object>> encodings = new ArrayList<>();
+        //Where the result of each encoding goes: the map it is put into and its key.
+        List<Map<String, Object>> targets = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
         FloatBuffer foregroundConfidenceMask = subjectSegmentationResult.getForegroundConfidenceMask();
         if (foregroundConfidenceMask != null) {
-            resultMap.put("foregroundConfidenceMask", getConfidenceMask(foregroundConfidenceMask));
+            maskEncoder.putMask(resultMap, "foregroundConfidenceMask", foregroundConfidenceMask, imageWidth, imageHeight);
         }
         Bitmap foregroundBitmap = subjectSegmentationResult.getForegroundBitmap();
         if (foregroundBitmap != null) {
-            resultMap.put("foregroundBitmap", getBitmapBytes(foregroundBitmap));
+            encodings.add(encoder.encode(foregroundBitmap));
+            targets.add(resultMap);
+            keys.add("foregroundBitmap");
         }
         List<Map<String, Object>> subjectsData = new ArrayList<>();
         for (Subject subject : subjectSegmentationResult.getSubjects()) {
             Map<String, Object> subjectData = getStringObjectMap(subject);
+            FloatBuffer confidenceMask = subject.getConfidenceMask();
+            if (confidenceMask != null) {
+                maskEncoder.putSubjectMask(subjectData, confidenceMask, subject.getStartX(), subject.getStartY(),
+                        subject.getWidth(), subject.getHeight(), imageWidth, imageHeight);
+            }
+            Bitmap bitmap = subject.getBitmap();
+            if (bitmap != null) {
+                encodings.add(encoder.encode(bitmap));
+                targets.add(subjectData);
+                keys.add("bitmap");
+            }
             subjectsData.add(subjectData);
         }
         resultMap.put("subjects", subjectsData);
-        result.success(resultMap);
-    }
-
-    private static float[] getConfidenceMask(FloatBuffer floatBuffer) {
-        float[] mask = new float[floatBuffer.remaining()];
-        floatBuffer.get(mask);
-        return mask;
-    }
-
-    private static byte[] getBitmapBytes(Bitmap bitmap) {
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.PNG, 100, outputStream);
-        return outputStream.toByteArray();
+        if (encodings.isEmpty()) {
+            result.success(resultMap);
+            return;
+        }
+        Tasks.whenAll(encodings).addOnCompleteListener(ResultExecutor.get(), task -> {
+            if (task.isSuccessful()) {
+                for (int i = 0; i < encodings.size(); i++) {
+                    targets.get(i).put(keys.get(i), encodings.get(i).getResult());
+                }
+                result.success(resultMap);
+            } else {
+                Exception e = task.getException();
+                result.error("Subject segmentation failure!", e != null ? e.getMessage() : null, null);
+            }
+        });
     }
 
     @NonNull
@@ -133,19 +170,12 @@ public class SubjectSegmenter implements MethodChannel.MethodCallHandler {
         subjectData.put("startY", subject.getStartY());
         subjectData.put("width", subject.getWidth());
         subjectData.put("height", subject.getHeight());
-        FloatBuffer confidenceMask = subject.getConfidenceMask();
-        if (confidenceMask != null) {
-            subjectData.put("confidenceMask", getConfidenceMask(confidenceMask));
-        }
-        Bitmap bitmap = subject.getBitmap();
-        if (bitmap != null) {
-            subjectData.put("bitmap", getBitmapBytes(bitmap));
-        }
         return subjectData;
     }
 
     private void closeDetector(MethodCall call) {
         String id = call.argument("id");
+        VisionAnalyzers.close(this, id);
         com.google.mlkit.vision.segmentation.subject.SubjectSegmenter subjectSegmenter = instances.get(id);
         if (subjectSegmenter == null) return;
         subjectSegmenter.close();
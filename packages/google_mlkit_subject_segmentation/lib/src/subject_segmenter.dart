@@ -22,9 +22,8 @@ class SubjectSegmenter {
   Future<SubjectSegmentationResult> processImage(InputImage inputImage) async {
     final results = await _channel
         .invokeMethod('vision#startSubjectSegmenter', <String, dynamic>{
-      'id': id,
+      ..._arguments(),
       'imageData': inputImage.toJson(),
-      'options': options.toJson(),
     });
     // Convert the JSON response from the platform into a SubjectSegmentationResult instance.
     final SubjectSegmentationResult masks =
@@ -32,6 +31,20 @@ class SubjectSegmenter {
     return masks;
   }
 
+  /// Returns this segmenter as a [VisionAnalysis] for [VisionAnalyzer.analyze],
+  /// optionally running on a copy of the image no larger than [maxDimension].
+  VisionAnalysis<SubjectSegmentationResult> analysis({int? maxDimension}) =>
+      VisionAnalysis(
+          type: 'subject_segmentation',
+          arguments: _arguments(),
+          parse: (results) => SubjectSegmentationResult.fromJson(results),
+          maxDimension: maxDimension);
+
+  Map<String, dynamic> _arguments() => <String, dynamic>{
+        'id': id,
+        'options': options.toJson(),
+      };
+
   /// Closes the detector and releases its resources associated with it.
   ///
   /// This should be called when the detector is no longer needed to free up
@@ -49,6 +62,11 @@ class SubjectSegmenterOptions {
     required this.enableForegroundBitmap,
     required this.enableForegroundConfidenceMask,
     required this.enableMultipleSubjects,
+    this.bitmapEncoding = SubjectBitmapEncoding.png,
+    this.jpegQuality = 90,
+    this.cropSubjectMasks = false,
+    this.quantizeMasks = false,
+    this.maskThreshold,
   });
 
   /// Enables foreground bitmap in [SubjectSegmentationResult].
@@ -60,14 +78,115 @@ class SubjectSegmenterOptions {
   /// Enables multiple subjects in [SubjectSegmentationResult].
   final SubjectResultOptions enableMultipleSubjects;
 
+  /// How the foreground and subject bitmaps are encoded, see
+  /// [SubjectSegmentationResult.foregroundEncodedBitmap]. Bitmaps are encoded
+  /// in parallel on the native side. Only used on Android, where the default
+  /// [SubjectBitmapEncoding.png] is the slowest.
+  final SubjectBitmapEncoding bitmapEncoding;
+
+  /// The quality of [SubjectBitmapEncoding.jpeg] bitmaps, from 0 to 100.
+  final int jpegQuality;
+
+  /// Whether the confidence mask of each [Subject] is cropped to the box of
+  /// the subject, see [Subject.maskWidth]. Only used on Android.
+  final bool cropSubjectMasks;
+
+  /// Whether confidence masks are sent as one byte per pixel instead of a
+  /// float, at a precision of 1/255. They are read the same way either way.
+  /// Only used on Android.
+  final bool quantizeMasks;
+
+  /// If set, confidence masks are sent as the [RunLengthMask] of the pixels
+  /// with at least this confidence instead of the confidences themselves.
+  /// Only used on Android.
+  final double? maskThreshold;
+
   /// Returns a json representation of an instance of [SubjectSegmenterOptions].
   Map<String, dynamic> toJson() => {
         'enableForegroundBitmap': enableForegroundBitmap,
         'enableForegroundConfidenceMask': enableForegroundConfidenceMask,
         'enableMultiSubjectBitmap': enableMultipleSubjects.toJson(),
+        'bitmapEncoding': bitmapEncoding.name,
+        'jpegQuality': jpegQuality,
+        'cropSubjectMasks': cropSubjectMasks,
+        'quantizeMasks': quantizeMasks,
+        'maskThreshold': maskThreshold,
       };
 }
 
+/// How [SubjectSegmenter] encodes bitmaps.
+enum SubjectBitmapEncoding {
+  /// A PNG image.
+  png,
+
+  /// A lossless WebP image. Before Android 10, where WebP is always lossy,
+  /// the bitmap is a PNG image and its [EncodedBitmap.encoding] is
+  /// [SubjectBitmapEncoding.png].
+  webpLossless,
+
+  /// A JPEG image of the colors, with the alpha of each pixel in
+  /// [EncodedBitmap.alpha].
+  jpeg,
+
+  /// Raw R, G, B, A bytes with premultiplied alpha, row by row.
+  rgba,
+
+  /// A PNG file in the cache directory of the app, at [EncodedBitmap.path].
+  /// The app deletes the file once it is done with it.
+  file,
+}
+
+/// A bitmap of a [SubjectSegmentationResult], as [SubjectBitmapEncoding]
+/// asks for it.
+class EncodedBitmap {
+  /// The encoding of the bitmap.
+  final SubjectBitmapEncoding encoding;
+
+  /// The width of the bitmap, null when [SubjectBitmapEncoding.png] was
+  /// asked for.
+  final int? width;
+
+  /// The height of the bitmap, null when [SubjectBitmapEncoding.png] was
+  /// asked for.
+  final int? height;
+
+  /// The encoded bitmap, null for [SubjectBitmapEncoding.file].
+  final Uint8List? bytes;
+
+  /// The alpha of every pixel, row by row, for [SubjectBitmapEncoding.jpeg].
+  final Uint8List? alpha;
+
+  /// The file holding the bitmap, for [SubjectBitmapEncoding.file].
+  final String? path;
+
+  /// Constructor to create an instance of [EncodedBitmap].
+  EncodedBitmap({
+    required this.encoding,
+    this.width,
+    this.height,
+    this.bytes,
+    this.alpha,
+    this.path,
+  });
+
+  /// Returns an instance of [EncodedBitmap] from a given [json], which is the
+  /// bytes of a PNG image or a map for the other encodings.
+  static EncodedBitmap? fromJson(dynamic json) {
+    if (json == null) return null;
+    if (json is Uint8List) {
+      return EncodedBitmap(encoding: SubjectBitmapEncoding.png, bytes: json);
+    }
+    return EncodedBitmap(
+      encoding: SubjectBitmapEncoding.values.byName(json['format']),
+      width: json['width'],
+      height: json['height'],
+      bytes: json['bytes'],
+      alpha: json['alpha'],
+      path: json['path'],
+    );
+  }
+}
+
 /// A class to represent options for results in [Subject].
 class SubjectResultOptions {
   /// Enables confidence mask for segmented [Subject]s.
@@ -96,11 +215,21 @@ class SubjectSegmentationResult {
   /// Returns null if it is not enabled by [SubjectSegmenterOptions.enableForegroundConfidenceMask]
   final Uint8List? foregroundBitmap;
 
+  /// Returns the masked bitmap for the input image, encoded as
+  /// [SubjectSegmenterOptions.bitmapEncoding] asks for.
+  ///
+  /// Its [EncodedBitmap.bytes] are the [foregroundBitmap].
+  final EncodedBitmap? foregroundEncodedBitmap;
+
   /// Returns the foreground confidence mask for the input image.
   ///
   /// Returns null if it is not enabled by [SubjectSegmenterOptions.enableForegroundConfidenceMask]
   final List<double>? foregroundConfidenceMask;
 
+  /// Returns the foreground mask as runs, if
+  /// [SubjectSegmenterOptions.maskThreshold] is set.
+  final RunLengthMask? foregroundMaskRuns;
+
   /// Returns all segmented Subjects from the input image.
   ///
   /// Returns an empty list if multiple subjects are not enabled by [SubjectSegmenterOptions.enableMultipleSubjects]
@@ -110,7 +239,9 @@ class SubjectSegmentationResult {
   SubjectSegmentationResult({
     required this.subjects,
     this.foregroundBitmap,
+    this.foregroundEncodedBitmap,
     this.foregroundConfidenceMask,
+    this.foregroundMaskRuns,
   });
 
   /// Returns an instance of [SubjectSegmentationResult] from json
@@ -121,10 +252,15 @@ class SubjectSegmentationResult {
           .map((json) => Subject.fromJson(json as Map))
           .toList();
     }
+    final foregroundBitmap = EncodedBitmap.fromJson(json['foregroundBitmap']);
     return SubjectSegmentationResult(
       subjects: subjects ?? [],
-      foregroundConfidenceMask: json['foregroundConfidenceMask'],
-      foregroundBitmap: json['foregroundBitmap'],
+      foregroundConfidenceMask:
+          _confidenceMask(json, 'foregroundConfidenceMask'),
+      foregroundMaskRuns:
+          RunLengthMask._fromJson(json, 'foregroundConfidenceMask'),
+      foregroundBitmap: foregroundBitmap?.bytes,
+      foregroundEncodedBitmap: foregroundBitmap,
     );
   }
 }
@@ -148,11 +284,28 @@ class Subject {
   /// Returns null if it is not enabled by [SubjectResultOptions.enableConfidenceMask]
   final List<double>? confidenceMask;
 
+  /// The width of [confidenceMask] or [maskRuns]: [width] if the mask is
+  /// cropped to this subject, or the width of the image.
+  final int? maskWidth;
+
+  /// The height of [confidenceMask] or [maskRuns], see [maskWidth].
+  final int? maskHeight;
+
+  /// Returns the mask as runs, if [SubjectSegmenterOptions.maskThreshold] is
+  /// set.
+  final RunLengthMask? maskRuns;
+
   /// Returns the masked bitmap for this subject.
   ///
   /// Returns null if it is not enabled by [SubjectResultOptions.enableSubjectBitmap]
   final Uint8List? bitmap;
 
+  /// Returns the masked bitmap for this subject, encoded as
+  /// [SubjectSegmenterOptions.bitmapEncoding] asks for.
+  ///
+  /// Its [EncodedBitmap.bytes] are the [bitmap].
+  final EncodedBitmap? encodedBitmap;
+
   /// Constructor to create a instance of [Subject].
   Subject({
     required this.startX,
@@ -160,16 +313,71 @@ class Subject {
     required this.width,
     required this.height,
     this.confidenceMask,
+    this.maskWidth,
+    this.maskHeight,
+    this.maskRuns,
     this.bitmap,
+    this.encodedBitmap,
   });
 
   /// Creates an instance of [Subject] from a given json.
-  factory Subject.fromJson(Map<dynamic, dynamic> json) => Subject(
-        startX: json['startX'] as int,
-        startY: json['startY'] as int,
-        width: json['width'] as int,
-        height: json['height'] as int,
-        confidenceMask: json['confidenceMask'],
-        bitmap: json['bitmap'],
-      );
+  factory Subject.fromJson(Map<dynamic, dynamic> json) {
+    final bitmap = EncodedBitmap.fromJson(json['bitmap']);
+    return Subject(
+      startX: json['startX'] as int,
+      startY: json['startY'] as int,
+      width: json['width'] as int,
+      height: json['height'] as int,
+      confidenceMask: _confidenceMask(json, 'confidenceMask'),
+      maskWidth: json['confidenceMaskWidth'],
+      maskHeight: json['confidenceMaskHeight'],
+      maskRuns: RunLengthMask._fromJson(json, 'confidenceMask'),
+      bitmap: bitmap?.bytes,
+      encodedBitmap: bitmap,
+    );
+  }
+}
+
+/// Reads the confidences under [key], which were sent as floats or as one byte
+/// each.
+List<double>? _confidenceMask(Map<dynamic, dynamic> json, String key) {
+  final bytes = json['${key}Bytes'];
+  return bytes is Uint8List ? QuantizedConfidences(bytes) : json[key];
+}
+
+/// A binary mask sent as the lengths of its alternating runs, row by row.
+///
+/// The first run is of pixels outside of the mask, and may be empty.
+class RunLengthMask {
+  /// The width of the mask.
+  final int width;
+
+  /// The height of the mask.
+  final int height;
+
+  /// The lengths of the runs, alternating between outside and inside.
+  final List<int> runs;
+
+  /// Constructor to create an instance of [RunLengthMask].
+  RunLengthMask(
+      {required this.width, required this.height, required this.runs});
+
+  static RunLengthMask? _fromJson(Map<dynamic, dynamic> json, String key) {
+    final runs = json['${key}Runs'];
+    if (runs == null) return null;
+    return RunLengthMask(
+        width: json['${key}Width'], height: json['${key}Height'], runs: runs);
+  }
+
+  /// Expands the runs into one byte per pixel, 1 inside and 0 outside.
+  Uint8List toBytes() {
+    final bytes = Uint8List(width * height);
+    int position = 0;
+    for (int i = 0; i < runs.length; i++) {
+      final end = position + runs[i];
+      if (i.isOdd) bytes.fillRange(position, end, 1);
+      position = end;
+    }
+    return bytes;
+  }
 }
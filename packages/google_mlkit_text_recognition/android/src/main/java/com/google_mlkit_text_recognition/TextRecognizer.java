@@ -5,7 +5,10 @@ import android.graphics.Point;
 import android.graphics.Rect;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
 import com.google.mlkit.vision.common.InputImage;
 import com.google.mlkit.vision.text.Text;
 import com.google.mlkit.vision.text.TextRecognition;
@@ -14,22 +17,35 @@ import com.google.mlkit.vision.text.devanagari.DevanagariTextRecognizerOptions;
 import com.google.mlkit.vision.text.japanese.JapaneseTextRecognizerOptions;
 import com.google.mlkit.vision.text.korean.KoreanTextRecognizerOptions;
 import com.google.mlkit.vision.text.latin.TextRecognizerOptions;
+import com.google_mlkit_commons.ImageTransform;
 import com.google_mlkit_commons.InputImageConverter;
+import com.google_mlkit_commons.PackedResultCodec;
+import com.google_mlkit_commons.ResultExecutor;
+import com.google_mlkit_commons.VisionAnalyzer;
+import com.google_mlkit_commons.VisionAnalyzers;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 
-public class TextRecognizer implements MethodChannel.MethodCallHandler {
+public class TextRecognizer implements MethodChannel.MethodCallHandler, VisionAnalyzer {
     private static final String START = "vision#startTextRecognizer";
     private static final String CLOSE = "vision#closeTextRecognizer";
 
+    static final int GRANULARITY_BLOCKS = 1;
+    static final int GRANULARITY_LINES = 2;
+    static final int GRANULARITY_ELEMENTS = 3;
+    static final int GRANULARITY_SYMBOLS = 4;
+
     private final Context context;
-    private final Map<String, com.google.mlkit.vision.text.TextRecognizer> instances = new HashMap<>();
+    private final Map<String, com.google.mlkit.vision.text.TextRecognizer> instances = new ConcurrentHashMap<>();
 
     public TextRecognizer(Context context) {
         this.context = context;
@@ -40,7 +56,11 @@ public class TextRecognizer implements MethodChannel.MethodCallHandler {
         String method = call.method;
         switch (method) {
             case START:
-                handleDetection(call, result);
+                if (call.argument("tiling") != null) {
+                    recognizeTiles(call, PackedResultCodec.isRequested(call) ? PackedResultCodec.wrap(result) : result);
+                } else {
+                    VisionAnalyzers.process(call, context, this, result);
+                }
                 break;
             case CLOSE:
                 closeDetector(call);
@@ -73,125 +93,185 @@ public class TextRecognizer implements MethodChannel.MethodCallHandler {
         }
     }
 
-    private void handleDetection(MethodCall call, final MethodChannel.Result result) {
-        Map<String, Object> imageData = call.argument("imageData");
-        if (imageData == null) {
-            return;
-        }
-        InputImage inputImage = InputImageConverter.getInputImageFromData(imageData, context, result);
-        if (inputImage == null) return;
+    @Override
+    public Task<?> analyze(@NonNull MethodCall call, @NonNull InputImage inputImage, @NonNull final MethodChannel.Result result) {
+        ImageTransform transform = InputImageConverter.getImageTransform(inputImage);
 
         String id = call.argument("id");
         com.google.mlkit.vision.text.TextRecognizer textRecognizer = instances.get(id);
         if (textRecognizer == null) {
             textRecognizer = initialize(call);
-            instances.put(id, textRecognizer);
+            if (textRecognizer != null) instances.put(id, textRecognizer);
         }
         if (textRecognizer == null) {
             result.error("TextRecognizerError", "TextRecognizer is not initialized", null);
-            return;
+            return null;
         }
-        textRecognizer.process(inputImage)
-                .addOnSuccessListener(text -> {
+        int granularity = getGranularity(call);
+        boolean cornerPoints = !Boolean.FALSE.equals(call.argument("cornerPoints"));
+        return textRecognizer.process(inputImage)
+                .addOnSuccessListener(ResultExecutor.get(), text -> {
                     Map<String, Object> textResult = new HashMap<>();
 
                     textResult.put("text", text.getText());
 
                     List<Map<String, Object>> textBlocks = new ArrayList<>();
-                    for (Text.TextBlock block : text.getTextBlocks()) {
-                        Map<String, Object> blockData = new HashMap<>();
-
-                        addData(blockData,
-                                block.getText(),
-                                block.getBoundingBox(),
-                                block.getCornerPoints(),
-                                block.getRecognizedLanguage(),
-                                null,
-                                null);
-
-                        List<Map<String, Object>> textLines = new ArrayList<>();
-                        for (Text.Line line : block.getLines()) {
-                            Map<String, Object> lineData = new HashMap<>();
-
-                            addData(lineData,
-                                    line.getText(),
-                                    line.getBoundingBox(),
-                                    line.getCornerPoints(),
-                                    line.getRecognizedLanguage(),
-                                    line.getConfidence(),
-                                    line.getAngle());
-
-                            List<Map<String, Object>> elementsData = new ArrayList<>();
-                            for (Text.Element element : line.getElements()) {
-                                Map<String, Object> elementData = new HashMap<>();
-
-                                addData(elementData,
-                                        element.getText(),
-                                        element.getBoundingBox(),
-                                        element.getCornerPoints(),
-                                        element.getRecognizedLanguage(),
-                                        element.getConfidence(),
-                                        element.getAngle());
-
-                                List<Map<String, Object>> symbolsData = new ArrayList<>();
-                                for (Text.Symbol symbol : element.getSymbols()) {
-                                    Map<String, Object> symbolData = new HashMap<>();
-
-                                    addData(symbolData,
-                                            symbol.getText(),
-                                            symbol.getBoundingBox(),
-                                            symbol.getCornerPoints(),
-                                            symbol.getRecognizedLanguage(),
-                                            symbol.getConfidence(),
-                                            symbol.getAngle());
-                                    symbolsData.add(symbolData);
-                                }
+                    if (granularity >= GRANULARITY_BLOCKS) {
+                        for (Text.TextBlock block : text.getTextBlocks()) {
+                            Map<String, Object> blockData = new HashMap<>();
+
+                            addData(blockData,
+                                    block.getText(),
+                                    block.getBoundingBox(),
+                                    cornerPoints ? block.getCornerPoints() : null,
+                                    block.getRecognizedLanguage(),
+                                    null,
+                                    null,
+                                    transform);
 
-                                elementData.put("symbols", symbolsData);
-                                elementsData.add(elementData);
+                            List<Map<String, Object>> textLines = new ArrayList<>();
+                            if (granularity >= GRANULARITY_LINES) {
+                                for (Text.Line line : block.getLines()) {
+                                    Map<String, Object> lineData = new HashMap<>();
+
+                                    addData(lineData,
+                                            line.getText(),
+                                            line.getBoundingBox(),
+                                            cornerPoints ? line.getCornerPoints() : null,
+                                            line.getRecognizedLanguage(),
+                                            line.getConfidence(),
+                                            line.getAngle(),
+                                            transform);
+
+                                    List<Map<String, Object>> elementsData = new ArrayList<>();
+                                    if (granularity >= GRANULARITY_ELEMENTS) {
+                                        for (Text.Element element : line.getElements()) {
+                                            Map<String, Object> elementData = new HashMap<>();
+
+                                            addData(elementData,
+                                                    element.getText(),
+                                                    element.getBoundingBox(),
+                                                    cornerPoints ? element.getCornerPoints() : null,
+                                                    element.getRecognizedLanguage(),
+                                                    element.getConfidence(),
+                                                    element.getAngle(),
+                                                    transform);
+
+                                            List<Map<String, Object>> symbolsData = new ArrayList<>();
+                                            if (granularity >= GRANULARITY_SYMBOLS) {
+                                                for (Text.Symbol symbol : element.getSymbols()) {
+                                                    Map<String, Object> symbolData = new HashMap<>();
+
+                                                    addData(symbolData,
+                                                            symbol.getText(),
+                                                            symbol.getBoundingBox(),
+                                                            cornerPoints ? symbol.getCornerPoints() : null,
+                                                            symbol.getRecognizedLanguage(),
+                                                            symbol.getConfidence(),
+                                                            symbol.getAngle(),
+                                                            transform);
+                                                    symbolsData.add(symbolData);
+                                                }
+                                            }
+
+                                            elementData.put("symbols", symbolsData);
+                                            elementsData.add(elementData);
+                                        }
+                                    }
+                                    lineData.put("elements", elementsData);
+                                    textLines.add(lineData);
+                                }
                             }
-                            lineData.put("elements", elementsData);
-                            textLines.add(lineData);
+                            blockData.put("lines", textLines);
+                            textBlocks.add(blockData);
                         }
-                        blockData.put("lines", textLines);
-                        textBlocks.add(blockData);
                     }
                     textResult.put("blocks", textBlocks);
                     result.success(textResult);
                 })
-                .addOnFailureListener(e -> result.error("TextRecognizerError", e.toString(), null));
+                .addOnFailureListener(ResultExecutor.get(), e -> result.error("TextRecognizerError", e.toString(), null));
+    }
+
+    //Recognizes a document image tile by tile, see TiledTextRecognition, and replies with the stitched result of the
+    //whole page together with the "tiles" and the time each of them took.
+    private void recognizeTiles(MethodCall call, MethodChannel.Result result) {
+        String id = call.argument("id");
+        com.google.mlkit.vision.text.TextRecognizer textRecognizer = instances.get(id);
+        if (textRecognizer == null) {
+            textRecognizer = initialize(call);
+            if (textRecognizer != null) instances.put(id, textRecognizer);
+        }
+        if (textRecognizer == null) {
+            result.error("TextRecognizerError", "TextRecognizer is not initialized", null);
+            return;
+        }
+        Map<String, Object> imageData = call.argument("imageData");
+        if (imageData == null) {
+            result.error("InputImageConverterError", "Image data is missing", null);
+            return;
+        }
+        TiledTextRecognition recognition = new TiledTextRecognition(call.argument("tiling"));
+        List<Task<List<TiledTextRecognition.TileText>>> lanes;
+        try {
+            lanes = recognition.recognize(imageData, context, textRecognizer);
+        } catch (IOException | RuntimeException e) {
+            result.error("TextRecognizerError", e.toString(), null);
+            return;
+        }
+
+        int granularity = getGranularity(call);
+        boolean cornerPoints = !Boolean.FALSE.equals(call.argument("cornerPoints"));
+        Tasks.whenAllComplete(lanes).addOnCompleteListener(ResultExecutor.get(), done -> {
+            List<TiledTextRecognition.TileText> tiles = new ArrayList<>();
+            for (Task<List<TiledTextRecognition.TileText>> lane : lanes) {
+                if (!lane.isSuccessful()) {
+                    Exception e = lane.getException();
+                    result.error("TextRecognizerError", String.valueOf(e), null);
+                    return;
+                }
+                tiles.addAll(lane.getResult());
+            }
+            result.success(recognition.stitch(tiles, granularity, cornerPoints));
+        });
+    }
+
+    //The deepest level of the result that is serialized, levels below it are sent as empty lists.
+    private int getGranularity(MethodCall call) {
+        Integer granularity = call.argument("granularity");
+        return granularity != null ? granularity : GRANULARITY_SYMBOLS;
     }
 
-    private void addData(Map<String, Object> addTo,
+    static void addData(Map<String, Object> addTo,
                          String text,
                          Rect rect,
-                         Point[] cornerPoints,
+                         @Nullable Point[] cornerPoints,
                          String recognizedLanguage,
                          Float confidence,
-                         Float angle
+                         Float angle,
+                         ImageTransform transform
     ) {
-        List<String> recognizedLanguages = new ArrayList<>();
-        recognizedLanguages.add(recognizedLanguage);
-        List<Map<String, Integer>> points = new ArrayList<>();
-        addPoints(cornerPoints, points);
-        addTo.put("points", points);
-        addTo.put("rect", getBoundingPoints(rect));
-        addTo.put("recognizedLanguages", recognizedLanguages);
+        if (cornerPoints != null) {
+            List<Map<String, Integer>> points = new ArrayList<>(cornerPoints.length);
+            addPoints(cornerPoints, points, transform);
+            addTo.put("points", points);
+        }
+        addTo.put("rect", getBoundingPoints(transform.mapRect(rect)));
+        addTo.put("recognizedLanguages", Collections.singletonList(recognizedLanguage));
         addTo.put("text", text);
         addTo.put("confidence", confidence);
         addTo.put("angle", angle);
     }
 
-    private void addPoints(Point[] cornerPoints, List<Map<String, Integer>> points) {
+    private static void addPoints(Point[] cornerPoints, List<Map<String, Integer>> points, ImageTransform transform) {
         for (Point point : cornerPoints) {
             Map<String, Integer> p = new HashMap<>();
-            p.put("x", point.x);
-            p.put("y", point.y);
+            p.put("x", transform.mapX(point.x));
+            p.put("y", transform.mapY(point.y));
             points.add(p);
         }
     }
 
-    private Map<String, Integer> getBoundingPoints(Rect rect) {
+    static Map<String, Integer> getBoundingPoints(Rect rect) {
         Map<String, Integer> frame = new HashMap<>();
         frame.put("left", rect.left);
         frame.put("right", rect.right);
@@ -202,6 +282,7 @@ public class TextRecognizer implements MethodChannel.MethodCallHandler {
 
     private void closeDetector(MethodCall call) {
         String id = call.argument("id");
+        VisionAnalyzers.close(this, id);
         com.google.mlkit.vision.text.TextRecognizer textRecognizer = instances.get(id);
         if (textRecognizer == null) return;
         textRecognizer.close();
@@ -0,0 +1,397 @@
+package com.google_mlkit_text_recognition;
+
+import android.content.Context;
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.os.SystemClock;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.text.Text;
+import com.google_mlkit_commons.ImageTiler;
+import com.google_mlkit_commons.ImageTransform;
+import com.google_mlkit_commons.InputImageConverter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+//Recognizes text in a large document image tile by tile at full resolution, so small print is not lost to the
+//downscaling ML Kit applies to a whole page. Tiles of "tileSize" pixels overlap by "overlap" pixels and are converted
+//with an ImageTiler, which decodes only that region of an image file with a BitmapRegionDecoder.
+//The tiles are dealt round robin into "parallelism" lanes that each recognize their tiles one after another.
+//Stitching joins lines found in more than one tile into one line of page coordinates: of elements found twice, the one
+//farther from the inner edges of its tile is kept, since the other one may be cut off. Blocks that share a line are
+//joined too.
+class TiledTextRecognition {
+    private static final int POOL_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final ExecutorService workers = ImageTiler.newWorkerPool(POOL_SIZE, "google_mlkit_text_tiles");
+
+    private final int tileSize;
+    private final int overlap;
+    private final int parallelism;
+    private int pageWidth;
+    private int pageHeight;
+
+    //The text recognized in one tile, and how long the tile took to decode and to recognize.
+    static class TileText {
+        final Rect tile;
+        final Text text;
+        final ImageTransform transform;
+        final long decodeMillis;
+        final long recognizeMillis;
+
+        TileText(Rect tile, Text text, ImageTransform transform, long decodeMillis, long recognizeMillis) {
+            this.tile = tile;
+            this.text = text;
+            this.transform = transform;
+            this.decodeMillis = decodeMillis;
+            this.recognizeMillis = recognizeMillis;
+        }
+    }
+
+    private static class TileLine {
+        final Text.Line line;
+        final TileText tileText;
+        final int block;
+        final Rect box;
+
+        TileLine(Text.Line line, TileText tileText, int block) {
+            this.line = line;
+            this.tileText = tileText;
+            this.block = block;
+            this.box = tileText.transform.mapRect(line.getBoundingBox());
+        }
+    }
+
+    private static class TileElement {
+        final Text.Element element;
+        final ImageTransform transform;
+        final Rect box;
+        final int margin;
+
+        TileElement(Text.Element element, ImageTransform transform, Rect box, int margin) {
+            this.element = element;
+            this.transform = transform;
+            this.box = box;
+            this.margin = margin;
+        }
+    }
+
+    TiledTextRecognition(Map<String, Object> options) {
+        tileSize = Math.max(256, ImageTiler.getOption(options, "tileSize", 1536));
+        overlap = Math.max(0, Math.min(tileSize / 2, ImageTiler.getOption(options, "overlap", 128)));
+        parallelism = Math.max(1, Math.min(POOL_SIZE, ImageTiler.getOption(options, "parallelism", POOL_SIZE)));
+    }
+
+    //Starts recognizing the tiles of the image in [imageData], one task per lane.
+    List<Task<List<TileText>>> recognize(Map<String, Object> imageData, Context context,
+                                         com.google.mlkit.vision.text.TextRecognizer recognizer) throws IOException {
+        ImageTiler tiler = new ImageTiler(imageData, context);
+        Point size = tiler.getSize();
+        pageWidth = size.x;
+        pageHeight = size.y;
+        List<Rect> tiles = ImageTiler.getTiles(size.x, size.y, tileSize, overlap);
+        List<Task<List<TileText>>> lanes = new ArrayList<>();
+        for (int lane = 0; lane < Math.min(parallelism, tiles.size()); lane++) {
+            List<Rect> laneTiles = new ArrayList<>();
+            for (int i = lane; i < tiles.size(); i += parallelism) {
+                laneTiles.add(tiles.get(i));
+            }
+            lanes.add(Tasks.call(workers, () -> {
+                List<TileText> texts = new ArrayList<>(laneTiles.size());
+                for (Rect tile : laneTiles) {
+                    texts.add(recognizeTile(tiler, tile, recognizer));
+                }
+                return texts;
+            }));
+        }
+        Tasks.whenAllComplete(lanes).addOnCompleteListener(workers, done -> tiler.close());
+        return lanes;
+    }
+
+    private static TileText recognizeTile(ImageTiler tiler, Rect tile,
+                                          com.google.mlkit.vision.text.TextRecognizer recognizer) throws Exception {
+        long start = SystemClock.elapsedRealtime();
+        InputImage inputImage = tiler.getTile(tile);
+        long decoded = SystemClock.elapsedRealtime();
+        try {
+            Text text = Tasks.await(recognizer.process(inputImage));
+            return new TileText(tile, text, InputImageConverter.getImageTransform(inputImage),
+                    decoded - start, SystemClock.elapsedRealtime() - decoded);
+        } finally {
+            tiler.release(inputImage);
+        }
+    }
+
+    //Returns the result of the whole page, laid out like the one of an image recognized at once, with the "tiles" added.
+    Map<String, Object> stitch(List<TileText> tiles, int granularity, boolean cornerPoints) {
+        List<TileLine> lines = new ArrayList<>();
+        List<Text.TextBlock> blocks = new ArrayList<>();
+        List<TileText> blockTiles = new ArrayList<>();
+        for (TileText tileText : tiles) {
+            for (Text.TextBlock block : tileText.text.getTextBlocks()) {
+                for (Text.Line line : block.getLines()) {
+                    lines.add(new TileLine(line, tileText, blocks.size()));
+                }
+                blocks.add(block);
+                blockTiles.add(tileText);
+            }
+        }
+
+        //Lines of different tiles that share a row and touch are parts of one line, and so are their blocks.
+        int[] lineGroups = newGroups(lines.size());
+        int[] blockGroups = newGroups(blocks.size());
+        for (int i = 0; i < lines.size(); i++) {
+            for (int j = i + 1; j < lines.size(); j++) {
+                TileLine a = lines.get(i);
+                TileLine b = lines.get(j);
+                if (a.tileText != b.tileText && isSameLine(a.box, b.box)) {
+                    join(lineGroups, i, j);
+                    join(blockGroups, a.block, b.block);
+                }
+            }
+        }
+
+        Map<Integer, List<TileLine>> lineMembers = new HashMap<>();
+        for (int i = 0; i < lines.size(); i++) {
+            int group = find(lineGroups, i);
+            List<TileLine> members = lineMembers.get(group);
+            if (members == null) {
+                members = new ArrayList<>();
+                lineMembers.put(group, members);
+            }
+            members.add(lines.get(i));
+        }
+
+        Map<Integer, List<Map<String, Object>>> blockLines = new HashMap<>();
+        Map<Integer, Boolean> blockChanged = new HashMap<>();
+        for (List<TileLine> members : lineMembers.values()) {
+            int group = find(blockGroups, members.get(0).block);
+            List<Map<String, Object>> groupLines = blockLines.get(group);
+            if (groupLines == null) {
+                groupLines = new ArrayList<>();
+                blockLines.put(group, groupLines);
+            }
+            groupLines.add(members.size() == 1
+                    ? getLineData(members.get(0), granularity, cornerPoints)
+                    : getMergedLineData(members, granularity, cornerPoints));
+            if (members.size() > 1) blockChanged.put(group, true);
+        }
+
+        List<Map<String, Object>> blockList = new ArrayList<>();
+        for (Map.Entry<Integer, List<Map<String, Object>>> entry : blockLines.entrySet()) {
+            int group = entry.getKey();
+            List<Map<String, Object>> groupLines = entry.getValue();
+            Collections.sort(groupLines, (a, b) -> compareRects(getRect(a), getRect(b)));
+            Map<String, Object> blockData = new HashMap<>();
+            Text.TextBlock block = blocks.get(group);
+            if (!Boolean.TRUE.equals(blockChanged.get(group)) && groupLines.size() == block.getLines().size()) {
+                TextRecognizer.addData(blockData, block.getText(), block.getBoundingBox(),
+                        cornerPoints ? block.getCornerPoints() : null, block.getRecognizedLanguage(),
+                        null, null, blockTiles.get(group).transform);
+            } else {
+                StringBuilder text = new StringBuilder();
+                Rect rect = null;
+                for (Map<String, Object> lineData : groupLines) {
+                    if (text.length() > 0) text.append('\n');
+                    text.append((String) lineData.get("text"));
+                    rect = union(rect, getRect(lineData));
+                }
+                List<?> languages = (List<?>) groupLines.get(0).get("recognizedLanguages");
+                TextRecognizer.addData(blockData, text.toString(), rect, cornerPoints ? getCorners(rect) : null,
+                        (String) languages.get(0), null, null, ImageTransform.IDENTITY);
+            }
+            blockData.put("lines", granularity >= TextRecognizer.GRANULARITY_LINES ? groupLines : new ArrayList<>());
+            blockList.add(blockData);
+        }
+        Collections.sort(blockList, (a, b) -> compareRects(getRect(a), getRect(b)));
+
+        StringBuilder text = new StringBuilder();
+        for (Map<String, Object> blockData : blockList) {
+            if (text.length() > 0) text.append('\n');
+            text.append((String) blockData.get("text"));
+        }
+        List<Map<String, Object>> tileList = new ArrayList<>(tiles.size());
+        for (TileText tileText : tiles) {
+            Map<String, Object> tileData = new HashMap<>();
+            tileData.put("rect", TextRecognizer.getBoundingPoints(tileText.tile));
+            tileData.put("decodeMillis", tileText.decodeMillis);
+            tileData.put("recognizeMillis", tileText.recognizeMillis);
+            tileList.add(tileData);
+        }
+
+        Map<String, Object> textResult = new HashMap<>();
+        textResult.put("text", text.toString());
+        textResult.put("blocks", granularity >= TextRecognizer.GRANULARITY_BLOCKS ? blockList : new ArrayList<>());
+        textResult.put("tiles", tileList);
+        return textResult;
+    }
+
+    private Map<String, Object> getLineData(TileLine tileLine, int granularity, boolean cornerPoints) {
+        Text.Line line = tileLine.line;
+        ImageTransform transform = tileLine.tileText.transform;
+        Map<String, Object> lineData = new HashMap<>();
+        TextRecognizer.addData(lineData, line.getText(), line.getBoundingBox(),
+                cornerPoints ? line.getCornerPoints() : null, line.getRecognizedLanguage(),
+                line.getConfidence(), line.getAngle(), transform);
+        List<Map<String, Object>> elementsData = new ArrayList<>();
+        if (granularity >= TextRecognizer.GRANULARITY_ELEMENTS) {
+            for (Text.Element element : line.getElements()) {
+                elementsData.add(getElementData(element, transform, granularity, cornerPoints));
+            }
+        }
+        lineData.put("elements", elementsData);
+        return lineData;
+    }
+
+    //Joins the parts of a line that were recognized in different tiles, keeping one of each element found twice.
+    private Map<String, Object> getMergedLineData(List<TileLine> members, int granularity, boolean cornerPoints) {
+        List<TileElement> candidates = new ArrayList<>();
+        TileLine best = null;
+        int bestMargin = -1;
+        float confidence = 0;
+        for (TileLine member : members) {
+            int lineMargin = getMargin(member.box, member.tileText.tile);
+            if (lineMargin > bestMargin) {
+                best = member;
+                bestMargin = lineMargin;
+            }
+            confidence += member.line.getConfidence();
+            for (Text.Element element : member.line.getElements()) {
+                Rect box = member.tileText.transform.mapRect(element.getBoundingBox());
+                candidates.add(new TileElement(element, member.tileText.transform, box,
+                        getMargin(box, member.tileText.tile)));
+            }
+        }
+        Collections.sort(candidates, (a, b) -> Integer.compare(b.margin, a.margin));
+        List<TileElement> kept = new ArrayList<>();
+        for (TileElement candidate : candidates) {
+            boolean duplicate = false;
+            for (TileElement element : kept) {
+                if (isSameBox(element.box, candidate.box)) {
+                    duplicate = true;
+                    break;
+                }
+            }
+            if (!duplicate) kept.add(candidate);
+        }
+        Collections.sort(kept, (a, b) -> Integer.compare(a.box.left, b.box.left));
+
+        StringBuilder text = new StringBuilder();
+        Rect rect = null;
+        List<Map<String, Object>> elementsData = new ArrayList<>();
+        for (TileElement element : kept) {
+            if (text.length() > 0) text.append(' ');
+            text.append(element.element.getText());
+            rect = union(rect, element.box);
+            if (granularity >= TextRecognizer.GRANULARITY_ELEMENTS) {
+                elementsData.add(getElementData(element.element, element.transform, granularity, cornerPoints));
+            }
+        }
+        if (rect == null) rect = new Rect(best.box);
+        Map<String, Object> lineData = new HashMap<>();
+        TextRecognizer.addData(lineData, text.toString(), rect, cornerPoints ? getCorners(rect) : null,
+                best.line.getRecognizedLanguage(), confidence / members.size(), best.line.getAngle(),
+                ImageTransform.IDENTITY);
+        lineData.put("elements", elementsData);
+        return lineData;
+    }
+
+    private static Map<String, Object> getElementData(Text.Element element, ImageTransform transform,
+                                                      int granularity, boolean cornerPoints) {
+        Map<String, Object> elementData = new HashMap<>();
+        TextRecognizer.addData(elementData, element.getText(), element.getBoundingBox(),
+                cornerPoints ? element.getCornerPoints() : null, element.getRecognizedLanguage(),
+                element.getConfidence(), element.getAngle(), transform);
+        List<Map<String, Object>> symbolsData = new ArrayList<>();
+        if (granularity >= TextRecognizer.GRANULARITY_SYMBOLS) {
+            for (Text.Symbol symbol : element.getSymbols()) {
+                Map<String, Object> symbolData = new HashMap<>();
+                TextRecognizer.addData(symbolData, symbol.getText(), symbol.getBoundingBox(),
+                        cornerPoints ? symbol.getCornerPoints() : null, symbol.getRecognizedLanguage(),
+                        symbol.getConfidence(), symbol.getAngle(), transform);
+                symbolsData.add(symbolData);
+            }
+        }
+        elementData.put("symbols", symbolsData);
+        return elementData;
+    }
+
+    //The distance of [box] from the nearest edge of [tile] that lies inside the page, where text may be cut off.
+    private int getMargin(Rect box, Rect tile) {
+        int margin = Integer.MAX_VALUE;
+        if (tile.left > 0) margin = Math.min(margin, box.left - tile.left);
+        if (tile.top > 0) margin = Math.min(margin, box.top - tile.top);
+        if (tile.right < pageWidth) margin = Math.min(margin, tile.right - box.right);
+        if (tile.bottom < pageHeight) margin = Math.min(margin, tile.bottom - box.bottom);
+        return margin;
+    }
+
+    //Boxes in one row, overlapping by at least half the height of the lower one, that overlap or touch horizontally.
+    private static boolean isSameLine(Rect a, Rect b) {
+        int verticalOverlap = Math.min(a.bottom, b.bottom) - Math.max(a.top, b.top);
+        return verticalOverlap * 2 >= Math.min(a.height(), b.height())
+                && a.left <= b.right && b.left <= a.right;
+    }
+
+    //Boxes that overlap by at least half the area of the smaller one.
+    private static boolean isSameBox(Rect a, Rect b) {
+        Rect intersection = new Rect();
+        if (!intersection.setIntersect(a, b)) return false;
+        long area = (long) intersection.width() * intersection.height();
+        return area * 2 >= Math.min((long) a.width() * a.height(), (long) b.width() * b.height());
+    }
+
+    private static Rect union(@Nullable Rect rect, Rect other) {
+        if (rect == null) return new Rect(other);
+        rect.union(other);
+        return rect;
+    }
+
+    private static Point[] getCorners(Rect rect) {
+        return new Point[]{
+                new Point(rect.left, rect.top),
+                new Point(rect.right, rect.top),
+                new Point(rect.right, rect.bottom),
+                new Point(rect.left, rect.bottom)};
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Rect getRect(Map<String, Object> data) {
+        Map<String, Integer> rect = (Map<String, Integer>) data.get("rect");
+        return new Rect(rect.get("left"), rect.get("top"), rect.get("right"), rect.get("bottom"));
+    }
+
+    //Top to bottom, then left to right.
+    private static int compareRects(Rect a, Rect b) {
+        return a.top != b.top ? Integer.compare(a.top, b.top) : Integer.compare(a.left, b.left);
+    }
+
+    private static int[] newGroups(int count) {
+        int[] groups = new int[count];
+        for (int i = 0; i < count; i++) {
+            groups[i] = i;
+        }
+        return groups;
+    }
+
+    private static int find(int[] groups, int i) {
+        while (groups[i] != i) {
+            groups[i] = groups[groups[i]];
+            i = groups[i];
+        }
+        return i;
+    }
+
+    private static void join(int[] groups, int a, int b) {
+        groups[find(groups, a)] = find(groups, b);
+    }
+}
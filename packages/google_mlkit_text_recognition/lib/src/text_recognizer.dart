@@ -15,20 +15,69 @@ class TextRecognizer {
   /// Instance id.
   final id = DateTime.now().microsecondsSinceEpoch.toString();
 
+  /// Whether results are sent in the packed binary format of [PackedResultCodec].
+  /// Only used on Android.
+  final bool packedResults;
+
+  /// The deepest level of the results that is sent back. The levels below it
+  /// are returned as empty lists. Only used on Android.
+  final TextRecognitionGranularity granularity;
+
+  /// Whether the corner points of blocks, lines, elements and symbols are sent
+  /// back. When false, all `cornerPoints` lists are empty. Only used on Android.
+  final bool cornerPoints;
+
   /// Constructor to create an instance of [TextRecognizer].
-  TextRecognizer({this.script = TextRecognitionScript.latin});
+  TextRecognizer(
+      {this.script = TextRecognitionScript.latin,
+      this.packedResults = false,
+      this.granularity = TextRecognitionGranularity.symbols,
+      this.cornerPoints = true});
 
   /// Processes the given [InputImage]  for text recognition and returns a [RecognizedText] object.
   Future<RecognizedText> processImage(InputImage inputImage) async {
     final result = await _channel.invokeMethod(
         'vision#startTextRecognizer', <String, dynamic>{
-      'id': id,
+      ..._arguments(),
+      'imageData': inputImage.toJson(),
+    });
+    return RecognizedText.fromJson(PackedResultCodec.unpack(result));
+  }
+
+  /// Recognizes text in a large document image tile by tile at full
+  /// resolution, which keeps small print that is lost when the whole page is
+  /// downscaled. Lines and blocks found in more than one tile are stitched
+  /// together, in the coordinates of the whole page. Best used with image
+  /// files, of which only the tiles are decoded. Only available on Android.
+  Future<TiledRecognizedText> processDocumentImage(InputImage inputImage,
+      {TextTiling tiling = const TextTiling()}) async {
+    final result = await _channel.invokeMethod(
+        'vision#startTextRecognizer', <String, dynamic>{
+      ..._arguments(),
       'imageData': inputImage.toJson(),
-      'script': script.index
+      'tiling': tiling.toJson(),
     });
-    return RecognizedText.fromJson(result);
+    return TiledRecognizedText.fromJson(PackedResultCodec.unpack(result));
   }
 
+  /// Returns this recognizer as a [VisionAnalysis] for [VisionAnalyzer.analyze],
+  /// optionally running on a copy of the image no larger than [maxDimension].
+  VisionAnalysis<RecognizedText> analysis({int? maxDimension}) =>
+      VisionAnalysis(
+          type: 'text',
+          arguments: _arguments(),
+          parse: (result) =>
+              RecognizedText.fromJson(PackedResultCodec.unpack(result)),
+          maxDimension: maxDimension);
+
+  Map<String, dynamic> _arguments() => <String, dynamic>{
+        'id': id,
+        'script': script.index,
+        'packedResults': packedResults,
+        'granularity': granularity.index,
+        'cornerPoints': cornerPoints,
+      };
+
   /// Closes the recognizer and releases its resources.
   Future<void> close() =>
       _channel.invokeMethod('vision#closeTextRecognizer', {'id': id});
@@ -43,6 +92,24 @@ enum TextRecognitionScript {
   korean,
 }
 
+/// The levels of [RecognizedText] a [TextRecognizer] can stop at.
+enum TextRecognitionGranularity {
+  /// Only [RecognizedText.text].
+  text,
+
+  /// [TextBlock]s without their lines.
+  blocks,
+
+  /// [TextLine]s without their elements.
+  lines,
+
+  /// [TextElement]s without their symbols.
+  elements,
+
+  /// Everything, down to [TextSymbol]s.
+  symbols,
+}
+
 /// Recognized text in an image.
 class RecognizedText {
   /// String containing all the text identified in an image. The string is empty if no text was recognized.
@@ -58,7 +125,7 @@ class RecognizedText {
   factory RecognizedText.fromJson(Map<dynamic, dynamic> json) {
     final resText = json['text'];
     final textBlocks = <TextBlock>[];
-    for (final block in json['blocks']) {
+    for (final block in json['blocks'] ?? const []) {
       final textBlock = TextBlock.fromJson(block);
       textBlocks.add(textBlock);
     }
@@ -66,6 +133,80 @@ class RecognizedText {
   }
 }
 
+/// Options for [TextRecognizer.processDocumentImage].
+class TextTiling {
+  /// The width and height of a tile, in pixels of the image.
+  final int tileSize;
+
+  /// How many pixels neighboring tiles overlap. At most half of [tileSize].
+  final int overlap;
+
+  /// How many tiles are recognized at the same time. Defaults to the number of
+  /// processors, which is also the maximum.
+  final int? parallelism;
+
+  /// Constructor to create an instance of [TextTiling].
+  const TextTiling(
+      {this.tileSize = 1536, this.overlap = 128, this.parallelism});
+
+  /// Returns a json representation of an instance of [TextTiling].
+  Map<String, dynamic> toJson() => {
+        'tileSize': tileSize,
+        'overlap': overlap,
+        'parallelism': parallelism,
+      };
+}
+
+/// Text recognized in a document image tile by tile.
+class TiledRecognizedText extends RecognizedText {
+  /// The tiles the image was split into.
+  final List<TextTile> tiles;
+
+  /// Constructor to create an instance of [TiledRecognizedText].
+  TiledRecognizedText(
+      {required String text,
+      required List<TextBlock> blocks,
+      required this.tiles})
+      : super(text: text, blocks: blocks);
+
+  /// Returns an instance of [TiledRecognizedText] from a given [json].
+  factory TiledRecognizedText.fromJson(Map<dynamic, dynamic> json) {
+    final recognizedText = RecognizedText.fromJson(json);
+    return TiledRecognizedText(
+      text: recognizedText.text,
+      blocks: recognizedText.blocks,
+      tiles: [
+        for (final tile in json['tiles'] ?? const []) TextTile.fromJson(tile)
+      ],
+    );
+  }
+}
+
+/// A tile of a document image and how long it took to process.
+class TextTile {
+  /// The region of the image covered by the tile.
+  final Rect boundingBox;
+
+  /// The time spent decoding the tile.
+  final Duration decodeTime;
+
+  /// The time spent recognizing the text of the tile.
+  final Duration recognitionTime;
+
+  /// Constructor to create an instance of [TextTile].
+  TextTile(
+      {required this.boundingBox,
+      required this.decodeTime,
+      required this.recognitionTime});
+
+  /// Returns an instance of [TextTile] from a given [json].
+  factory TextTile.fromJson(Map<dynamic, dynamic> json) => TextTile(
+        boundingBox: RectJson.fromJson(json['rect']),
+        decodeTime: Duration(milliseconds: json['decodeMillis']),
+        recognitionTime: Duration(milliseconds: json['recognizeMillis']),
+      );
+}
+
 /// A text block recognized in an image that consists of a list of text lines.
 class TextBlock {
   /// String representation of the text block that was recognized.
@@ -100,7 +241,7 @@ class TextBlock {
         _listToRecognizedLanguages(json['recognizedLanguages']);
     final cornerPoints = _listToCornerPoints(json['points']);
     final lines = <TextLine>[];
-    for (final line in json['lines']) {
+    for (final line in json['lines'] ?? const []) {
       final textLine = TextLine.fromJson(line);
       lines.add(textLine);
     }
@@ -160,7 +301,7 @@ class TextLine {
         _listToRecognizedLanguages(json['recognizedLanguages']);
     final cornerPoints = _listToCornerPoints(json['points']);
     final elements = <TextElement>[];
-    for (final element in json['elements']) {
+    for (final element in json['elements'] ?? const []) {
       final textElement = TextElement.fromJson(element);
       elements.add(textElement);
     }
@@ -223,7 +364,7 @@ class TextElement {
     final confidence = json['confidence'];
     final angle = json['angle'];
     final symbols = <TextSymbol>[];
-    for (final symbol in json['symbols']) {
+    for (final symbol in json['symbols'] ?? const []) {
       final textSymbol = TextSymbol.fromJson(symbol);
       symbols.add(textSymbol);
     }
@@ -303,9 +444,9 @@ List<String> _listToRecognizedLanguages(List<dynamic> languages) {
 }
 
 /// Convert list of map to list of [Point].
-List<Point<int>> _listToCornerPoints(List<dynamic> points) {
+List<Point<int>> _listToCornerPoints(List<dynamic>? points) {
   final p = <Point<int>>[];
-  for (final point in points) {
+  for (final point in points ?? const []) {
     p.add(Point<int>(point['x'].toInt(), point['y'].toInt()));
   }
   return p;
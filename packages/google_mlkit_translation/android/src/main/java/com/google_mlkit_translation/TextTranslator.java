@@ -8,8 +8,8 @@ import com.google.mlkit.nl.translate.Translator;
 import com.google.mlkit.nl.translate.TranslatorOptions;
 import com.google_mlkit_commons.GenericModelManager;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
@@ -19,7 +19,7 @@ public class TextTranslator implements MethodChannel.MethodCallHandler {
     private static final String CLOSE = "nlp#closeLanguageTranslator";
     private static final String MANAGE = "nlp#manageLanguageModelModels";
 
-    private final Map<String, Translator> instances = new HashMap<>();
+    private final Map<String, Translator> instances = new ConcurrentHashMap<>();
     private final GenericModelManager genericModelManager = new GenericModelManager();
 
     @Override